@@ -0,0 +1,178 @@
+package nawaman.papercuts.concurrency.atomicvariable;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * The serial queue of the asynchronous updates of a variable.
+ * 
+ * The updates are applied in the order they are queued by one drain task at a time. Each pass of the drain takes
+ *   the variable's monitor once for up to MAX_BATCH updates and completes their futures after releasing it, so the
+ *   callbacks of the futures never run while holding the monitor. The drain is re-submitted (rather than looping)
+ *   when there are more updates so that one hot variable does not hog an executor thread.
+ * 
+ * If the executor rejects the drain, the queued updates are not applied -- their futures fail with the rejection.
+ * 
+ * @author NawaMan
+ */
+class AsyncUpdater<V> {
+    
+    static final int MAX_BATCH = 64;
+    
+    private final AtomicVariable<V> variable;
+    
+    private final Executor executor;
+    
+    private final ConcurrentLinkedQueue<Update<V>> queue = new ConcurrentLinkedQueue<>();
+    
+    private final AtomicBoolean isScheduled = new AtomicBoolean(false);
+    
+    AsyncUpdater(
+            final AtomicVariable<V> variable,
+            final Executor          executor) {
+        this.variable = variable;
+        this.executor = executor;
+    }
+    
+    /** Queue the update -- the future gives {@code true} if the change is successful. */
+    @SuppressWarnings("unchecked")
+    CompletableFuture<Boolean> submitCheck(
+            final Predicate<V>   expectedChecker,
+            final Function<V, V> newValueFunction) {
+        return (CompletableFuture<Boolean>)this.submit(expectedChecker, newValueFunction, false);
+    }
+    
+    /** Queue the update -- the future gives the value that is in the variable right after the update. */
+    @SuppressWarnings("unchecked")
+    CompletableFuture<V> submitUpdate(
+            final Predicate<V>   expectedChecker,
+            final Function<V, V> newValueFunction) {
+        return (CompletableFuture<V>)this.submit(expectedChecker, newValueFunction, true);
+    }
+    
+    private CompletableFuture<?> submit(
+            final Predicate<V>   expectedChecker,
+            final Function<V, V> newValueFunction,
+            final boolean        isValueResult) {
+        Update<V> update = new Update<V>(expectedChecker, newValueFunction, isValueResult);
+        this.queue.add(update);
+        this.scheduleIfNeeded();
+        return update.future;
+    }
+    
+    private void scheduleIfNeeded() {
+        while (!this.queue.isEmpty() && this.isScheduled.compareAndSet(false, true)) {
+            try {
+                this.executor.execute(this::drain);
+                return;
+            } catch (RuntimeException exception) {
+                // No drain runs or is pending while the flag is held here so none of the queued updates will be
+                //   applied -- fail them all rather than leaving them for a later drain.
+                for (Update<V> update; (update = this.queue.poll()) != null;) {
+                    update.future.completeExceptionally(exception);
+                }
+                this.isScheduled.set(false);
+            }
+        }
+    }
+    
+    private void drain() {
+        @SuppressWarnings("unchecked")
+        Update<V>[] batch = (Update<V>[])new Update<?>[MAX_BATCH];
+        int count = 0;
+        try {
+            for (Update<V> update; (count < MAX_BATCH) && ((update = this.queue.poll()) != null);) {
+                batch[count++] = update;
+            }
+            if (this.variable.getMode() == UpdateMode.OPTIMISTIC) {
+                // The monitor does not keep the compare-and-set writers out.
+                for (int i = 0; i < count; i++) {
+                    batch[i].apply(this.variable);
+                }
+            } else {
+                synchronized (this.variable) {
+                    this.variable.enterBusy();
+                    try {
+                        for (int i = 0; i < count; i++) {
+                            batch[i].applyLocked(this.variable);
+                        }
+                    } finally {
+                        this.variable.exitBusy();
+                    }
+                }
+            }
+        } finally {
+            for (int i = 0; i < count; i++) {
+                batch[i].complete();
+            }
+            this.isScheduled.set(false);
+            this.scheduleIfNeeded();
+        }
+    }
+    
+    // == AUX class ====================================================================================================
+    
+    static class Update<V> {
+        
+        final Predicate<V> expectedChecker;
+        
+        final Function<V, V> newValueFunction;
+        
+        final boolean isValueResult;
+        
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        
+        boolean isChanged;
+        
+        V value;
+        
+        Throwable failure;
+        
+        boolean isApplied;
+        
+        Update(
+                final Predicate<V>   expectedChecker,
+                final Function<V, V> newValueFunction,
+                final boolean        isValueResult) {
+            this.expectedChecker  = expectedChecker;
+            this.newValueFunction = newValueFunction;
+            this.isValueResult    = isValueResult;
+        }
+        
+        void apply(AtomicVariable<V> variable) {
+            try {
+                this.isChanged = variable.checkBeforeUpdate(this.expectedChecker, this.newValueFunction);
+                this.value     = variable.get();
+            } catch (RuntimeException | Error failure) {
+                this.failure = failure;
+            }
+            this.isApplied = true;
+        }
+        
+        void applyLocked(AtomicVariable<V> variable) {
+            try {
+                this.isChanged = variable.lockedCheckAndUpdate(this.expectedChecker, this.newValueFunction);
+                this.value     = variable.get();
+            } catch (RuntimeException | Error failure) {
+                this.failure = failure;
+            }
+            this.isApplied = true;
+        }
+        
+        void complete() {
+            if (!this.isApplied) {
+                this.future.completeExceptionally(new IllegalStateException("The update was not applied."));
+            } else if (this.failure != null) {
+                this.future.completeExceptionally(this.failure);
+            } else {
+                this.future.complete(this.isValueResult ? this.value : (Object)this.isChanged);
+            }
+        }
+        
+    }
+    
+}
@@ -0,0 +1,308 @@
+package nawaman.papercuts.concurrency.atomicvariable;
+
+import static java.lang.Double.doubleToRawLongBits;
+import static java.lang.Double.longBitsToDouble;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.function.DoublePredicate;
+import java.util.function.DoubleSupplier;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * An AtomicVariable for a {@code double} value -- no boxing and no allocation in any of its operations.
+ * 
+ * The value is kept as its raw long bits (see {@link Double#doubleToRawLongBits(double)}) so the comparisons done
+ *   by this variable, for example in {@link #compareBeforeSet(double, double)}, are bitwise: {@code NaN} is equal
+ *   to {@code NaN} but {@code 0.0} is not equal to {@code -0.0}.
+ * 
+ * @author NawaMan
+ */
+public class AtomicDoubleVariable implements DoubleSupplier {
+    
+    private static final AtomicLongFieldUpdater<AtomicDoubleVariable> VALUE
+            = AtomicLongFieldUpdater.newUpdater(AtomicDoubleVariable.class, "bits");
+    
+    private volatile long bits;
+    
+    private final UpdateMode mode;
+    
+    /**
+     * Construct a variable with a default value.
+     * 
+     * @param defaultValue
+     *          the default value.
+     */
+    public AtomicDoubleVariable(
+            final double defaultValue) {
+        this(defaultValue, UpdateMode.LOCKING);
+    }
+    
+    /**
+     * Construct a variable with a default value and the mode to apply the changes.
+     * 
+     * @param defaultValue
+     *          the default value.
+     * @param mode
+     *          the update mode.
+     */
+    public AtomicDoubleVariable(
+            final double     defaultValue,
+            final UpdateMode mode) {
+        this.bits = doubleToRawLongBits(defaultValue);
+        this.mode = Objects.requireNonNull(mode);
+    }
+    
+    /**
+     * Returns the mode this variable uses to apply the changes.
+     * 
+     * @return the update mode.
+     */
+    public final UpdateMode getMode() {
+        return this.mode;
+    }
+    
+    /**
+     * Obtains the variable value.
+     * 
+     * @return the variable value.
+     **/
+    public final double get() {
+        return longBitsToDouble(this.bits);
+    }
+    
+    /**
+     * Obtains the variable value.
+     * 
+     * @return the variable value.
+     **/
+    @Override
+    public final double getAsDouble() {
+        return longBitsToDouble(this.bits);
+    }
+    
+    /**
+     * Change the variable value.
+     * 
+     * @param value
+     *          the new value.
+     * @return the new value.
+     */
+    public final double set(
+            final double value) {
+        if (this.mode == UpdateMode.OPTIMISTIC) {
+            this.bits = doubleToRawLongBits(value);
+            return value;
+        }
+        synchronized (this) {
+            this.bits = doubleToRawLongBits(value);
+        }
+        return value;
+    }
+    
+    /**
+     * Atomically change the variable value to the new value ONLY when the current value is as expected.
+     * 
+     * @param expected
+     *          the expected current value.
+     * @param newValue
+     *          the new value.
+     * @return {@code true} if the change is successful.
+     */
+    public final boolean compareBeforeSet(
+            final double expected,
+            final double newValue) {
+        long expectedBits = doubleToRawLongBits(expected);
+        if (this.mode == UpdateMode.OPTIMISTIC) {
+            return VALUE.compareAndSet(this, expectedBits, doubleToRawLongBits(newValue));
+        }
+        if (this.bits == expectedBits) {
+            synchronized (this) {
+                if (this.bits == expectedBits) {
+                    this.bits = doubleToRawLongBits(newValue);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Atomically change the variable value to the new value determined from the current value ONLY when the current
+     *   value is as expected.
+     * 
+     * @param expected
+     *          the expected current value.
+     * @param newValueFunction
+     *          the function to calculate the new value from the current one.
+     * @return {@code true} if the change is successful.
+     */
+    public final boolean compareBeforeUpdate(
+            final double              expected,
+            final DoubleUnaryOperator newValueFunction) {
+        long expectedBits = doubleToRawLongBits(expected);
+        if (this.mode == UpdateMode.OPTIMISTIC) {
+            if (this.bits != expectedBits) {
+                return false;
+            }
+            long newBits = doubleToRawLongBits(newValueFunction.applyAsDouble(expected));
+            return VALUE.compareAndSet(this, expectedBits, newBits);
+        }
+        if (this.bits == expectedBits) {
+            synchronized (this) {
+                if (this.bits == expectedBits) {
+                    this.bits = doubleToRawLongBits(newValueFunction.applyAsDouble(expected));
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Atomically change the variable value to the new value ONLY when the current value pass the check.
+     * 
+     * NOTE: The expectedChecker might to be called more than once for execution.
+     * 
+     * @param expectedChecker
+     *          the predicate to determine if the current value still as expected.
+     * @param newValue
+     *          the new value.
+     * @return {@code true} if the change is successful.
+     */
+    public final boolean checkBeforeSet(
+            final DoublePredicate expectedChecker,
+            final double          newValue) {
+        if (this.mode == UpdateMode.OPTIMISTIC) {
+            long newBits = doubleToRawLongBits(newValue);
+            while (true) {
+                long currentBits = this.bits;
+                if (!expectedChecker.test(longBitsToDouble(currentBits))) {
+                    return false;
+                }
+                if (VALUE.compareAndSet(this, currentBits, newBits)) {
+                    return true;
+                }
+            }
+        }
+        if (expectedChecker.test(this.get())) {
+            synchronized (this) {
+                if (expectedChecker.test(this.get())) {
+                    this.bits = doubleToRawLongBits(newValue);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Atomically change the variable value to the new value ONLY when the current value pass the check.
+     * 
+     * NOTE: The expectedChecker might to be called more than once for execution.
+     *       In {@link UpdateMode#OPTIMISTIC} mode, so might the newValueFunction.
+     * 
+     * @param expectedChecker
+     *          the predicate to determine if the current value still as expected.
+     * @param newValueFunction
+     *          the function to calculate the new value from the current one.
+     * @return {@code true} if the change is successful.
+     */
+    public final boolean checkBeforeUpdate(
+            final DoublePredicate     expectedChecker,
+            final DoubleUnaryOperator newValueFunction) {
+        if (this.mode == UpdateMode.OPTIMISTIC) {
+            while (true) {
+                long   currentBits = this.bits;
+                double current     = longBitsToDouble(currentBits);
+                if (!expectedChecker.test(current)) {
+                    return false;
+                }
+                long   newBits     = doubleToRawLongBits(newValueFunction.applyAsDouble(current));
+                if (VALUE.compareAndSet(this, currentBits, newBits)) {
+                    return true;
+                }
+            }
+        }
+        if (expectedChecker.test(this.get())) {
+            synchronized (this) {
+                if (expectedChecker.test(this.get())) {
+                    this.bits = doubleToRawLongBits(newValueFunction.applyAsDouble(this.get()));
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Atomically change the variable value to the new value ONLY when the current value is as expected.
+     * 
+     * @param expected
+     *          the expected current value.
+     * @param newValue
+     *          the new value.
+     * @return the value that is in the variable at the end of the invocation.
+     */
+    public final double setAfterCompare(
+            final double expected,
+            final double newValue) {
+        this.compareBeforeSet(expected, newValue);
+        return this.get();
+    }
+    
+    /**
+     * Atomically change the variable value to the new value determined from the current value ONLY when the current
+     *   value is as expected.
+     * 
+     * @param expected
+     *          the expected current value.
+     * @param newValueFunction
+     *          the function to calculate the new value from the current one.
+     * @return the value that is in the variable at the end of the invocation.
+     */
+    public final double updateAfterCompare(
+            final double              expected,
+            final DoubleUnaryOperator newValueFunction) {
+        this.compareBeforeUpdate(expected, newValueFunction);
+        return this.get();
+    }
+    
+    /**
+     * Atomically change the variable value to the new value ONLY when the current value pass the check.
+     * 
+     * NOTE: The expectedChecker might to be called more than once for execution.
+     * 
+     * @param expectedChecker
+     *          the predicate to determine if the current value still as expected.
+     * @param newValue
+     *          the new value.
+     * @return the value that is in the variable at the end of the invocation.
+     */
+    public final double setAfterCheck(
+            final DoublePredicate expectedChecker,
+            final double          newValue) {
+        this.checkBeforeSet(expectedChecker, newValue);
+        return this.get();
+    }
+    
+    /**
+     * Atomically change the variable value to the new value ONLY when the current value pass the check.
+     * 
+     * NOTE: The expectedChecker might to be called more than once for execution.
+     *       In {@link UpdateMode#OPTIMISTIC} mode, so might the newValueFunction.
+     * 
+     * @param expectedChecker
+     *          the predicate to determine if the current value still as expected.
+     * @param newValueFunction
+     *          the function to calculate the new value from the current one.
+     * @return the value that is in the variable at the end of the invocation.
+     */
+    public final double updateAfterCheck(
+            final DoublePredicate     expectedChecker,
+            final DoubleUnaryOperator newValueFunction) {
+        this.checkBeforeUpdate(expectedChecker, newValueFunction);
+        return this.get();
+    }
+    
+}
@@ -0,0 +1,293 @@
+package nawaman.papercuts.concurrency.atomicvariable;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.IntPredicate;
+import java.util.function.IntSupplier;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * An AtomicVariable for an {@code int} value -- no boxing and no allocation in any of its operations.
+ * 
+ * @author NawaMan
+ */
+public class AtomicIntVariable implements IntSupplier {
+    
+    private static final AtomicIntegerFieldUpdater<AtomicIntVariable> VALUE
+            = AtomicIntegerFieldUpdater.newUpdater(AtomicIntVariable.class, "value");
+    
+    private volatile int value;
+    
+    private final UpdateMode mode;
+    
+    /**
+     * Construct a variable with a default value.
+     * 
+     * @param defaultValue
+     *          the default value.
+     */
+    public AtomicIntVariable(
+            final int defaultValue) {
+        this(defaultValue, UpdateMode.LOCKING);
+    }
+    
+    /**
+     * Construct a variable with a default value and the mode to apply the changes.
+     * 
+     * @param defaultValue
+     *          the default value.
+     * @param mode
+     *          the update mode.
+     */
+    public AtomicIntVariable(
+            final int        defaultValue,
+            final UpdateMode mode) {
+        this.value = defaultValue;
+        this.mode  = Objects.requireNonNull(mode);
+    }
+    
+    /**
+     * Returns the mode this variable uses to apply the changes.
+     * 
+     * @return the update mode.
+     */
+    public final UpdateMode getMode() {
+        return this.mode;
+    }
+    
+    /**
+     * Obtains the variable value.
+     * 
+     * @return the variable value.
+     **/
+    public final int get() {
+        return this.value;
+    }
+    
+    /**
+     * Obtains the variable value.
+     * 
+     * @return the variable value.
+     **/
+    @Override
+    public final int getAsInt() {
+        return this.value;
+    }
+    
+    /**
+     * Change the variable value.
+     * 
+     * @param value
+     *          the new value.
+     * @return the new value.
+     */
+    public final int set(
+            final int value) {
+        if (this.mode == UpdateMode.OPTIMISTIC) {
+            this.value = value;
+            return value;
+        }
+        synchronized (this) {
+            this.value = value;
+        }
+        return value;
+    }
+    
+    /**
+     * Atomically change the variable value to the new value ONLY when the current value is as expected.
+     * 
+     * @param expected
+     *          the expected current value.
+     * @param newValue
+     *          the new value.
+     * @return {@code true} if the change is successful.
+     */
+    public final boolean compareBeforeSet(
+            final int expected,
+            final int newValue) {
+        if (this.mode == UpdateMode.OPTIMISTIC) {
+            return VALUE.compareAndSet(this, expected, newValue);
+        }
+        if (this.value == expected) {
+            synchronized (this) {
+                if (this.value == expected) {
+                    this.value = newValue;
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Atomically change the variable value to the new value determined from the current value ONLY when the current
+     *   value is as expected.
+     * 
+     * @param expected
+     *          the expected current value.
+     * @param newValueFunction
+     *          the function to calculate the new value from the current one.
+     * @return {@code true} if the change is successful.
+     */
+    public final boolean compareBeforeUpdate(
+            final int              expected,
+            final IntUnaryOperator newValueFunction) {
+        if (this.mode == UpdateMode.OPTIMISTIC) {
+            return (this.value == expected)
+                && VALUE.compareAndSet(this, expected, newValueFunction.applyAsInt(expected));
+        }
+        if (this.value == expected) {
+            synchronized (this) {
+                if (this.value == expected) {
+                    this.value = newValueFunction.applyAsInt(expected);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Atomically change the variable value to the new value ONLY when the current value pass the check.
+     * 
+     * NOTE: The expectedChecker might to be called more than once for execution.
+     * 
+     * @param expectedChecker
+     *          the predicate to determine if the current value still as expected.
+     * @param newValue
+     *          the new value.
+     * @return {@code true} if the change is successful.
+     */
+    public final boolean checkBeforeSet(
+            final IntPredicate expectedChecker,
+            final int          newValue) {
+        if (this.mode == UpdateMode.OPTIMISTIC) {
+            while (true) {
+                int current = this.value;
+                if (!expectedChecker.test(current)) {
+                    return false;
+                }
+                if (VALUE.compareAndSet(this, current, newValue)) {
+                    return true;
+                }
+            }
+        }
+        if (expectedChecker.test(this.value)) {
+            synchronized (this) {
+                if (expectedChecker.test(this.value)) {
+                    this.value = newValue;
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Atomically change the variable value to the new value ONLY when the current value pass the check.
+     * 
+     * NOTE: The expectedChecker might to be called more than once for execution.
+     *       In {@link UpdateMode#OPTIMISTIC} mode, so might the newValueFunction.
+     * 
+     * @param expectedChecker
+     *          the predicate to determine if the current value still as expected.
+     * @param newValueFunction
+     *          the function to calculate the new value from the current one.
+     * @return {@code true} if the change is successful.
+     */
+    public final boolean checkBeforeUpdate(
+            final IntPredicate     expectedChecker,
+            final IntUnaryOperator newValueFunction) {
+        if (this.mode == UpdateMode.OPTIMISTIC) {
+            while (true) {
+                int current = this.value;
+                if (!expectedChecker.test(current)) {
+                    return false;
+                }
+                if (VALUE.compareAndSet(this, current, newValueFunction.applyAsInt(current))) {
+                    return true;
+                }
+            }
+        }
+        if (expectedChecker.test(this.value)) {
+            synchronized (this) {
+                if (expectedChecker.test(this.value)) {
+                    this.value = newValueFunction.applyAsInt(this.value);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Atomically change the variable value to the new value ONLY when the current value is as expected.
+     * 
+     * @param expected
+     *          the expected current value.
+     * @param newValue
+     *          the new value.
+     * @return the value that is in the variable at the end of the invocation.
+     */
+    public final int setAfterCompare(
+            final int expected,
+            final int newValue) {
+        this.compareBeforeSet(expected, newValue);
+        return this.value;
+    }
+    
+    /**
+     * Atomically change the variable value to the new value determined from the current value ONLY when the current
+     *   value is as expected.
+     * 
+     * @param expected
+     *          the expected current value.
+     * @param newValueFunction
+     *          the function to calculate the new value from the current one.
+     * @return the value that is in the variable at the end of the invocation.
+     */
+    public final int updateAfterCompare(
+            final int              expected,
+            final IntUnaryOperator newValueFunction) {
+        this.compareBeforeUpdate(expected, newValueFunction);
+        return this.value;
+    }
+    
+    /**
+     * Atomically change the variable value to the new value ONLY when the current value pass the check.
+     * 
+     * NOTE: The expectedChecker might to be called more than once for execution.
+     * 
+     * @param expectedChecker
+     *          the predicate to determine if the current value still as expected.
+     * @param newValue
+     *          the new value.
+     * @return the value that is in the variable at the end of the invocation.
+     */
+    public final int setAfterCheck(
+            final IntPredicate expectedChecker,
+            final int          newValue) {
+        this.checkBeforeSet(expectedChecker, newValue);
+        return this.value;
+    }
+    
+    /**
+     * Atomically change the variable value to the new value ONLY when the current value pass the check.
+     * 
+     * NOTE: The expectedChecker might to be called more than once for execution.
+     *       In {@link UpdateMode#OPTIMISTIC} mode, so might the newValueFunction.
+     * 
+     * @param expectedChecker
+     *          the predicate to determine if the current value still as expected.
+     * @param newValueFunction
+     *          the function to calculate the new value from the current one.
+     * @return the value that is in the variable at the end of the invocation.
+     */
+    public final int updateAfterCheck(
+            final IntPredicate     expectedChecker,
+            final IntUnaryOperator newValueFunction) {
+        this.checkBeforeUpdate(expectedChecker, newValueFunction);
+        return this.value;
+    }
+    
+}
@@ -0,0 +1,293 @@
+package nawaman.papercuts.concurrency.atomicvariable;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.function.LongPredicate;
+import java.util.function.LongSupplier;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * An AtomicVariable for a {@code long} value -- no boxing and no allocation in any of its operations.
+ * 
+ * @author NawaMan
+ */
+public class AtomicLongVariable implements LongSupplier {
+    
+    private static final AtomicLongFieldUpdater<AtomicLongVariable> VALUE
+            = AtomicLongFieldUpdater.newUpdater(AtomicLongVariable.class, "value");
+    
+    private volatile long value;
+    
+    private final UpdateMode mode;
+    
+    /**
+     * Construct a variable with a default value.
+     * 
+     * @param defaultValue
+     *          the default value.
+     */
+    public AtomicLongVariable(
+            final long defaultValue) {
+        this(defaultValue, UpdateMode.LOCKING);
+    }
+    
+    /**
+     * Construct a variable with a default value and the mode to apply the changes.
+     * 
+     * @param defaultValue
+     *          the default value.
+     * @param mode
+     *          the update mode.
+     */
+    public AtomicLongVariable(
+            final long       defaultValue,
+            final UpdateMode mode) {
+        this.value = defaultValue;
+        this.mode  = Objects.requireNonNull(mode);
+    }
+    
+    /**
+     * Returns the mode this variable uses to apply the changes.
+     * 
+     * @return the update mode.
+     */
+    public final UpdateMode getMode() {
+        return this.mode;
+    }
+    
+    /**
+     * Obtains the variable value.
+     * 
+     * @return the variable value.
+     **/
+    public final long get() {
+        return this.value;
+    }
+    
+    /**
+     * Obtains the variable value.
+     * 
+     * @return the variable value.
+     **/
+    @Override
+    public final long getAsLong() {
+        return this.value;
+    }
+    
+    /**
+     * Change the variable value.
+     * 
+     * @param value
+     *          the new value.
+     * @return the new value.
+     */
+    public final long set(
+            final long value) {
+        if (this.mode == UpdateMode.OPTIMISTIC) {
+            this.value = value;
+            return value;
+        }
+        synchronized (this) {
+            this.value = value;
+        }
+        return value;
+    }
+    
+    /**
+     * Atomically change the variable value to the new value ONLY when the current value is as expected.
+     * 
+     * @param expected
+     *          the expected current value.
+     * @param newValue
+     *          the new value.
+     * @return {@code true} if the change is successful.
+     */
+    public final boolean compareBeforeSet(
+            final long expected,
+            final long newValue) {
+        if (this.mode == UpdateMode.OPTIMISTIC) {
+            return VALUE.compareAndSet(this, expected, newValue);
+        }
+        if (this.value == expected) {
+            synchronized (this) {
+                if (this.value == expected) {
+                    this.value = newValue;
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Atomically change the variable value to the new value determined from the current value ONLY when the current
+     *   value is as expected.
+     * 
+     * @param expected
+     *          the expected current value.
+     * @param newValueFunction
+     *          the function to calculate the new value from the current one.
+     * @return {@code true} if the change is successful.
+     */
+    public final boolean compareBeforeUpdate(
+            final long              expected,
+            final LongUnaryOperator newValueFunction) {
+        if (this.mode == UpdateMode.OPTIMISTIC) {
+            return (this.value == expected)
+                && VALUE.compareAndSet(this, expected, newValueFunction.applyAsLong(expected));
+        }
+        if (this.value == expected) {
+            synchronized (this) {
+                if (this.value == expected) {
+                    this.value = newValueFunction.applyAsLong(expected);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Atomically change the variable value to the new value ONLY when the current value pass the check.
+     * 
+     * NOTE: The expectedChecker might to be called more than once for execution.
+     * 
+     * @param expectedChecker
+     *          the predicate to determine if the current value still as expected.
+     * @param newValue
+     *          the new value.
+     * @return {@code true} if the change is successful.
+     */
+    public final boolean checkBeforeSet(
+            final LongPredicate expectedChecker,
+            final long          newValue) {
+        if (this.mode == UpdateMode.OPTIMISTIC) {
+            while (true) {
+                long current = this.value;
+                if (!expectedChecker.test(current)) {
+                    return false;
+                }
+                if (VALUE.compareAndSet(this, current, newValue)) {
+                    return true;
+                }
+            }
+        }
+        if (expectedChecker.test(this.value)) {
+            synchronized (this) {
+                if (expectedChecker.test(this.value)) {
+                    this.value = newValue;
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Atomically change the variable value to the new value ONLY when the current value pass the check.
+     * 
+     * NOTE: The expectedChecker might to be called more than once for execution.
+     *       In {@link UpdateMode#OPTIMISTIC} mode, so might the newValueFunction.
+     * 
+     * @param expectedChecker
+     *          the predicate to determine if the current value still as expected.
+     * @param newValueFunction
+     *          the function to calculate the new value from the current one.
+     * @return {@code true} if the change is successful.
+     */
+    public final boolean checkBeforeUpdate(
+            final LongPredicate     expectedChecker,
+            final LongUnaryOperator newValueFunction) {
+        if (this.mode == UpdateMode.OPTIMISTIC) {
+            while (true) {
+                long current = this.value;
+                if (!expectedChecker.test(current)) {
+                    return false;
+                }
+                if (VALUE.compareAndSet(this, current, newValueFunction.applyAsLong(current))) {
+                    return true;
+                }
+            }
+        }
+        if (expectedChecker.test(this.value)) {
+            synchronized (this) {
+                if (expectedChecker.test(this.value)) {
+                    this.value = newValueFunction.applyAsLong(this.value);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Atomically change the variable value to the new value ONLY when the current value is as expected.
+     * 
+     * @param expected
+     *          the expected current value.
+     * @param newValue
+     *          the new value.
+     * @return the value that is in the variable at the end of the invocation.
+     */
+    public final long setAfterCompare(
+            final long expected,
+            final long newValue) {
+        this.compareBeforeSet(expected, newValue);
+        return this.value;
+    }
+    
+    /**
+     * Atomically change the variable value to the new value determined from the current value ONLY when the current
+     *   value is as expected.
+     * 
+     * @param expected
+     *          the expected current value.
+     * @param newValueFunction
+     *          the function to calculate the new value from the current one.
+     * @return the value that is in the variable at the end of the invocation.
+     */
+    public final long updateAfterCompare(
+            final long              expected,
+            final LongUnaryOperator newValueFunction) {
+        this.compareBeforeUpdate(expected, newValueFunction);
+        return this.value;
+    }
+    
+    /**
+     * Atomically change the variable value to the new value ONLY when the current value pass the check.
+     * 
+     * NOTE: The expectedChecker might to be called more than once for execution.
+     * 
+     * @param expectedChecker
+     *          the predicate to determine if the current value still as expected.
+     * @param newValue
+     *          the new value.
+     * @return the value that is in the variable at the end of the invocation.
+     */
+    public final long setAfterCheck(
+            final LongPredicate expectedChecker,
+            final long          newValue) {
+        this.checkBeforeSet(expectedChecker, newValue);
+        return this.value;
+    }
+    
+    /**
+     * Atomically change the variable value to the new value ONLY when the current value pass the check.
+     * 
+     * NOTE: The expectedChecker might to be called more than once for execution.
+     *       In {@link UpdateMode#OPTIMISTIC} mode, so might the newValueFunction.
+     * 
+     * @param expectedChecker
+     *          the predicate to determine if the current value still as expected.
+     * @param newValueFunction
+     *          the function to calculate the new value from the current one.
+     * @return the value that is in the variable at the end of the invocation.
+     */
+    public final long updateAfterCheck(
+            final LongPredicate     expectedChecker,
+            final LongUnaryOperator newValueFunction) {
+        this.checkBeforeUpdate(expectedChecker, newValueFunction);
+        return this.value;
+    }
+    
+}
@@ -0,0 +1,231 @@
+package nawaman.papercuts.concurrency.atomicvariable;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongPredicate;
+import java.util.function.LongUnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * An array of atomic {@code long} variables kept in one backing array -- see {@link AtomicVariableArray}.
+ * 
+ * @author NawaMan
+ */
+public class AtomicLongVariableArray {
+    
+    /** The number of the longs per element when padded -- 128 bytes to also keep the adjacent line apart. */
+    static final int PADDED_STRIDE = 16;
+    
+    private final AtomicLongArray array;
+    
+    private final int length;
+    
+    private final int stride;
+    
+    /**
+     * Construct an array of the given length -- all elements are 0.
+     * 
+     * @param length
+     *          the number of the elements.
+     */
+    public AtomicLongVariableArray(
+            final int length) {
+        this(length, false);
+    }
+    
+    /**
+     * Construct an array of the given length with or without the padding between the elements -- all elements are 0.
+     * 
+     * @param length
+     *          the number of the elements.
+     * @param isPadded
+     *          {@code true} to keep each element on a cache line of its own.
+     */
+    public AtomicLongVariableArray(
+            final int     length,
+            final boolean isPadded) {
+        if (length < 0) {
+            throw new IllegalArgumentException("length must not be negative: " + length);
+        }
+        this.length = length;
+        this.stride = isPadded ? PADDED_STRIDE : 1;
+        // When padded, the first element is also kept away from the array header.
+        this.array  = new AtomicLongArray(isPadded ? Math.multiplyExact(length + 1, PADDED_STRIDE) : length);
+    }
+    
+    private int indexOf(
+            final int index) {
+        if ((index < 0) || (index >= this.length)) {
+            throw new IndexOutOfBoundsException("index: " + index);
+        }
+        return (this.stride == 1) ? index : (index + 1) * this.stride;
+    }
+    
+    /**
+     * Returns the number of the elements.
+     * 
+     * @return the length.
+     */
+    public final int length() {
+        return this.length;
+    }
+    
+    /**
+     * Obtains the element value.
+     * 
+     * @param index
+     *          the element index.
+     * @return the element value.
+     **/
+    public final long get(
+            final int index) {
+        return this.array.get(this.indexOf(index));
+    }
+    
+    /**
+     * Change the element value.
+     * 
+     * @param index
+     *          the element index.
+     * @param value
+     *          the new value.
+     * @return the new value.
+     */
+    public final long set(
+            final int  index,
+            final long value) {
+        this.array.set(this.indexOf(index), value);
+        return value;
+    }
+    
+    /**
+     * Atomically change the element value to the new value ONLY when the current value is as expected.
+     * 
+     * @param index
+     *          the element index.
+     * @param expected
+     *          the expected current value.
+     * @param newValue
+     *          the new value.
+     * @return {@code true} if the change is successful.
+     */
+    public final boolean compareBeforeSet(
+            final int  index,
+            final long expected,
+            final long newValue) {
+        return this.array.compareAndSet(this.indexOf(index), expected, newValue);
+    }
+    
+    /**
+     * Atomically change the element value to the new value ONLY when the current value pass the check.
+     * 
+     * NOTE: The expectedChecker might to be called more than once for execution.
+     * 
+     * @param index
+     *          the element index.
+     * @param expectedChecker
+     *          the predicate to determine if the current value still as expected.
+     * @param newValue
+     *          the new value.
+     * @return {@code true} if the change is successful.
+     */
+    public final boolean checkBeforeSet(
+            final int           index,
+            final LongPredicate expectedChecker,
+            final long          newValue) {
+        return this.checkBeforeUpdate(
+                index,
+                expectedChecker,
+                current->newValue);
+    }
+    
+    /**
+     * Atomically change the element value to the new value ONLY when the current value pass the check.
+     * 
+     * NOTE: The expectedChecker and the newValueFunction might to be called more than once for execution.
+     * 
+     * @param index
+     *          the element index.
+     * @param expectedChecker
+     *          the predicate to determine if the current value still as expected.
+     * @param newValueFunction
+     *          the function to calculate the new value from the current one.
+     * @return {@code true} if the change is successful.
+     */
+    public final boolean checkBeforeUpdate(
+            final int               index,
+            final LongPredicate     expectedChecker,
+            final LongUnaryOperator newValueFunction) {
+        int i = this.indexOf(index);
+        while (true) {
+            long current = this.array.get(i);
+            if (!expectedChecker.test(current)) {
+                return false;
+            }
+            if (this.array.compareAndSet(i, current, newValueFunction.applyAsLong(current))) {
+                return true;
+            }
+        }
+    }
+    
+    /**
+     * Atomically change the element value to the new value ONLY when the current value pass the check.
+     * 
+     * NOTE: The expectedChecker and the newValueFunction might to be called more than once for execution.
+     * 
+     * @param index
+     *          the element index.
+     * @param expectedChecker
+     *          the predicate to determine if the current value still as expected.
+     * @param newValueFunction
+     *          the function to calculate the new value from the current one.
+     * @return the value that is in the element at the end of the invocation.
+     */
+    public final long updateAfterCheck(
+            final int               index,
+            final LongPredicate     expectedChecker,
+            final LongUnaryOperator newValueFunction) {
+        this.checkBeforeUpdate(index, expectedChecker, newValueFunction);
+        return this.get(index);
+    }
+    
+    /**
+     * Atomically update each element with the function -- in parallel.
+     * 
+     * @param newValueFunction
+     *          the function to calculate the new value from the current one.
+     */
+    public final void updateAll(
+            final LongUnaryOperator newValueFunction) {
+        IntStream.range(0, this.length).parallel().forEach(index -> {
+            this.checkBeforeUpdate(index, current -> true, newValueFunction);
+        });
+    }
+    
+    /**
+     * Returns the values of the elements.
+     * 
+     * @return the values in the order of the index.
+     */
+    public final long[] snapshot() {
+        long[] values = new long[this.length];
+        IntStream.range(0, this.length).parallel().forEach(index -> values[index] = this.get(index));
+        return values;
+    }
+    
+    /**
+     * Combine the values of the elements -- in parallel.
+     * 
+     * @param identity
+     *          the identity value of the accumulator.
+     * @param accumulator
+     *          the associative function to combine two values.
+     * @return the combined value.
+     */
+    public final long reduce(
+            final long               identity,
+            final LongBinaryOperator accumulator) {
+        return IntStream.range(0, this.length).parallel().mapToLong(this::get).reduce(identity, accumulator);
+    }
+    
+}
@@ -1,6 +1,14 @@
 package nawaman.papercuts.concurrency.atomicvariable;
 
+import java.util.Arrays;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
@@ -8,12 +16,73 @@ import java.util.function.Supplier;
 /**
  * This is another implementation of AtomicReference with more option of lazy evaluation and compare options.
  * 
+ * By default, the changes are applied while holding the variable's monitor. A variable created with
+ *   {@link UpdateMode#OPTIMISTIC} applies the changes with a compare-and-set retry loop instead and one created with
+ *   {@link UpdateMode#COMBINING} has the contending changes applied in batches by a single combiner thread.
+ * 
+ * The changes can be listened to with {@link #subscribe(Consumer, Executor)} instead of polling {@link #get()} and a
+ *   thread can wait for the value to reach a state with {@link #awaitUntil(Predicate)}.
+ * 
+ * The async variants of the updates ({@link #checkBeforeUpdateAsync(Predicate, Function)} and
+ *   {@link #updateAsync(Predicate, Function)}) queue the change and return right away -- the queued changes are
+ *   applied in order, several at a time, by a serial drain on the async executor (the common fork-join pool by
+ *   default).
+ * 
+ * The updates can be instrumented with {@link #enableInstrumentation(String)} to see how contended the variable is.
+ * 
+ * Several variables can be checked and updated together with {@link Transaction} and the values computed from them
+ *   can be kept up to date lazily with {@link #map(Function)} and {@link #combine(Supplier, Supplier, BiFunction)}.
+ * 
+ * The try updates ({@link #tryCheckBeforeUpdate(Predicate, Function)}) give up rather than wait when another update
+ *   is in progress.
+ * 
+ * How an {@link UpdateMode#OPTIMISTIC} variable retries after losing a race is set by its {@link BackoffStrategy}
+ *   (see {@link #setBackoffStrategy(BackoffStrategy)}) or by the one given to a single update.
+ * 
  * @author NawaMan
  */
 public class AtomicVariable<V> implements Supplier<V> {
     
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<AtomicVariable, Object> VALUE
+            = AtomicReferenceFieldUpdater.newUpdater(AtomicVariable.class, Object.class, "value");
+    
     private volatile V value;
     
+    private final UpdateMode mode;
+    
+    private final Combiner<V> combiner;
+    
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<AtomicVariable, AsyncUpdater> ASYNC_UPDATER
+            = AtomicReferenceFieldUpdater.newUpdater(AtomicVariable.class, AsyncUpdater.class, "asyncUpdater");
+    
+    /** The instrumentation -- null when disabled so an uninstrumented update only costs a read. */
+    private volatile Instrumentation<V> instrumentation;
+    
+    /** Created on the first async update. */
+    private volatile AsyncUpdater<V> asyncUpdater;
+    
+    /** The subscriptions to the changes -- null when there is none so an unwatched change only costs a read. */
+    private volatile Subscription<V>[] subscriptions;
+    
+    /** The threads waiting for the value to pass their conditions -- null when there is none. */
+    private volatile Waiter<V>[] waiters;
+    
+    private volatile BackoffStrategy backoffStrategy = BackoffStrategy.NONE;
+    
+    /** The backoff of the deadline try updates of the variables without one -- not to hot-spin on a busy monitor. */
+    private static final BackoffStrategy TRY_BACKOFF
+            = BackoffStrategy.spinYieldPark(16, 16, 10, TimeUnit.MICROSECONDS);
+    
+    /**
+     * The number of the updates holding the monitor (the re-entered ones included) -- for the try updates to give up
+     *   without entering it. Only changed under the monitor and only a hint for the try updates, so it is not volatile
+     *   (not to add two fences to every locked update); the volatile read of the value before each try keeps the read
+     *   of the count from being hoisted out of the retry loop.
+     */
+    private int busyCount;
+    
     /**
      * Construct a variable with a default value.
      * 
@@ -22,7 +91,53 @@ public class AtomicVariable<V> implements Supplier<V> {
      */
     public AtomicVariable(
             final V defaultValue) {
-        this.value = defaultValue;
+        this(defaultValue, UpdateMode.LOCKING);
+    }
+    
+    /**
+     * Construct a variable with a default value and the mode to apply the changes.
+     * 
+     * @param defaultValue
+     *          the default value.
+     * @param mode
+     *          the update mode.
+     */
+    public AtomicVariable(
+            final V          defaultValue,
+            final UpdateMode mode) {
+        this.value    = defaultValue;
+        this.mode     = Objects.requireNonNull(mode);
+        this.combiner = (mode == UpdateMode.COMBINING) ? new Combiner<V>(this) : null;
+    }
+    
+    /**
+     * Returns the mode this variable uses to apply the changes.
+     * 
+     * @return the update mode.
+     */
+    public final UpdateMode getMode() {
+        return this.mode;
+    }
+    
+    /**
+     * Returns the strategy the updates of this variable use to back off after losing a race.
+     * 
+     * @return the backoff strategy.
+     */
+    public final BackoffStrategy getBackoffStrategy() {
+        return this.backoffStrategy;
+    }
+    
+    /**
+     * Set the strategy the updates of this variable use to back off after losing a race -- only the
+     *   {@link UpdateMode#OPTIMISTIC} updates can lose a race.
+     * 
+     * @param backoffStrategy
+     *          the backoff strategy.
+     */
+    public final void setBackoffStrategy(
+            final BackoffStrategy backoffStrategy) {
+        this.backoffStrategy = Objects.requireNonNull(backoffStrategy);
     }
     
     /**
@@ -47,9 +162,19 @@ public class AtomicVariable<V> implements Supplier<V> {
      */
     public final V set(
             final V value) {
-        synchronized (this) {
+        if (this.mode == UpdateMode.OPTIMISTIC) {
             this.value = value;
+        } else {
+            synchronized (this) {
+                this.enterBusy();
+                try {
+                    this.value = value;
+                } finally {
+                    this.exitBusy();
+                }
+            }
         }
+        this.notifyChanged();
         return value;
     }
     
@@ -115,6 +240,7 @@ public class AtomicVariable<V> implements Supplier<V> {
      * Atomically change the variable value to the new value ONLY when the current value pass the check.
      * 
      * NOTE: The expectedChecker might to be called more than once for execution.
+     *       In {@link UpdateMode#OPTIMISTIC} mode, so might the newValueFunction.
      * 
      * @param expectedChecker
      *          the predicate to determine if the current value still as expected. 
@@ -125,17 +251,150 @@ public class AtomicVariable<V> implements Supplier<V> {
     public final boolean checkBeforeUpdate(
             final Predicate<V>   expectedChecker,
             final Function<V, V> newValueFunction) {
+        return this.checkBeforeUpdate(expectedChecker, newValueFunction, this.backoffStrategy);
+    }
+    
+    /**
+     * Atomically change the variable value to the new value ONLY when the current value pass the check -- backing off
+     *   with the given strategy (instead of the variable's) after losing a race.
+     * 
+     * NOTE: The expectedChecker might to be called more than once for execution.
+     *       In {@link UpdateMode#OPTIMISTIC} mode, so might the newValueFunction.
+     * 
+     * @param expectedChecker
+     *          the predicate to determine if the current value still as expected. 
+     * @param newValueFunction
+     *          the function to calculate the new value from the current one.
+     * @param backoffStrategy
+     *          the backoff strategy for this update.
+     * @return {@code true} if the change is successful.
+     */
+    public final boolean checkBeforeUpdate(
+            final Predicate<V>    expectedChecker,
+            final Function<V, V>  newValueFunction,
+            final BackoffStrategy backoffStrategy) {
+        Objects.requireNonNull(backoffStrategy);
+        Instrumentation<V> instrumentation = this.instrumentation;
+        if (instrumentation != null) {
+            return instrumentation.checkBeforeUpdate(this, expectedChecker, newValueFunction, backoffStrategy);
+        }
+        return this.uninstrumentedCheckBeforeUpdate(expectedChecker, newValueFunction, backoffStrategy);
+    }
+    
+    final boolean uninstrumentedCheckBeforeUpdate(
+            final Predicate<V>    expectedChecker,
+            final Function<V, V>  newValueFunction,
+            final BackoffStrategy backoffStrategy) {
+        if (this.mode == UpdateMode.OPTIMISTIC) {
+            return this.compareAndSetLoop(expectedChecker, newValueFunction, backoffStrategy);
+        }
         if (expectedChecker.test(this.value)) {
+            if (this.combiner != null) {
+                return this.combiner.apply(expectedChecker, newValueFunction);
+            }
             synchronized (this) {
-                if (expectedChecker.test(this.value)) {
-                    this.value = newValueFunction.apply(this.value);
-                    return true;
+                this.enterBusy();
+                try {
+                    return this.lockedCheckAndUpdate(expectedChecker, newValueFunction);
+                } finally {
+                    this.exitBusy();
                 }
             }
         }
         return false;
     }
     
+    /**
+     * Atomically change the variable value to the new value ONLY when the current value pass the check -- giving up
+     *   right away if another update is in progress.
+     * 
+     * NOTE: The try is best effort in the locking modes -- an update that takes the monitor at the very same time
+     *         might still be waited for. The try updates are not instrumented.
+     * 
+     * @param expectedChecker
+     *          the predicate to determine if the current value still as expected. 
+     * @param newValueFunction
+     *          the function to calculate the new value from the current one.
+     * @return the outcome.
+     */
+    public final TryUpdateResult tryCheckBeforeUpdate(
+            final Predicate<V>   expectedChecker,
+            final Function<V, V> newValueFunction) {
+        V current = this.value;
+        if (!expectedChecker.test(current)) {
+            return TryUpdateResult.CHECK_FAILED;
+        }
+        return this.tryUpdate(current, expectedChecker, newValueFunction);
+    }
+    
+    /**
+     * Atomically change the variable value to the new value ONLY when the current value pass the check -- trying again
+     *   (with the variable's backoff strategy or, if it has none, spinning, then yielding and then parking) while
+     *   another update is in progress until the deadline.
+     * 
+     * NOTE: The try is best effort in the locking modes -- an update that takes the monitor at the very same time
+     *         might still be waited for. The try updates are not instrumented.
+     * 
+     * @param expectedChecker
+     *          the predicate to determine if the current value still as expected. 
+     * @param newValueFunction
+     *          the function to calculate the new value from the current one.
+     * @param deadline
+     *          the deadline in {@link System#nanoTime()}.
+     * @return the outcome.
+     */
+    public final TryUpdateResult tryCheckBeforeUpdate(
+            final Predicate<V>   expectedChecker,
+            final Function<V, V> newValueFunction,
+            final long           deadline) {
+        BackoffStrategy backoffStrategy = this.backoffStrategy;
+        if (backoffStrategy == BackoffStrategy.NONE) {
+            backoffStrategy = TRY_BACKOFF;
+        }
+        int attempt = 0;
+        while (true) {
+            V current = this.value;
+            if (!expectedChecker.test(current)) {
+                return TryUpdateResult.CHECK_FAILED;
+            }
+            TryUpdateResult result = this.tryUpdate(current, expectedChecker, newValueFunction);
+            if ((result != TryUpdateResult.CONTENDED) || (deadline - System.nanoTime() <= 0)) {
+                return result;
+            }
+            backoffStrategy.backoff(++attempt);
+        }
+    }
+    
+    private TryUpdateResult tryUpdate(
+            final V              current,
+            final Predicate<V>   expectedChecker,
+            final Function<V, V> newValueFunction) {
+        if (this.mode == UpdateMode.OPTIMISTIC) {
+            V newValue = newValueFunction.apply(current);
+            if (!VALUE.compareAndSet(this, current, newValue)) {
+                return TryUpdateResult.CONTENDED;
+            }
+            this.notifyChanged();
+            return TryUpdateResult.UPDATED;
+        }
+        if (this.busyCount != 0) {
+            return TryUpdateResult.CONTENDED;
+        }
+        if (this.combiner != null) {
+            return this.combiner.tryApply(expectedChecker, newValueFunction);
+        }
+        synchronized (this) {
+            this.enterBusy();
+            try {
+                return this.lockedCheckAndUpdate(expectedChecker, newValueFunction)
+                        ? TryUpdateResult.UPDATED
+                        : TryUpdateResult.CHECK_FAILED;
+            } finally {
+                this.exitBusy();
+            }
+        }
+    }
+    
     /**
      * Atomically change the variable value to the new value ONLY when the current value is as expected.
      * 
@@ -198,6 +457,7 @@ public class AtomicVariable<V> implements Supplier<V> {
      * Atomically change the variable value to the new value ONLY when the current value pass the check.
      * 
      * NOTE: The expectedChecker might to be called more than once for execution.
+     *       In {@link UpdateMode#OPTIMISTIC} mode, so might the newValueFunction.
      * 
      * @param expectedChecker
      *          the predicate to determine if the current value still as expected. 
@@ -208,14 +468,443 @@ public class AtomicVariable<V> implements Supplier<V> {
     public final V updateAfterCheck(
             final Predicate<V>   expectedChecker,
             final Function<V, V> newValueFunction) {
+        this.checkBeforeUpdate(expectedChecker, newValueFunction);
+        return this.value;
+    }
+    
+    /**
+     * Atomically change the variable value to the new value ONLY when the current value pass the check -- backing off
+     *   with the given strategy (instead of the variable's) after losing a race.
+     * 
+     * NOTE: The expectedChecker might to be called more than once for execution.
+     *       In {@link UpdateMode#OPTIMISTIC} mode, so might the newValueFunction.
+     * 
+     * @param expectedChecker
+     *          the predicate to determine if the current value still as expected. 
+     * @param newValueFunction
+     *          the function to calculate the new value from the current one.
+     * @param backoffStrategy
+     *          the backoff strategy for this update.
+     * @return the value that is in the variable at the end of the invocation.
+     */
+    public final V updateAfterCheck(
+            final Predicate<V>    expectedChecker,
+            final Function<V, V>  newValueFunction,
+            final BackoffStrategy backoffStrategy) {
+        this.checkBeforeUpdate(expectedChecker, newValueFunction, backoffStrategy);
+        return this.value;
+    }
+    
+    /**
+     * Returns a read-only variable with the value computed from the value of this variable -- recomputed lazily,
+     *   only after this variable has changed (see {@link DerivedVariable}).
+     * 
+     * @param function
+     *          the function to compute the derived value from the value of this variable.
+     * @return the derived variable.
+     */
+    public final <R> DerivedVariable<R> map(
+            final Function<? super V, ? extends R> function) {
+        return DerivedVariable.map(this, function);
+    }
+    
+    /**
+     * Returns a read-only variable with the value computed from the values of the two sources -- recomputed lazily,
+     *   only after any of the sources has changed (see {@link DerivedVariable}).
+     * 
+     * @param sourceA
+     *          the first source -- an {@link AtomicVariable} or a {@link DerivedVariable}.
+     * @param sourceB
+     *          the second source -- an {@link AtomicVariable} or a {@link DerivedVariable}.
+     * @param function
+     *          the function to compute the derived value from the values of the sources.
+     * @return the derived variable.
+     */
+    public static <A, B, R> DerivedVariable<R> combine(
+            final Supplier<A>                                    sourceA,
+            final Supplier<B>                                    sourceB,
+            final BiFunction<? super A, ? super B, ? extends R> function) {
+        return DerivedVariable.combine(sourceA, sourceB, function);
+    }
+    
+    /**
+     * Start collecting the contention and latency figures of this variable's updates.
+     * 
+     * NOTE: Enabling again starts over with a new set of figures.
+     * 
+     * @param name
+     *          the name to tell this variable in the figures and the JFR events.
+     * @return the figures.
+     */
+    public final VariableMetrics enableInstrumentation(
+            final String name) {
+        Instrumentation<V> instrumentation = new Instrumentation<V>(Objects.requireNonNull(name), this.mode);
+        this.instrumentation = instrumentation;
+        return instrumentation;
+    }
+    
+    /**
+     * Stop collecting the figures -- the figures already collected are still readable from the returned metrics.
+     */
+    public final void disableInstrumentation() {
+        this.instrumentation = null;
+    }
+    
+    /**
+     * Returns the figures of this variable.
+     * 
+     * @return the figures or null if the instrumentation is not enabled.
+     */
+    public final VariableMetrics getMetrics() {
+        return this.instrumentation;
+    }
+    
+    /**
+     * Queue the change to the new value ONLY when the current value pass the check.
+     * 
+     * NOTE: The change is applied on the async executor (see {@link #setAsyncExecutor(Executor)}).
+     * 
+     * @param expectedChecker
+     *          the predicate to determine if the current value still as expected.
+     * @param newValueFunction
+     *          the function to calculate the new value from the current one.
+     * @return the future of {@code true} if the change is successful.
+     */
+    public final CompletableFuture<Boolean> checkBeforeUpdateAsync(
+            final Predicate<V>   expectedChecker,
+            final Function<V, V> newValueFunction) {
+        return this.asyncUpdater().submitCheck(expectedChecker, newValueFunction);
+    }
+    
+    /**
+     * Queue the change to the new value ONLY when the current value pass the check.
+     * 
+     * NOTE: The change is applied on the async executor (see {@link #setAsyncExecutor(Executor)}).
+     * 
+     * @param expectedChecker
+     *          the predicate to determine if the current value still as expected.
+     * @param newValueFunction
+     *          the function to calculate the new value from the current one.
+     * @return the future of the value that is in the variable right after the change was tried.
+     */
+    public final CompletableFuture<V> updateAsync(
+            final Predicate<V>   expectedChecker,
+            final Function<V, V> newValueFunction) {
+        return this.asyncUpdater().submitUpdate(expectedChecker, newValueFunction);
+    }
+    
+    /**
+     * Set the executor to apply the async changes -- this can only be done before the first async change.
+     * 
+     * @param executor
+     *          the executor.
+     * @throws IllegalStateException
+     *          if an async change was already made.
+     */
+    public final void setAsyncExecutor(
+            final Executor executor) {
+        AsyncUpdater<V> updater = new AsyncUpdater<V>(this, Objects.requireNonNull(executor));
+        if (!ASYNC_UPDATER.compareAndSet(this, null, updater)) {
+            throw new IllegalStateException("The async executor is already in use.");
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    private AsyncUpdater<V> asyncUpdater() {
+        AsyncUpdater<V> updater = this.asyncUpdater;
+        if (updater == null) {
+            ASYNC_UPDATER.compareAndSet(this, null, new AsyncUpdater<V>(this, ForkJoinPool.commonPool()));
+            updater = ASYNC_UPDATER.get(this);
+        }
+        return updater;
+    }
+    
+    /**
+     * Listen to the changes of this variable -- the listener is called on the common fork-join pool.
+     * 
+     * @param listener
+     *          the listener to be given the new values.
+     * @return the subscription.
+     */
+    public final Subscription<V> subscribe(
+            final Consumer<? super V> listener) {
+        return this.subscribe(listener, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * Listen to the changes of this variable.
+     * 
+     * The listener is called by the executor, never by the writer. The changes that happen while a notification is
+     *   pending are coalesced so a slow listener is only given the latest value (see {@link Subscription}).
+     * 
+     * NOTE: The executor is called by the writer (at most once per pending notification) so it should not block.
+     * 
+     * @param listener
+     *          the listener to be given the new values.
+     * @param executor
+     *          the executor to run the listener.
+     * @return the subscription.
+     */
+    public final Subscription<V> subscribe(
+            final Consumer<? super V> listener,
+            final Executor            executor) {
+        Objects.requireNonNull(listener);
+        Objects.requireNonNull(executor);
+        V               initial      = this.value;
+        Subscription<V> subscription = new Subscription<V>(this, listener, executor, initial);
+        synchronized (this) {
+            Subscription<V>[] current = this.subscriptions;
+            if (current == null) {
+                @SuppressWarnings("unchecked")
+                Subscription<V>[] newSubscriptions = (Subscription<V>[])new Subscription<?>[] { subscription };
+                this.subscriptions = newSubscriptions;
+            } else {
+                Subscription<V>[] newSubscriptions = Arrays.copyOf(current, current.length + 1);
+                newSubscriptions[current.length] = subscription;
+                this.subscriptions = newSubscriptions;
+            }
+        }
+        // A change made after the initial value was read but before the subscription was in did not notify it.
+        if (this.value != initial) {
+            subscription.changed();
+        }
+        return subscription;
+    }
+    
+    /**
+     * Wait until the value pass the condition -- an interrupt does not end the wait but is kept for the caller.
+     * 
+     * NOTE: The condition is tested by the writers against each new value (while they hold the monitor in the locking
+     *         modes) so it should be cheap and must not block. A value that passes the condition might already be
+     *         replaced by the time this method returns.
+     * 
+     * @param condition
+     *          the condition the value is waited to pass.
+     * @return the value that passed the condition.
+     */
+    public final V awaitUntil(
+            final Predicate<? super V> condition) {
+        V current = this.value;
+        if (condition.test(current)) {
+            return current;
+        }
+        Waiter<V> waiter = new Waiter<V>(condition);
+        try {
+            this.await(waiter, 0, false);
+        } catch (InterruptedException exception) {
+            // Not thrown when not interruptible.
+            throw new IllegalStateException(exception);
+        }
+        return waiter.value();
+    }
+    
+    /**
+     * Wait until the value pass the condition or until the thread is interrupted.
+     * 
+     * NOTE: The condition is tested by the writers against each new value (while they hold the monitor in the locking
+     *         modes) so it should be cheap and must not block.
+     * 
+     * @param condition
+     *          the condition the value is waited to pass.
+     * @return the value that passed the condition.
+     * @throws InterruptedException
+     *          if the thread is interrupted while waiting.
+     */
+    public final V awaitUntilInterruptibly(
+            final Predicate<? super V> condition) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        V current = this.value;
+        if (condition.test(current)) {
+            return current;
+        }
+        Waiter<V> waiter = new Waiter<V>(condition);
+        this.await(waiter, 0, true);
+        return waiter.value();
+    }
+    
+    /**
+     * Wait until the value pass the condition, until the timeout or until the thread is interrupted.
+     * 
+     * NOTE: The condition is tested by the writers against each new value (while they hold the monitor in the locking
+     *         modes) so it should be cheap and must not block.
+     * 
+     * @param condition
+     *          the condition the value is waited to pass.
+     * @param timeout
+     *          the longest time to wait.
+     * @param unit
+     *          the unit of the timeout.
+     * @return {@code true} if the value passed the condition or {@code false} if the time is up.
+     * @throws InterruptedException
+     *          if the thread is interrupted while waiting.
+     */
+    public final boolean awaitUntil(
+            final Predicate<? super V> condition,
+            final long                 timeout,
+            final TimeUnit             unit) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (condition.test(this.value)) {
+            return true;
+        }
+        if (timeout <= 0) {
+            return false;
+        }
+        // Never 0 -- that means no deadline.
+        long      deadline = (System.nanoTime() + unit.toNanos(timeout)) | 1L;
+        Waiter<V> waiter   = new Waiter<V>(condition);
+        if (!this.await(waiter, deadline, true)) {
+            return false;
+        }
+        // Rethrow the failure of the condition if any.
+        waiter.value();
+        return true;
+    }
+    
+    private boolean await(
+            final Waiter<V> waiter,
+            final long      deadline,
+            final boolean   isInterruptible) throws InterruptedException {
+        this.addWaiter(waiter);
+        try {
+            // Tested again now that the writers can see the waiter -- the value might have changed in between.
+            waiter.test(this.value);
+            return waiter.await(deadline, isInterruptible);
+        } finally {
+            this.removeWaiter(waiter);
+        }
+    }
+    
+    private void addWaiter(
+            final Waiter<V> waiter) {
+        synchronized (this) {
+            Waiter<V>[] current = this.waiters;
+            if (current == null) {
+                @SuppressWarnings("unchecked")
+                Waiter<V>[] newWaiters = (Waiter<V>[])new Waiter<?>[] { waiter };
+                this.waiters = newWaiters;
+            } else {
+                Waiter<V>[] newWaiters = Arrays.copyOf(current, current.length + 1);
+                newWaiters[current.length] = waiter;
+                this.waiters = newWaiters;
+            }
+        }
+    }
+    
+    private void removeWaiter(
+            final Waiter<V> waiter) {
+        synchronized (this) {
+            Waiter<V>[] current = this.waiters;
+            if (current == null) {
+                return;
+            }
+            int index = Arrays.asList(current).indexOf(waiter);
+            if (index == -1) {
+                return;
+            }
+            if (current.length == 1) {
+                this.waiters = null;
+                return;
+            }
+            Waiter<V>[] newWaiters = Arrays.copyOf(current, current.length - 1);
+            System.arraycopy(current, index + 1, newWaiters, index, current.length - index - 1);
+            this.waiters = newWaiters;
+        }
+    }
+    
+    final void unsubscribe(
+            final Subscription<V> subscription) {
+        synchronized (this) {
+            Subscription<V>[] current = this.subscriptions;
+            if (current == null) {
+                return;
+            }
+            int index = Arrays.asList(current).indexOf(subscription);
+            if (index == -1) {
+                return;
+            }
+            if (current.length == 1) {
+                this.subscriptions = null;
+                return;
+            }
+            Subscription<V>[] newSubscriptions = Arrays.copyOf(current, current.length - 1);
+            System.arraycopy(current, index + 1, newSubscriptions, index, current.length - index - 1);
+            this.subscriptions = newSubscriptions;
+        }
+    }
+    
+    private void notifyChanged() {
+        Subscription<V>[] subscriptions = this.subscriptions;
+        if (subscriptions != null) {
+            for (Subscription<V> subscription : subscriptions) {
+                subscription.changed();
+            }
+        }
+        Waiter<V>[] waiters = this.waiters;
+        if (waiters != null) {
+            V current = this.value;
+            for (Waiter<V> waiter : waiters) {
+                waiter.test(current);
+            }
+        }
+    }
+    
+    /**
+     * Mark the monitor as held by one more update -- the caller must hold this variable's monitor.
+     */
+    final void enterBusy() {
+        this.busyCount++;
+    }
+    
+    /**
+     * Unmark one update marked by {@link #enterBusy()} -- the caller must hold this variable's monitor.
+     */
+    final void exitBusy() {
+        this.busyCount--;
+    }
+    
+    /**
+     * Check the current value and change it if it pass the check -- the caller must hold this variable's monitor.
+     * 
+     * @return {@code true} if the change is successful.
+     */
+    final boolean lockedCheckAndUpdate(
+            final Predicate<V>   expectedChecker,
+            final Function<V, V> newValueFunction) {
         if (expectedChecker.test(this.value)) {
-            synchronized (this) {
-                if (expectedChecker.test(this.value)) {
-                    this.value = newValueFunction.apply(this.value);
-                }
+            this.value = newValueFunction.apply(this.value);
+            this.notifyChanged();
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Keep trying to swap in the new value until it succeeds or until the current value no longer pass the check --
+     *   backing off after each lost race.
+     * 
+     * @return {@code true} if the change is successful.
+     */
+    private boolean compareAndSetLoop(
+            final Predicate<V>    expectedChecker,
+            final Function<V, V>  newValueFunction,
+            final BackoffStrategy backoffStrategy) {
+        int attempt = 0;
+        while (true) {
+            V current = this.value;
+            if (!expectedChecker.test(current)) {
+                return false;
             }
+            V newValue = newValueFunction.apply(current);
+            if (VALUE.compareAndSet(this, current, newValue)) {
+                this.notifyChanged();
+                return true;
+            }
+            backoffStrategy.backoff(++attempt);
         }
-        return this.value;
     }
     
 }
@@ -0,0 +1,252 @@
+package nawaman.papercuts.concurrency.atomicvariable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/**
+ * An array of atomic variables kept in one backing array -- no object, header or monitor per element.
+ * 
+ * Each element has the semantics of an {@link AtomicVariable} in {@link UpdateMode#OPTIMISTIC} mode (the changes
+ *   are applied with compare-and-set). With padding, the elements are spread two cache lines (or more) apart so the
+ *   threads updating the neighboring elements do not slow each other down -- at the cost of 32 times the memory.
+ * 
+ * The bulk operations ({@link #updateAll(Function)}, {@link #snapshot()} and {@link #reduce(Object, BinaryOperator)})
+ *   run in parallel on the common fork-join pool. Each element is read or updated atomically but the bulk operation
+ *   as a whole is not -- the concurrent changes may be seen for some elements and not for the others.
+ * 
+ * @author NawaMan
+ */
+public class AtomicVariableArray<V> {
+    
+    /**
+     * The number of the references per element when padded -- 128 bytes with the compressed references (to also keep
+     *   the adjacent line apart, as the primitive arrays do) and 256 bytes without.
+     */
+    static final int PADDED_STRIDE = 32;
+    
+    private final AtomicReferenceArray<V> array;
+    
+    private final int length;
+    
+    private final int stride;
+    
+    /**
+     * Construct an array of the given length -- all elements are null.
+     * 
+     * @param length
+     *          the number of the elements.
+     */
+    public AtomicVariableArray(
+            final int length) {
+        this(length, false);
+    }
+    
+    /**
+     * Construct an array of the given length with or without the padding between the elements -- all elements are null.
+     * 
+     * @param length
+     *          the number of the elements.
+     * @param isPadded
+     *          {@code true} to keep each element on a cache line of its own.
+     */
+    public AtomicVariableArray(
+            final int     length,
+            final boolean isPadded) {
+        if (length < 0) {
+            throw new IllegalArgumentException("length must not be negative: " + length);
+        }
+        this.length = length;
+        this.stride = isPadded ? PADDED_STRIDE : 1;
+        // When padded, the first element is also kept away from the array header.
+        this.array  = new AtomicReferenceArray<V>(isPadded ? Math.multiplyExact(length + 1, PADDED_STRIDE) : length);
+    }
+    
+    private int indexOf(
+            final int index) {
+        if ((index < 0) || (index >= this.length)) {
+            throw new IndexOutOfBoundsException("index: " + index);
+        }
+        return (this.stride == 1) ? index : (index + 1) * this.stride;
+    }
+    
+    /**
+     * Returns the number of the elements.
+     * 
+     * @return the length.
+     */
+    public final int length() {
+        return this.length;
+    }
+    
+    /**
+     * Obtains the element value.
+     * 
+     * @param index
+     *          the element index.
+     * @return the element value.
+     **/
+    public final V get(
+            final int index) {
+        return this.array.get(this.indexOf(index));
+    }
+    
+    /**
+     * Change the element value.
+     * 
+     * @param index
+     *          the element index.
+     * @param value
+     *          the new value.
+     * @return the new value.
+     */
+    public final V set(
+            final int index,
+            final V   value) {
+        this.array.set(this.indexOf(index), value);
+        return value;
+    }
+    
+    /**
+     * Atomically change the element value to the new value ONLY when the current value is as expected.
+     * 
+     * NOTE: The {@code Objects#equals(current,expected)} is consulted to see if the current value is as expected.
+     * 
+     * @param index
+     *          the element index.
+     * @param expected
+     *          the expected current value.
+     * @param newValue
+     *          the new value.
+     * @return {@code true} if the change is successful.
+     */
+    public final boolean compareBeforeSet(
+            final int index,
+            final V   expected,
+            final V   newValue) {
+        return this.checkBeforeUpdate(
+                index,
+                current -> Objects.equals(current, expected),
+                current->newValue);
+    }
+    
+    /**
+     * Atomically change the element value to the new value ONLY when the current value pass the check.
+     * 
+     * NOTE: The expectedChecker might to be called more than once for execution.
+     * 
+     * @param index
+     *          the element index.
+     * @param expectedChecker
+     *          the predicate to determine if the current value still as expected.
+     * @param newValue
+     *          the new value.
+     * @return {@code true} if the change is successful.
+     */
+    public final boolean checkBeforeSet(
+            final int          index,
+            final Predicate<V> expectedChecker,
+            final V            newValue) {
+        return this.checkBeforeUpdate(
+                index,
+                expectedChecker,
+                current->newValue);
+    }
+    
+    /**
+     * Atomically change the element value to the new value ONLY when the current value pass the check.
+     * 
+     * NOTE: The expectedChecker and the newValueFunction might to be called more than once for execution.
+     * 
+     * @param index
+     *          the element index.
+     * @param expectedChecker
+     *          the predicate to determine if the current value still as expected.
+     * @param newValueFunction
+     *          the function to calculate the new value from the current one.
+     * @return {@code true} if the change is successful.
+     */
+    public final boolean checkBeforeUpdate(
+            final int            index,
+            final Predicate<V>   expectedChecker,
+            final Function<V, V> newValueFunction) {
+        int i = this.indexOf(index);
+        while (true) {
+            V current = this.array.get(i);
+            if (!expectedChecker.test(current)) {
+                return false;
+            }
+            if (this.array.compareAndSet(i, current, newValueFunction.apply(current))) {
+                return true;
+            }
+        }
+    }
+    
+    /**
+     * Atomically change the element value to the new value ONLY when the current value pass the check.
+     * 
+     * NOTE: The expectedChecker and the newValueFunction might to be called more than once for execution.
+     * 
+     * @param index
+     *          the element index.
+     * @param expectedChecker
+     *          the predicate to determine if the current value still as expected.
+     * @param newValueFunction
+     *          the function to calculate the new value from the current one.
+     * @return the value that is in the element at the end of the invocation.
+     */
+    public final V updateAfterCheck(
+            final int            index,
+            final Predicate<V>   expectedChecker,
+            final Function<V, V> newValueFunction) {
+        this.checkBeforeUpdate(index, expectedChecker, newValueFunction);
+        return this.get(index);
+    }
+    
+    /**
+     * Atomically update each element with the function -- in parallel.
+     * 
+     * @param newValueFunction
+     *          the function to calculate the new value from the current one.
+     */
+    public final void updateAll(
+            final Function<V, V> newValueFunction) {
+        IntStream.range(0, this.length).parallel().forEach(index -> {
+            this.checkBeforeUpdate(index, current -> true, newValueFunction);
+        });
+    }
+    
+    /**
+     * Returns the values of the elements.
+     * 
+     * @return the values in the order of the index.
+     */
+    public final List<V> snapshot() {
+        @SuppressWarnings("unchecked")
+        V[] values = (V[])new Object[this.length];
+        IntStream.range(0, this.length).parallel().forEach(index -> values[index] = this.get(index));
+        return Collections.unmodifiableList(Arrays.asList(values));
+    }
+    
+    /**
+     * Combine the values of the elements -- in parallel.
+     * 
+     * @param identity
+     *          the identity value of the accumulator.
+     * @param accumulator
+     *          the associative function to combine two values.
+     * @return the combined value.
+     */
+    public final V reduce(
+            final V                 identity,
+            final BinaryOperator<V> accumulator) {
+        return IntStream.range(0, this.length).parallel().mapToObj(this::get).reduce(identity, accumulator);
+    }
+    
+}
@@ -0,0 +1,148 @@
+package nawaman.papercuts.concurrency.atomicvariable;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * What a thread does after losing a compare-and-set race and before it tries again.
+ * 
+ * Retrying right away is the fastest when the races are rare but, with many cores hitting the same variable, the
+ *   retries themselves keep the cache line bouncing and most of them lose again. Backing off lets the winner finish
+ *   and spreads the losers out -- at the cost of the latency of the losers.
+ * 
+ * The strategy is shared by all the threads using it so it must keep no state of its own -- the number of the
+ *   failed attempts so far is given instead.
+ * 
+ * NOTE: Only the compare-and-set loop of {@link UpdateMode#OPTIMISTIC} backs off -- the other modes wait on the
+ *         monitor (which the JVM already spins on adaptively) or on the combiner.
+ * 
+ * @author NawaMan
+ */
+public interface BackoffStrategy {
+    
+    /** Retry right away. */
+    public static final BackoffStrategy NONE = attempt -> {};
+    
+    /**
+     * Back off after a failed attempt.
+     * 
+     * @param attempt
+     *          the number of the failed attempts so far for this change (starts at 1).
+     */
+    public void backoff(int attempt);
+    
+    /**
+     * Returns the strategy that retries right away -- the default.
+     * 
+     * @return the strategy.
+     */
+    public static BackoffStrategy none() {
+        return NONE;
+    }
+    
+    /**
+     * Returns the strategy that hints the processor that the thread is spinning ({@code Thread.onSpinWait()}) once
+     *   for each failed attempt -- it does nothing more than an immediate retry on a JVM without the hint.
+     * 
+     * @return the strategy.
+     */
+    public static BackoffStrategy onSpinWait() {
+        return attempt -> SpinWait.onSpinWait();
+    }
+    
+    /**
+     * Returns the strategy that spins for the first few attempts, then yields for a few more and then parks.
+     * 
+     * @param spins
+     *          the number of the attempts to spin after.
+     * @param yields
+     *          the number of the attempts to yield after (after the spins).
+     * @param parkTime
+     *          the time to park after each of the later attempts.
+     * @param unit
+     *          the unit of the park time.
+     * @return the strategy.
+     */
+    public static BackoffStrategy spinYieldPark(
+            final int      spins,
+            final int      yields,
+            final long     parkTime,
+            final TimeUnit unit) {
+        if ((spins < 0) || (yields < 0) || (parkTime <= 0)) {
+            throw new IllegalArgumentException("spins and yields must not be negative and parkTime must be positive.");
+        }
+        long parkNanos = unit.toNanos(parkTime);
+        return attempt -> {
+            if (attempt <= spins) {
+                SpinWait.onSpinWait();
+            } else if (attempt <= spins + yields) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(parkNanos);
+            }
+        };
+    }
+    
+    /**
+     * Returns the strategy that parks for a random time up to a limit that doubles with each failed attempt -- the
+     *   randomness ("full jitter") keeps the losers of the same race from all coming back at the same time.
+     * 
+     * @param minTime
+     *          the limit after the first failed attempt.
+     * @param maxTime
+     *          the largest limit.
+     * @param unit
+     *          the unit of the times.
+     * @return the strategy.
+     */
+    public static BackoffStrategy exponential(
+            final long     minTime,
+            final long     maxTime,
+            final TimeUnit unit) {
+        if ((minTime <= 0) || (maxTime < minTime)) {
+            throw new IllegalArgumentException("minTime must be positive and maxTime must not be less than minTime.");
+        }
+        long minNanos = unit.toNanos(minTime);
+        long maxNanos = unit.toNanos(maxTime);
+        return attempt -> {
+            int  shift = Math.min(attempt - 1, Long.numberOfLeadingZeros(minNanos) - 1);
+            long limit = Math.min(minNanos << shift, maxNanos);
+            LockSupport.parkNanos(ThreadLocalRandom.current().nextLong(limit) + 1);
+        };
+    }
+    
+    // == AUX class ====================================================================================================
+    
+    /** Calls {@code Thread.onSpinWait()} when the JVM has it (Java 9+). */
+    static final class SpinWait {
+        
+        private static final MethodHandle ON_SPIN_WAIT = findOnSpinWait();
+        
+        private SpinWait() {
+        }
+        
+        static void onSpinWait() {
+            if (ON_SPIN_WAIT != null) {
+                try {
+                    ON_SPIN_WAIT.invokeExact();
+                } catch (Throwable exception) {
+                    // Not thrown by Thread.onSpinWait().
+                }
+            }
+        }
+        
+        private static MethodHandle findOnSpinWait() {
+            try {
+                return MethodHandles.lookup().findStatic(Thread.class, "onSpinWait", MethodType.methodType(void.class));
+            } catch (NoSuchMethodException | IllegalAccessException exception) {
+                return null;
+            }
+        }
+        
+    }
+    
+}
@@ -0,0 +1,219 @@
+package nawaman.papercuts.concurrency.atomicvariable;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * The flat-combining engine of an AtomicVariable in {@link UpdateMode#COMBINING} mode.
+ * 
+ * A thread that finds the combiner role free takes it and applies its own change. A thread that finds it taken
+ *   publishes its change as a request and waits. The combiner applies all the published requests in one pass
+ *   (in the order they were published) while holding the variable's monitor once, then wakes up their threads with
+ *   the results. When the combiner is done, the role is handed off to one of the threads still waiting.
+ * 
+ * A change made by a thread that already holds the variable's monitor (from within a new-value function, a
+ *   transaction or a listener called in place) is applied right away -- as the re-entered monitor of
+ *   {@link UpdateMode#LOCKING} would -- since waiting for a combiner would then be waiting for itself.
+ * 
+ * @author NawaMan
+ */
+final class Combiner<V> {
+    
+    /** The maximum passes a combiner does over the publication list before handing off the combiner role. */
+    private static final int MAX_PASSES = 4;
+    
+    /** The number of times a waiting thread checks for its result before parking. */
+    private static final int SPINS = 128;
+    
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<Combiner, Request> PENDING
+            = AtomicReferenceFieldUpdater.newUpdater(Combiner.class, Request.class, "pending");
+    
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<Combiner> COMBINING
+            = AtomicIntegerFieldUpdater.newUpdater(Combiner.class, "combining");
+    
+    private final AtomicVariable<V> variable;
+    
+    /** The publication list -- a stack of the requests, the latest one on top. */
+    private volatile Request<V> pending;
+    
+    /** 1 when a thread holds the combiner role. */
+    private volatile int combining;
+    
+    Combiner(final AtomicVariable<V> variable) {
+        this.variable = variable;
+    }
+    
+    /**
+     * Apply the change (as a combiner or by a combiner) and return {@code true} if the change was made.
+     */
+    boolean apply(
+            final Predicate<V>   expectedChecker,
+            final Function<V, V> newValueFunction) {
+        if (Thread.holdsLock(this.variable)) {
+            return this.variable.lockedCheckAndUpdate(expectedChecker, newValueFunction);
+        }
+        if (this.tryCombine()) {
+            boolean isChanged;
+            try {
+                synchronized (this.variable) {
+                    this.variable.enterBusy();
+                    try {
+                        isChanged = this.variable.lockedCheckAndUpdate(expectedChecker, newValueFunction);
+                        this.combinePending();
+                    } finally {
+                        this.variable.exitBusy();
+                    }
+                }
+            } finally {
+                this.releaseCombiner();
+            }
+            return isChanged;
+        }
+        
+        Request<V> request = new Request<V>(expectedChecker, newValueFunction, Thread.currentThread());
+        this.publish(request);
+        int spins = 0;
+        while (!request.isDone) {
+            if (this.tryCombine()) {
+                try {
+                    synchronized (this.variable) {
+                        this.variable.enterBusy();
+                        try {
+                            this.combinePending();
+                        } finally {
+                            this.variable.exitBusy();
+                        }
+                    }
+                } finally {
+                    this.releaseCombiner();
+                }
+            } else if (spins < SPINS) {
+                spins++;
+            } else {
+                LockSupport.park(this);
+            }
+        }
+        if (request.failure instanceof RuntimeException) {
+            throw (RuntimeException)request.failure;
+        }
+        if (request.failure instanceof Error) {
+            throw (Error)request.failure;
+        }
+        return request.isChanged;
+    }
+    
+    /**
+     * Apply the change as the combiner -- or give up right away if another thread is the combiner.
+     */
+    TryUpdateResult tryApply(
+            final Predicate<V>   expectedChecker,
+            final Function<V, V> newValueFunction) {
+        if (!this.tryCombine()) {
+            return TryUpdateResult.CONTENDED;
+        }
+        boolean isChanged;
+        try {
+            synchronized (this.variable) {
+                this.variable.enterBusy();
+                try {
+                    isChanged = this.variable.lockedCheckAndUpdate(expectedChecker, newValueFunction);
+                    this.combinePending();
+                } finally {
+                    this.variable.exitBusy();
+                }
+            }
+        } finally {
+            this.releaseCombiner();
+        }
+        return isChanged ? TryUpdateResult.UPDATED : TryUpdateResult.CHECK_FAILED;
+    }
+    
+    private boolean tryCombine() {
+        return (this.combining == 0) && COMBINING.compareAndSet(this, 0, 1);
+    }
+    
+    private void releaseCombiner() {
+        this.combining = 0;
+        // Hand the combiner role off to a thread that is still waiting, if any.
+        Request<V> head = this.pending;
+        if (head != null) {
+            LockSupport.unpark(head.thread);
+        }
+    }
+    
+    private void publish(
+            final Request<V> request) {
+        while (true) {
+            Request<V> head = this.pending;
+            request.next = head;
+            if (PENDING.compareAndSet(this, head, request)) {
+                return;
+            }
+        }
+    }
+    
+    /** Must be called by the combiner while holding the variable's monitor. */
+    @SuppressWarnings("unchecked")
+    private void combinePending() {
+        for (int pass = 0; pass < MAX_PASSES; pass++) {
+            Request<V> head = PENDING.getAndSet(this, null);
+            if (head == null) {
+                return;
+            }
+            
+            // Reverse so that the requests are applied in the order they were published.
+            Request<V> first = null;
+            while (head != null) {
+                Request<V> next = head.next;
+                head.next = first;
+                first     = head;
+                head      = next;
+            }
+            
+            for (Request<V> request = first; request != null; ) {
+                Request<V> next = request.next;
+                try {
+                    request.isChanged = this.variable.lockedCheckAndUpdate(request.checker, request.function);
+                } catch (RuntimeException | Error failure) {
+                    request.failure = failure;
+                }
+                request.next   = null;
+                request.isDone = true;
+                LockSupport.unpark(request.thread);
+                request = next;
+            }
+        }
+    }
+    
+    // == AUX class ====================================================================================================
+    
+    /** A published change waiting to be applied by the combiner. */
+    static final class Request<V> {
+        
+        final Predicate<V>   checker;
+        final Function<V, V> function;
+        final Thread         thread;
+        
+        Request<V> next;
+        
+        boolean   isChanged;
+        Throwable failure;
+        
+        volatile boolean isDone;
+        
+        Request(final Predicate<V>   checker,
+                final Function<V, V> function,
+                final Thread         thread) {
+            this.checker  = checker;
+            this.function = function;
+            this.thread   = thread;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,165 @@
+package nawaman.papercuts.concurrency.atomicvariable;
+
+import java.util.Objects;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A read-only variable computed from other variables -- see {@link AtomicVariable#map(Function)} and
+ *   {@link AtomicVariable#combine(Supplier, Supplier, BiFunction)}.
+ * 
+ * Nothing is computed until the value is read. The value is then kept with the values of the sources it was computed
+ *   from (their stamps) and each later read only checks that the sources still have the very same values -- the
+ *   value is recomputed (once, even with many readers) only when one of them has changed. The sources are compared by
+ *   identity, so a source that is given a new but equal value causes a recomputation. A recomputed value that is equal
+ *   to the previous one does not replace it though -- so the variables derived from this one do not recompute and the
+ *   unchanged branches of the dependency graph are never recomputed.
+ * 
+ * NOTE: The sources must return the same instance for as long as they are unchanged -- as {@link AtomicVariable} and
+ *         {@link DerivedVariable} do. The functions must be free from side effects.
+ * 
+ * @author NawaMan
+ */
+public final class DerivedVariable<V> implements Supplier<V> {
+    
+    private final Supplier<?>[] sources;
+    
+    private final Function<Object[], V> function;
+    
+    /** The last computed value with its stamps -- null until the first read. */
+    private volatile State<V> state;
+    
+    DerivedVariable(
+            final Supplier<?>[]         sources,
+            final Function<Object[], V> function) {
+        for (Supplier<?> source : sources) {
+            Objects.requireNonNull(source);
+        }
+        this.sources  = sources;
+        this.function = Objects.requireNonNull(function);
+    }
+    
+    @SuppressWarnings("unchecked")
+    static <S, V> DerivedVariable<V> map(
+            final Supplier<S>                      source,
+            final Function<? super S, ? extends V> function) {
+        Objects.requireNonNull(function);
+        return new DerivedVariable<V>(new Supplier<?>[] { source }, inputs -> function.apply((S)inputs[0]));
+    }
+    
+    @SuppressWarnings("unchecked")
+    static <A, B, V> DerivedVariable<V> combine(
+            final Supplier<A>                                    sourceA,
+            final Supplier<B>                                    sourceB,
+            final BiFunction<? super A, ? super B, ? extends V> function) {
+        Objects.requireNonNull(function);
+        return new DerivedVariable<V>(new Supplier<?>[] { sourceA, sourceB }, inputs -> function.apply((A)inputs[0], (B)inputs[1]));
+    }
+    
+    /**
+     * Obtains the value -- computed if any of the sources has changed since the last read.
+     * 
+     * @return the value.
+     */
+    @Override
+    public V get() {
+        State<V> state = this.state;
+        if ((state != null) && state.isCurrent(this.sources)) {
+            return state.value;
+        }
+        return this.recompute().value;
+    }
+    
+    /**
+     * Returns the number of times the value has changed -- brought up to date first.
+     * 
+     * @return the version.
+     */
+    public long getVersion() {
+        State<V> state = this.state;
+        if ((state != null) && state.isCurrent(this.sources)) {
+            return state.version;
+        }
+        return this.recompute().version;
+    }
+    
+    /**
+     * Returns a variable derived from this one.
+     * 
+     * @param function
+     *          the function to compute the derived value from the value of this variable.
+     * @return the derived variable.
+     */
+    public <R> DerivedVariable<R> map(
+            final Function<? super V, ? extends R> function) {
+        return map(this, function);
+    }
+    
+    private synchronized State<V> recompute() {
+        // The sources are read again as another reader might have just recomputed.
+        Object[] stamps = new Object[this.sources.length];
+        for (int i = 0; i < stamps.length; i++) {
+            stamps[i] = this.sources[i].get();
+        }
+        State<V> state = this.state;
+        if ((state != null) && state.hasStamps(stamps)) {
+            return state;
+        }
+        
+        V        value    = this.function.apply(stamps);
+        State<V> newState;
+        if (state == null) {
+            newState = new State<V>(stamps, value, 0);
+        } else if (Objects.equals(value, state.value)) {
+            newState = new State<V>(stamps, state.value, state.version);
+        } else {
+            newState = new State<V>(stamps, value, state.version + 1);
+        }
+        this.state = newState;
+        return newState;
+    }
+    
+    // == AUX class ====================================================================================================
+    
+    /** A computed value with the values of the sources it was computed from. */
+    static final class State<V> {
+        
+        private final Object[] stamps;
+        
+        final V value;
+        
+        final long version;
+        
+        State(
+                final Object[] stamps,
+                final V        value,
+                final long     version) {
+            this.stamps  = stamps;
+            this.value   = value;
+            this.version = version;
+        }
+        
+        boolean isCurrent(
+                final Supplier<?>[] sources) {
+            for (int i = 0; i < sources.length; i++) {
+                if (sources[i].get() != this.stamps[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        boolean hasStamps(
+                final Object[] stamps) {
+            for (int i = 0; i < stamps.length; i++) {
+                if (stamps[i] != this.stamps[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+    }
+    
+}
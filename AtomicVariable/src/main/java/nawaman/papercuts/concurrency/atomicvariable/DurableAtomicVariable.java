@@ -0,0 +1,316 @@
+package nawaman.papercuts.concurrency.atomicvariable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * An atomic variable that survives the restarts -- each accepted change is appended to a memory-mapped log file
+ *   (through the given codec) before it becomes visible, and the last value in the log is restored on construction.
+ * 
+ * The log only needs the last value so it is compacted to that one record on start-up and whenever it fills up --
+ *   the restore never reads more than one file worth of records. The reads are the plain volatile reads of the
+ *   in-memory variable.
+ * 
+ * How soon the appended records reach the disk depends on the {@link SyncPolicy}. With {@link SyncPolicy#PER_WRITE},
+ *   a change returns only once it is synced; the sync is done outside the variable's monitor and covers all the
+ *   changes appended so far so the concurrent writers share one sync (group commit).
+ * 
+ * @author NawaMan
+ */
+public class DurableAtomicVariable<V> implements Supplier<V>, Closeable {
+    
+    /** When the appended records are forced to the disk. */
+    public static enum SyncPolicy {
+        /** Leave it to the operating system -- survives the process crashes but not the machine crashes. */
+        NONE,
+        /** Every sync interval, in the background. */
+        INTERVAL,
+        /** Before each change returns. */
+        PER_WRITE;
+    }
+    
+    private static final int DEFAULT_CAPACITY = 64 * 1024;
+    
+    private static final ScheduledExecutorService SYNC_SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable->{
+        Thread thread = new Thread(runnable, "DurableAtomicVariable-sync");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    private final AtomicVariable<V> variable;
+    
+    private final ValueCodec<V> codec;
+    
+    private final WriteAheadLog log;
+    
+    private final SyncPolicy syncPolicy;
+    
+    private final ScheduledFuture<?> syncTask;
+    
+    private volatile boolean isClosed = false;
+    
+    /**
+     * Construct a variable that syncs every change -- restored from the file if there is one.
+     * 
+     * @param file
+     *          the log file.
+     * @param defaultValue
+     *          the value when there is nothing to restore.
+     * @param codec
+     *          the codec of the values.
+     * @throws IOException
+     *          if the file cannot be read or created.
+     */
+    public DurableAtomicVariable(
+            final Path          file,
+            final V             defaultValue,
+            final ValueCodec<V> codec) throws IOException {
+        this(file, defaultValue, codec, SyncPolicy.PER_WRITE, 0, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Construct a variable with a log of the default capacity (64 KiB) -- restored from the file if there is one.
+     * 
+     * @param file
+     *          the log file.
+     * @param defaultValue
+     *          the value when there is nothing to restore.
+     * @param codec
+     *          the codec of the values.
+     * @param syncPolicy
+     *          the sync policy.
+     * @param syncInterval
+     *          the sync interval (only for {@link SyncPolicy#INTERVAL}).
+     * @param unit
+     *          the unit of the sync interval.
+     * @throws IOException
+     *          if the file cannot be read or created.
+     */
+    public DurableAtomicVariable(
+            final Path          file,
+            final V             defaultValue,
+            final ValueCodec<V> codec,
+            final SyncPolicy    syncPolicy,
+            final long          syncInterval,
+            final TimeUnit      unit) throws IOException {
+        this(file, defaultValue, codec, syncPolicy, syncInterval, unit, DEFAULT_CAPACITY);
+    }
+    
+    /**
+     * Construct a variable -- restored from the file if there is one.
+     * 
+     * The log is compacted (in the variable's monitor, with a sync) each time it fills up so the capacity should hold
+     *   many records -- it is grown when the records get big.
+     * 
+     * @param file
+     *          the log file.
+     * @param defaultValue
+     *          the value when there is nothing to restore.
+     * @param codec
+     *          the codec of the values.
+     * @param syncPolicy
+     *          the sync policy.
+     * @param syncInterval
+     *          the sync interval (only for {@link SyncPolicy#INTERVAL}).
+     * @param unit
+     *          the unit of the sync interval.
+     * @param capacity
+     *          the initial size of the log file in bytes.
+     * @throws IOException
+     *          if the file cannot be read or created.
+     */
+    public DurableAtomicVariable(
+            final Path          file,
+            final V             defaultValue,
+            final ValueCodec<V> codec,
+            final SyncPolicy    syncPolicy,
+            final long          syncInterval,
+            final TimeUnit      unit,
+            final int           capacity) throws IOException {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        if ((syncPolicy == SyncPolicy.INTERVAL) && (syncInterval <= 0)) {
+            throw new IllegalArgumentException("syncInterval must be positive: " + syncInterval);
+        }
+        this.codec      = Objects.requireNonNull(codec);
+        this.syncPolicy = Objects.requireNonNull(syncPolicy);
+        this.log        = new WriteAheadLog(file, capacity);
+        
+        V initialValue = defaultValue;
+        if (this.log.restore()) {
+            byte[] bytes = this.log.lastBytes();
+            initialValue = (bytes == null) ? null : codec.decode(bytes);
+        }
+        this.variable = new AtomicVariable<V>(initialValue);
+        this.syncTask = (syncPolicy == SyncPolicy.INTERVAL)
+                ? SYNC_SCHEDULER.scheduleWithFixedDelay(this.log::sync, syncInterval, syncInterval, unit)
+                : null;
+    }
+    
+    /**
+     * Returns the sync policy of this variable.
+     * 
+     * @return the sync policy.
+     */
+    public final SyncPolicy getSyncPolicy() {
+        return this.syncPolicy;
+    }
+    
+    /**
+     * Obtains the variable value.
+     * 
+     * @return the variable value.
+     **/
+    @Override
+    public final V get() {
+        return this.variable.get();
+    }
+    
+    /**
+     * Change the variable value.
+     * 
+     * @param value
+     *          the new value.
+     * @return the actual new value.
+     * @throws UncheckedIOException
+     *          if the change cannot be logged -- the value is then not changed.
+     */
+    public final V set(
+            final V value) {
+        this.checkBeforeUpdate(current -> true, current -> value);
+        return value;
+    }
+    
+    /**
+     * Atomically change the variable value to the new value ONLY when the current value pass the check.
+     * 
+     * NOTE: The expectedChecker might to be called more than once for execution.
+     * 
+     * @param expectedChecker
+     *          the predicate to determine if the current value still as expected.
+     * @param newValue
+     *          the new value.
+     * @return {@code true} if the change is successful.
+     * @throws UncheckedIOException
+     *          if the change cannot be logged -- the value is then not changed.
+     */
+    public final boolean checkBeforeSet(
+            final Predicate<V> expectedChecker,
+            final V            newValue) {
+        return this.checkBeforeUpdate(
+                expectedChecker,
+                current->newValue);
+    }
+    
+    /**
+     * Atomically change the variable value to the new value ONLY when the current value pass the check.
+     * 
+     * NOTE: The expectedChecker might to be called more than once for execution.
+     * 
+     * @param expectedChecker
+     *          the predicate to determine if the current value still as expected.
+     * @param newValueFunction
+     *          the function to calculate the new value from the current one.
+     * @return {@code true} if the change is successful.
+     * @throws UncheckedIOException
+     *          if the change cannot be logged -- the value is then not changed.
+     */
+    public final boolean checkBeforeUpdate(
+            final Predicate<V>   expectedChecker,
+            final Function<V, V> newValueFunction) {
+        long[] sequence = { 0 };
+        boolean isChanged = this.variable.checkBeforeUpdate(expectedChecker, current->{
+            V newValue = newValueFunction.apply(current);
+            // Appended while holding the monitor so the log has the changes in the same order.
+            sequence[0] = this.append(newValue);
+            return newValue;
+        });
+        if (isChanged && (this.syncPolicy == SyncPolicy.PER_WRITE)) {
+            this.log.syncUpTo(sequence[0]);
+        }
+        return isChanged;
+    }
+    
+    /**
+     * Atomically change the variable value to the new value ONLY when the current value pass the check.
+     * 
+     * NOTE: The expectedChecker might to be called more than once for execution.
+     * 
+     * @param expectedChecker
+     *          the predicate to determine if the current value still as expected.
+     * @param newValueFunction
+     *          the function to calculate the new value from the current one.
+     * @return the value that is in the variable at the end of the invocation.
+     * @throws UncheckedIOException
+     *          if the change cannot be logged -- the value is then not changed.
+     */
+    public final V updateAfterCheck(
+            final Predicate<V>   expectedChecker,
+            final Function<V, V> newValueFunction) {
+        this.checkBeforeUpdate(expectedChecker, newValueFunction);
+        return this.variable.get();
+    }
+    
+    /**
+     * Compact the log now rather than when it fills up.
+     * 
+     * @throws UncheckedIOException
+     *          if the log cannot be rewritten.
+     */
+    public final void compact() {
+        this.variable.checkBeforeUpdate(current -> true, current->{
+            this.ensureOpen();
+            try {
+                this.log.compact();
+            } catch (IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+            return current;
+        });
+    }
+    
+    /**
+     * Sync the log and stop taking the changes.
+     */
+    @Override
+    public void close() {
+        synchronized (this.variable) {
+            if (this.isClosed) {
+                return;
+            }
+            this.isClosed = true;
+        }
+        if (this.syncTask != null) {
+            this.syncTask.cancel(false);
+        }
+        this.log.sync();
+    }
+    
+    private long append(
+            final V newValue) {
+        this.ensureOpen();
+        try {
+            return this.log.append((newValue == null) ? null : this.codec.encode(newValue));
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+    
+    private void ensureOpen() {
+        if (this.isClosed) {
+            throw new IllegalStateException("The variable is closed.");
+        }
+    }
+    
+}
@@ -0,0 +1,170 @@
+package nawaman.papercuts.concurrency.atomicvariable;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * The instrumentation of a variable -- wraps the check and the new value function of each update to see how many
+ *   times they are called and how long they take.
+ * 
+ * Each update is also emitted as a JFR event when JFR is available and the event is enabled.
+ * 
+ * @author NawaMan
+ */
+class Instrumentation<V> implements VariableMetrics {
+    
+    private final String name;
+    
+    private final UpdateMode mode;
+    
+    private final LongAdder updateCount = new LongAdder();
+    
+    private final LongAdder changeCount = new LongAdder();
+    
+    private final LongAdder checkFailureCount = new LongAdder();
+    
+    private final LongAdder recheckFailureCount = new LongAdder();
+    
+    private final LongAdder retryCount = new LongAdder();
+    
+    private final LatencyHistogram waitTimes = new LatencyHistogram();
+    
+    private final LatencyHistogram functionTimes = new LatencyHistogram();
+    
+    Instrumentation(
+            final String     name,
+            final UpdateMode mode) {
+        this.name = name;
+        this.mode = mode;
+    }
+    
+    @Override
+    public String getName() {
+        return this.name;
+    }
+    
+    @Override
+    public long getUpdateCount() {
+        return this.updateCount.sum();
+    }
+    
+    @Override
+    public long getChangeCount() {
+        return this.changeCount.sum();
+    }
+    
+    @Override
+    public long getCheckFailureCount() {
+        return this.checkFailureCount.sum();
+    }
+    
+    @Override
+    public long getRecheckFailureCount() {
+        return this.recheckFailureCount.sum();
+    }
+    
+    @Override
+    public long getRetryCount() {
+        return this.retryCount.sum();
+    }
+    
+    @Override
+    public LatencyHistogram getWaitTimes() {
+        return this.waitTimes;
+    }
+    
+    @Override
+    public LatencyHistogram getFunctionTimes() {
+        return this.functionTimes;
+    }
+    
+    boolean checkBeforeUpdate(
+            final AtomicVariable<V> variable,
+            final Predicate<V>      expectedChecker,
+            final Function<V, V>    newValueFunction,
+            final BackoffStrategy   backoffStrategy) {
+        Probe<V> probe = new Probe<V>(expectedChecker, newValueFunction);
+        long    start     = System.nanoTime();
+        boolean isChanged = variable.uninstrumentedCheckBeforeUpdate(probe::test, probe::apply, backoffStrategy);
+        long    end       = System.nanoTime();
+        this.record(probe, isChanged, start, end);
+        return isChanged;
+    }
+    
+    private void record(
+            final Probe<V> probe,
+            final boolean  isChanged,
+            final long     start,
+            final long     end) {
+        this.updateCount.increment();
+        if (isChanged) {
+            this.changeCount.increment();
+        }
+        
+        // The check is tested once before the lock (or the first attempt) and again for each try that counts.
+        boolean isCheckFailed   = !isChanged && (probe.testCount == 1);
+        boolean isRecheckFailed = !isChanged && (probe.testCount > 1);
+        if (this.mode == UpdateMode.OPTIMISTIC) {
+            // Each attempt applies the function once -- all but the successful one lost the race.
+            this.retryCount.add(isChanged ? probe.applyCount - 1 : probe.applyCount);
+        }
+        if (isCheckFailed) {
+            this.checkFailureCount.increment();
+            return;
+        }
+        if (isRecheckFailed) {
+            this.recheckFailureCount.increment();
+        }
+        
+        long waitTime = (end - start) - probe.functionTime;
+        this.waitTimes.record(waitTime);
+        if (probe.applyCount != 0) {
+            this.functionTimes.record(probe.functionTime);
+        }
+        if (JfrSupport.IS_AVAILABLE) {
+            JfrSupport.emit(this.name, this.mode, waitTime, probe.functionTime, isChanged, isRecheckFailed);
+        }
+    }
+    
+    // == AUX class ====================================================================================================
+    
+    /** Counts and times the calls of the check and the function -- they may be called from the combiner thread. */
+    static class Probe<V> {
+        
+        private final Predicate<V> expectedChecker;
+        
+        private final Function<V, V> newValueFunction;
+        
+        volatile int testCount;
+        
+        volatile int applyCount;
+        
+        volatile long functionTime;
+        
+        Probe(
+                final Predicate<V>   expectedChecker,
+                final Function<V, V> newValueFunction) {
+            this.expectedChecker  = expectedChecker;
+            this.newValueFunction = newValueFunction;
+        }
+        
+        boolean test(V value) {
+            boolean isPassed = this.expectedChecker.test(value);
+            this.testCount++;
+            return isPassed;
+        }
+        
+        V apply(V value) {
+            long start = System.nanoTime();
+            try {
+                return this.newValueFunction.apply(value);
+            } finally {
+                this.applyCount++;
+                this.functionTime += System.nanoTime() - start;
+            }
+        }
+        
+    }
+    
+}
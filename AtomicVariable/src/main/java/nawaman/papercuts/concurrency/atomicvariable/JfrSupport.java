@@ -0,0 +1,35 @@
+package nawaman.papercuts.concurrency.atomicvariable;
+
+/**
+ * The gate to the JFR events -- {@link UpdateEvent} is only touched when JFR is there so the library still runs on
+ *   the JVMs without it.
+ * 
+ * @author NawaMan
+ */
+final class JfrSupport {
+    
+    static final boolean IS_AVAILABLE = isAvailable();
+    
+    private JfrSupport() {
+    }
+    
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException | LinkageError exception) {
+            return false;
+        }
+    }
+    
+    static void emit(
+            final String     name,
+            final UpdateMode mode,
+            final long       waitTime,
+            final long       functionTime,
+            final boolean    isChanged,
+            final boolean    isRecheckFailed) {
+        UpdateEvent.emit(name, mode, waitTime, functionTime, isChanged, isRecheckFailed);
+    }
+    
+}
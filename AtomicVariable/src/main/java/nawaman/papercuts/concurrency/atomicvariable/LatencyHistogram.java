@@ -0,0 +1,92 @@
+package nawaman.papercuts.concurrency.atomicvariable;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of the latencies in nanoseconds with power-of-two buckets -- precise to within a factor of two, cheap
+ *   to record into from many threads at once.
+ * 
+ * Bucket {@code i} counts the latencies in [2^(i-1), 2^i) nanoseconds (bucket 0 counts the zeros).
+ * 
+ * @author NawaMan
+ */
+public final class LatencyHistogram {
+    
+    /** The number of the buckets. */
+    public static final int BUCKET_COUNT = 64;
+    
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    
+    private final LongAdder total = new LongAdder();
+    
+    LatencyHistogram() {
+    }
+    
+    void record(
+            final long nanos) {
+        long latency = Math.max(nanos, 0);
+        this.counts.incrementAndGet(Math.min(64 - Long.numberOfLeadingZeros(latency), BUCKET_COUNT - 1));
+        this.total.add(latency);
+    }
+    
+    /**
+     * Returns the number of the recorded latencies.
+     * 
+     * @return the count.
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += this.counts.get(i);
+        }
+        return count;
+    }
+    
+    /**
+     * Returns the number of the recorded latencies in the bucket.
+     * 
+     * @param bucket
+     *          the bucket index.
+     * @return the count.
+     */
+    public long getCount(
+            final int bucket) {
+        return this.counts.get(bucket);
+    }
+    
+    /**
+     * Returns the mean of the recorded latencies.
+     * 
+     * @return the mean in nanoseconds or 0 if nothing is recorded.
+     */
+    public double getMean() {
+        long count = this.getCount();
+        return (count == 0) ? 0.0 : (double)this.total.sum() / count;
+    }
+    
+    /**
+     * Returns the upper bound of the bucket that holds the given percentile.
+     * 
+     * @param percentile
+     *          the percentile in [0, 100].
+     * @return the latency in nanoseconds or 0 if nothing is recorded.
+     */
+    public long getPercentile(
+            final double percentile) {
+        long count = this.getCount();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long)Math.ceil(count * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += this.counts.get(i);
+            if ((seen >= rank) && (seen != 0)) {
+                return (i == 0) ? 0 : (i == BUCKET_COUNT - 1) ? Long.MAX_VALUE : (1L << i) - 1;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+    
+}
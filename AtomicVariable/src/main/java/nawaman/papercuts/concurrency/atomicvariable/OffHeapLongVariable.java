@@ -0,0 +1,222 @@
+package nawaman.papercuts.concurrency.atomicvariable;
+
+import java.util.function.LongPredicate;
+import java.util.function.LongSupplier;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * An AtomicVariable for a {@code long} value kept in a slot of a {@link SharedMemory} -- shared by all the processes
+ *   that map the same file.
+ * 
+ * There is no monitor across the processes so the changes are always applied with compare-and-set on the slot (as
+ *   in {@link UpdateMode#OPTIMISTIC}).
+ * 
+ * @author NawaMan
+ */
+public class OffHeapLongVariable implements LongSupplier {
+    
+    /** Keeps the mapping alive. */
+    private final SharedMemory memory;
+    
+    private final long address;
+    
+    OffHeapLongVariable(
+            final SharedMemory memory,
+            final long         address) {
+        this.memory  = memory;
+        this.address = address;
+    }
+    
+    /**
+     * Returns the shared memory this variable is in.
+     * 
+     * @return the shared memory.
+     */
+    public final SharedMemory getMemory() {
+        return this.memory;
+    }
+    
+    /**
+     * Obtains the variable value.
+     * 
+     * @return the variable value.
+     **/
+    public final long get() {
+        return UnsafeAccess.getLongVolatile(this.address);
+    }
+    
+    /**
+     * Obtains the variable value.
+     * 
+     * @return the variable value.
+     **/
+    @Override
+    public final long getAsLong() {
+        return UnsafeAccess.getLongVolatile(this.address);
+    }
+    
+    /**
+     * Change the variable value.
+     * 
+     * @param value
+     *          the new value.
+     * @return the new value.
+     */
+    public final long set(
+            final long value) {
+        UnsafeAccess.putLongVolatile(this.address, value);
+        return value;
+    }
+    
+    /**
+     * Atomically change the variable value to the new value ONLY when the current value is as expected.
+     * 
+     * @param expected
+     *          the expected current value.
+     * @param newValue
+     *          the new value.
+     * @return {@code true} if the change is successful.
+     */
+    public final boolean compareBeforeSet(
+            final long expected,
+            final long newValue) {
+        return UnsafeAccess.compareAndSwapLong(this.address, expected, newValue);
+    }
+    
+    /**
+     * Atomically change the variable value to the new value determined from the current value ONLY when the current
+     *   value is as expected.
+     * 
+     * @param expected
+     *          the expected current value.
+     * @param newValueFunction
+     *          the function to calculate the new value from the current one.
+     * @return {@code true} if the change is successful.
+     */
+    public final boolean compareBeforeUpdate(
+            final long              expected,
+            final LongUnaryOperator newValueFunction) {
+        return (this.get() == expected)
+            && UnsafeAccess.compareAndSwapLong(this.address, expected, newValueFunction.applyAsLong(expected));
+    }
+    
+    /**
+     * Atomically change the variable value to the new value ONLY when the current value pass the check.
+     * 
+     * NOTE: The expectedChecker might to be called more than once for execution.
+     * 
+     * @param expectedChecker
+     *          the predicate to determine if the current value still as expected.
+     * @param newValue
+     *          the new value.
+     * @return {@code true} if the change is successful.
+     */
+    public final boolean checkBeforeSet(
+            final LongPredicate expectedChecker,
+            final long          newValue) {
+        while (true) {
+            long current = this.get();
+            if (!expectedChecker.test(current)) {
+                return false;
+            }
+            if (UnsafeAccess.compareAndSwapLong(this.address, current, newValue)) {
+                return true;
+            }
+        }
+    }
+    
+    /**
+     * Atomically change the variable value to the new value ONLY when the current value pass the check.
+     * 
+     * NOTE: The expectedChecker and the newValueFunction might to be called more than once for execution.
+     * 
+     * @param expectedChecker
+     *          the predicate to determine if the current value still as expected.
+     * @param newValueFunction
+     *          the function to calculate the new value from the current one.
+     * @return {@code true} if the change is successful.
+     */
+    public final boolean checkBeforeUpdate(
+            final LongPredicate     expectedChecker,
+            final LongUnaryOperator newValueFunction) {
+        while (true) {
+            long current = this.get();
+            if (!expectedChecker.test(current)) {
+                return false;
+            }
+            if (UnsafeAccess.compareAndSwapLong(this.address, current, newValueFunction.applyAsLong(current))) {
+                return true;
+            }
+        }
+    }
+    
+    /**
+     * Atomically change the variable value to the new value ONLY when the current value is as expected.
+     * 
+     * @param expected
+     *          the expected current value.
+     * @param newValue
+     *          the new value.
+     * @return the value that is in the variable at the end of the invocation.
+     */
+    public final long setAfterCompare(
+            final long expected,
+            final long newValue) {
+        this.compareBeforeSet(expected, newValue);
+        return this.get();
+    }
+    
+    /**
+     * Atomically change the variable value to the new value determined from the current value ONLY when the current
+     *   value is as expected.
+     * 
+     * @param expected
+     *          the expected current value.
+     * @param newValueFunction
+     *          the function to calculate the new value from the current one.
+     * @return the value that is in the variable at the end of the invocation.
+     */
+    public final long updateAfterCompare(
+            final long              expected,
+            final LongUnaryOperator newValueFunction) {
+        this.compareBeforeUpdate(expected, newValueFunction);
+        return this.get();
+    }
+    
+    /**
+     * Atomically change the variable value to the new value ONLY when the current value pass the check.
+     * 
+     * NOTE: The expectedChecker might to be called more than once for execution.
+     * 
+     * @param expectedChecker
+     *          the predicate to determine if the current value still as expected.
+     * @param newValue
+     *          the new value.
+     * @return the value that is in the variable at the end of the invocation.
+     */
+    public final long setAfterCheck(
+            final LongPredicate expectedChecker,
+            final long          newValue) {
+        this.checkBeforeSet(expectedChecker, newValue);
+        return this.get();
+    }
+    
+    /**
+     * Atomically change the variable value to the new value ONLY when the current value pass the check.
+     * 
+     * NOTE: The expectedChecker and the newValueFunction might to be called more than once for execution.
+     * 
+     * @param expectedChecker
+     *          the predicate to determine if the current value still as expected.
+     * @param newValueFunction
+     *          the function to calculate the new value from the current one.
+     * @return the value that is in the variable at the end of the invocation.
+     */
+    public final long updateAfterCheck(
+            final LongPredicate     expectedChecker,
+            final LongUnaryOperator newValueFunction) {
+        this.checkBeforeUpdate(expectedChecker, newValueFunction);
+        return this.get();
+    }
+    
+}
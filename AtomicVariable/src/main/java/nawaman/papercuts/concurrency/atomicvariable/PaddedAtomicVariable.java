@@ -0,0 +1,84 @@
+package nawaman.papercuts.concurrency.atomicvariable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * An AtomicVariable padded so the objects allocated after it cannot share the cache line of its value.
+ * 
+ * The padding fields come after the fields of AtomicVariable so, between the value and the next object, there are at
+ *   least 128 bytes (two cache lines, to also defeat the adjacent-line prefetch). Java has no way to pad in front of
+ *   the fields of a superclass so the value is NOT alone on its line: it shares the line with the variable's own
+ *   header and fields -- the busy marker included, which is only written by the updates holding this variable's
+ *   monitor (and so writing the lock word in that same header anyway) -- and with the tail of whatever object was
+ *   allocated right before the variable.
+ * 
+ * {@link #allocate(int, IntFunction, UpdateMode)} makes that tail the padding of another hot variable: it obtains all
+ *   the default values first and then allocates the variables back to back so only the first value follows an
+ *   unrelated object (and, in {@link UpdateMode#COMBINING}, each value follows the combiner of the variable before
+ *   it). This only holds for the layout at the allocation -- a moving garbage collector may place them otherwise.
+ * 
+ * NOTE: {@code @Contended} would do this better but it is not usable outside the JDK without a JVM flag.
+ * 
+ * @author NawaMan
+ */
+public class PaddedAtomicVariable<V> extends AtomicVariable<V> {
+    
+    /** Padding after the variable fields. */
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+    
+    /**
+     * Construct a variable with a default value.
+     * 
+     * @param defaultValue
+     *          the default value.
+     */
+    public PaddedAtomicVariable(
+            final V defaultValue) {
+        super(defaultValue);
+    }
+    
+    /**
+     * Construct a variable with a default value and the mode to apply the changes.
+     * 
+     * @param defaultValue
+     *          the default value.
+     * @param mode
+     *          the update mode.
+     */
+    public PaddedAtomicVariable(
+            final V          defaultValue,
+            final UpdateMode mode) {
+        super(defaultValue, mode);
+    }
+    
+    /**
+     * Allocate the hot variables one right after another -- each value right after the padding of the variable before.
+     * 
+     * @param count
+     *          the number of the variables.
+     * @param defaultValues
+     *          the function to give the default value of each variable from its index.
+     * @param mode
+     *          the update mode.
+     * @return the variables.
+     */
+    public static <V> List<AtomicVariable<V>> allocate(
+            final int            count,
+            final IntFunction<V> defaultValues,
+            final UpdateMode     mode) {
+        // The default values are obtained up front so they are not allocated in between the variables.
+        List<V> values = new ArrayList<V>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(defaultValues.apply(i));
+        }
+        List<AtomicVariable<V>> variables = new ArrayList<AtomicVariable<V>>(count);
+        for (int i = 0; i < count; i++) {
+            variables.add(new PaddedAtomicVariable<V>(values.get(i), mode));
+        }
+        return variables;
+    }
+    
+}
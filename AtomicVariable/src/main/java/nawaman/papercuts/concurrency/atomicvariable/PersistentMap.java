@@ -0,0 +1,597 @@
+package nawaman.papercuts.concurrency.atomicvariable;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * An immutable map that makes its changed copies by sharing all but the changed path of its trie -- to be held in an
+ *   {@link AtomicVariable} instead of a map that has to be copied as a whole on each change.
+ * 
+ * The map is a hash array mapped trie (in the compressed CHAMP layout): each node takes 5 bits of the key's hash and
+ *   keeps a bitmap of which of its 32 slots are in use so only the used slots are allocated. A change copies one node
+ *   per level -- O(log32 n) nodes of a few slots each -- while the rest of the trie is shared by the old and the new
+ *   map. An old map is never changed so anyone holding it has a consistent snapshot for as long as they need.
+ * 
+ * The map is read through the {@link Map} interface and changed through {@link #with(Object, Object)} and
+ *   {@link #without(Object)} -- the mutators of {@link Map} throw {@link UnsupportedOperationException}. The keys
+ *   are compared with {@code equals(...)} and the keys with the same hash code end up in a list at the bottom of the
+ *   trie.
+ * 
+ * NOTE: Neither the keys nor the values can be null.
+ * 
+ * @author NawaMan
+ */
+public final class PersistentMap<K, V> extends AbstractMap<K, V> {
+    
+    private static final int BITS = 5;
+    
+    private static final int MASK = (1 << BITS) - 1;
+    
+    /** All 32 bits of the hash are used once the shift reaches this. */
+    private static final int MAX_SHIFT = 30;
+    
+    @SuppressWarnings("rawtypes")
+    private static final PersistentMap EMPTY = new PersistentMap<>(new BitmapNode<>(0, 0, new Object[0]), 0);
+    
+    private final Node<K, V> root;
+    
+    private final int size;
+    
+    private transient Set<Map.Entry<K, V>> entrySet;
+    
+    private PersistentMap(
+            final Node<K, V> root,
+            final int        size) {
+        this.root = root;
+        this.size = size;
+    }
+    
+    /**
+     * Returns the empty map.
+     * 
+     * @return the empty map.
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentMap<K, V> empty() {
+        return (PersistentMap<K, V>)EMPTY;
+    }
+    
+    /**
+     * Returns a map with the entries of the given map.
+     * 
+     * @param map
+     *          the entries.
+     * @return the persistent map.
+     */
+    public static <K, V> PersistentMap<K, V> of(
+            final Map<? extends K, ? extends V> map) {
+        PersistentMap<K, V> result = empty();
+        for (Map.Entry<? extends K, ? extends V> entry : map.entrySet()) {
+            result = result.with(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+    
+    /**
+     * Atomically put the entry into the map in the variable.
+     * 
+     * @param variable
+     *          the variable holding the map.
+     * @param key
+     *          the key.
+     * @param value
+     *          the value.
+     * @return the map that is in the variable at the end of the invocation.
+     */
+    public static <K, V> PersistentMap<K, V> putIn(
+            final AtomicVariable<PersistentMap<K, V>> variable,
+            final K                                   key,
+            final V                                   value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        return variable.updateAfterCheck(map -> true, map -> map.with(key, value));
+    }
+    
+    /**
+     * Atomically remove the entry of the key from the map in the variable.
+     * 
+     * @param variable
+     *          the variable holding the map.
+     * @param key
+     *          the key.
+     * @return the map that is in the variable at the end of the invocation.
+     */
+    public static <K, V> PersistentMap<K, V> removeFrom(
+            final AtomicVariable<PersistentMap<K, V>> variable,
+            final Object                              key) {
+        return variable.updateAfterCheck(map -> map.containsKey(key), map -> map.without(key));
+    }
+    
+    /**
+     * Returns the map with the entry -- this map if it already has the entry.
+     * 
+     * @param key
+     *          the key.
+     * @param value
+     *          the value.
+     * @return the new map.
+     */
+    public PersistentMap<K, V> with(
+            final K key,
+            final V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        int[] sizeChange = { 0 };
+        Node<K, V> newRoot = this.root.with(key, value, key.hashCode(), 0, sizeChange);
+        if (newRoot == this.root) {
+            return this;
+        }
+        return new PersistentMap<K, V>(newRoot, this.size + sizeChange[0]);
+    }
+    
+    /**
+     * Returns the map without the entry of the key -- this map if it does not have the key.
+     * 
+     * @param key
+     *          the key.
+     * @return the new map.
+     */
+    public PersistentMap<K, V> without(
+            final Object key) {
+        if (key == null) {
+            return this;
+        }
+        Node<K, V> newRoot = this.root.without(key, key.hashCode(), 0);
+        if (newRoot == this.root) {
+            return this;
+        }
+        return (this.size == 1) ? empty() : new PersistentMap<K, V>(newRoot, this.size - 1);
+    }
+    
+    @Override
+    public int size() {
+        return this.size;
+    }
+    
+    @Override
+    public V get(
+            final Object key) {
+        return (key == null) ? null : this.root.get(key, key.hashCode(), 0);
+    }
+    
+    @Override
+    public boolean containsKey(
+            final Object key) {
+        return this.get(key) != null;
+    }
+    
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> entrySet = this.entrySet;
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Map.Entry<K, V>>() {
+                @Override
+                public Iterator<Map.Entry<K, V>> iterator() {
+                    return new EntryIterator<K, V>(PersistentMap.this.root);
+                }
+                @Override
+                public int size() {
+                    return PersistentMap.this.size;
+                }
+            };
+            this.entrySet = entrySet;
+        }
+        return entrySet;
+    }
+    
+    private static int fragment(
+            final int hash,
+            final int shift) {
+        return (hash >>> shift) & MASK;
+    }
+    
+    /** Make the node holding the two entries that could not stay in the same slot at the previous level. */
+    private static <K, V> Node<K, V> merge(
+            final K   key0,
+            final V   value0,
+            final int hash0,
+            final K   key1,
+            final V   value1,
+            final int hash1,
+            final int shift) {
+        if (shift > MAX_SHIFT) {
+            return new CollisionNode<K, V>(hash0, new Object[] { key0, value0, key1, value1 });
+        }
+        int fragment0 = fragment(hash0, shift);
+        int fragment1 = fragment(hash1, shift);
+        if (fragment0 == fragment1) {
+            Node<K, V> node = merge(key0, value0, hash0, key1, value1, hash1, shift + BITS);
+            return new BitmapNode<K, V>(0, 1 << fragment0, new Object[] { node });
+        }
+        Object[] content = (fragment0 < fragment1)
+                ? new Object[] { key0, value0, key1, value1 }
+                : new Object[] { key1, value1, key0, value0 };
+        return new BitmapNode<K, V>((1 << fragment0) | (1 << fragment1), 0, content);
+    }
+    
+    // == AUX class ====================================================================================================
+    
+    /** A node of the trie -- the entries directly in it come first and then the sub nodes. */
+    static abstract class Node<K, V> {
+        
+        abstract V get(Object key, int hash, int shift);
+        
+        /** Returns this node if nothing is changed -- the size change is put in the given array. */
+        abstract Node<K, V> with(K key, V value, int hash, int shift, int[] sizeChange);
+        
+        /** Returns this node if the key is not found. */
+        abstract Node<K, V> without(Object key, int hash, int shift);
+        
+        abstract int entryCount();
+        
+        abstract K keyAt(int index);
+        
+        abstract V valueAt(int index);
+        
+        abstract int nodeCount();
+        
+        abstract Node<K, V> nodeAt(int index);
+        
+    }
+    
+    /** The node with the entries and the sub nodes in the slots of its bitmaps. */
+    static final class BitmapNode<K, V> extends Node<K, V> {
+        
+        private final int dataMap;
+        
+        private final int nodeMap;
+        
+        /** The keys and values of the entries in pairs followed by the sub nodes. */
+        private final Object[] content;
+        
+        BitmapNode(
+                final int      dataMap,
+                final int      nodeMap,
+                final Object[] content) {
+            this.dataMap = dataMap;
+            this.nodeMap = nodeMap;
+            this.content = content;
+        }
+        
+        @SuppressWarnings("unchecked")
+        @Override
+        V get(
+                final Object key,
+                final int    hash,
+                final int    shift) {
+            int bit = 1 << fragment(hash, shift);
+            if ((this.dataMap & bit) != 0) {
+                int index = Integer.bitCount(this.dataMap & (bit - 1));
+                return key.equals(this.content[2*index]) ? (V)this.content[2*index + 1] : null;
+            }
+            if ((this.nodeMap & bit) != 0) {
+                return this.nodeOf(bit).get(key, hash, shift + BITS);
+            }
+            return null;
+        }
+        
+        @SuppressWarnings("unchecked")
+        @Override
+        Node<K, V> with(
+                final K     key,
+                final V     value,
+                final int   hash,
+                final int   shift,
+                final int[] sizeChange) {
+            int bit = 1 << fragment(hash, shift);
+            if ((this.dataMap & bit) != 0) {
+                int index = Integer.bitCount(this.dataMap & (bit - 1));
+                K   existingKey   = (K)this.content[2*index];
+                V   existingValue = (V)this.content[2*index + 1];
+                if (key.equals(existingKey)) {
+                    if (value == existingValue) {
+                        return this;
+                    }
+                    Object[] content = this.content.clone();
+                    content[2*index + 1] = value;
+                    return new BitmapNode<K, V>(this.dataMap, this.nodeMap, content);
+                }
+                sizeChange[0] = 1;
+                Node<K, V> node = merge(existingKey, existingValue, existingKey.hashCode(), key, value, hash, shift + BITS);
+                return this.withEntryMovedToNode(bit, index, node);
+            }
+            if ((this.nodeMap & bit) != 0) {
+                Node<K, V> node    = this.nodeOf(bit);
+                Node<K, V> newNode = node.with(key, value, hash, shift + BITS, sizeChange);
+                return (newNode == node) ? this : this.withNode(bit, newNode);
+            }
+            sizeChange[0] = 1;
+            int      index   = Integer.bitCount(this.dataMap & (bit - 1));
+            Object[] content = new Object[this.content.length + 2];
+            System.arraycopy(this.content, 0, content, 0, 2*index);
+            content[2*index]     = key;
+            content[2*index + 1] = value;
+            System.arraycopy(this.content, 2*index, content, 2*index + 2, this.content.length - 2*index);
+            return new BitmapNode<K, V>(this.dataMap | bit, this.nodeMap, content);
+        }
+        
+        @Override
+        Node<K, V> without(
+                final Object key,
+                final int    hash,
+                final int    shift) {
+            int bit = 1 << fragment(hash, shift);
+            if ((this.dataMap & bit) != 0) {
+                int index = Integer.bitCount(this.dataMap & (bit - 1));
+                if (!key.equals(this.content[2*index])) {
+                    return this;
+                }
+                Object[] content = new Object[this.content.length - 2];
+                System.arraycopy(this.content, 0, content, 0, 2*index);
+                System.arraycopy(this.content, 2*index + 2, content, 2*index, this.content.length - 2*index - 2);
+                return new BitmapNode<K, V>(this.dataMap ^ bit, this.nodeMap, content);
+            }
+            if ((this.nodeMap & bit) != 0) {
+                Node<K, V> node    = this.nodeOf(bit);
+                Node<K, V> newNode = node.without(key, hash, shift + BITS);
+                if (newNode == node) {
+                    return this;
+                }
+                // A sub node left with a single entry is inlined so the trie stays as shallow as it can be.
+                if ((newNode.entryCount() == 1) && (newNode.nodeCount() == 0)) {
+                    return this.withNodeMovedToEntry(bit, newNode.keyAt(0), newNode.valueAt(0));
+                }
+                return this.withNode(bit, newNode);
+            }
+            return this;
+        }
+        
+        @Override
+        int entryCount() {
+            return Integer.bitCount(this.dataMap);
+        }
+        
+        @SuppressWarnings("unchecked")
+        @Override
+        K keyAt(
+                final int index) {
+            return (K)this.content[2*index];
+        }
+        
+        @SuppressWarnings("unchecked")
+        @Override
+        V valueAt(
+                final int index) {
+            return (V)this.content[2*index + 1];
+        }
+        
+        @Override
+        int nodeCount() {
+            return Integer.bitCount(this.nodeMap);
+        }
+        
+        @SuppressWarnings("unchecked")
+        @Override
+        Node<K, V> nodeAt(
+                final int index) {
+            return (Node<K, V>)this.content[2*this.entryCount() + index];
+        }
+        
+        private Node<K, V> nodeOf(
+                final int bit) {
+            return this.nodeAt(Integer.bitCount(this.nodeMap & (bit - 1)));
+        }
+        
+        private Node<K, V> withNode(
+                final int        bit,
+                final Node<K, V> node) {
+            Object[] content = this.content.clone();
+            content[2*this.entryCount() + Integer.bitCount(this.nodeMap & (bit - 1))] = node;
+            return new BitmapNode<K, V>(this.dataMap, this.nodeMap, content);
+        }
+        
+        private Node<K, V> withEntryMovedToNode(
+                final int        bit,
+                final int        entryIndex,
+                final Node<K, V> node) {
+            int      nodeIndex = Integer.bitCount(this.nodeMap & (bit - 1));
+            int      oldStart  = 2*this.entryCount();
+            Object[] content   = new Object[this.content.length - 1];
+            System.arraycopy(this.content, 0, content, 0, 2*entryIndex);
+            System.arraycopy(this.content, 2*entryIndex + 2, content, 2*entryIndex, oldStart - 2*entryIndex - 2);
+            int newStart = oldStart - 2;
+            System.arraycopy(this.content, oldStart, content, newStart, nodeIndex);
+            content[newStart + nodeIndex] = node;
+            System.arraycopy(this.content, oldStart + nodeIndex, content, newStart + nodeIndex + 1, this.nodeCount() - nodeIndex);
+            return new BitmapNode<K, V>(this.dataMap ^ bit, this.nodeMap | bit, content);
+        }
+        
+        private Node<K, V> withNodeMovedToEntry(
+                final int bit,
+                final K   key,
+                final V   value) {
+            int      entryIndex = Integer.bitCount(this.dataMap & (bit - 1));
+            int      nodeIndex  = Integer.bitCount(this.nodeMap & (bit - 1));
+            int      oldStart   = 2*this.entryCount();
+            Object[] content    = new Object[this.content.length + 1];
+            System.arraycopy(this.content, 0, content, 0, 2*entryIndex);
+            content[2*entryIndex]     = key;
+            content[2*entryIndex + 1] = value;
+            System.arraycopy(this.content, 2*entryIndex, content, 2*entryIndex + 2, oldStart - 2*entryIndex);
+            int newStart = oldStart + 2;
+            System.arraycopy(this.content, oldStart, content, newStart, nodeIndex);
+            System.arraycopy(this.content, oldStart + nodeIndex + 1, content, newStart + nodeIndex, this.nodeCount() - nodeIndex - 1);
+            return new BitmapNode<K, V>(this.dataMap | bit, this.nodeMap ^ bit, content);
+        }
+        
+    }
+    
+    /** The node at the bottom of the trie with the entries of the keys of the same hash code. */
+    static final class CollisionNode<K, V> extends Node<K, V> {
+        
+        private final int hash;
+        
+        /** The keys and values in pairs. */
+        private final Object[] content;
+        
+        CollisionNode(
+                final int      hash,
+                final Object[] content) {
+            this.hash    = hash;
+            this.content = content;
+        }
+        
+        @SuppressWarnings("unchecked")
+        @Override
+        V get(
+                final Object key,
+                final int    hash,
+                final int    shift) {
+            int index = this.indexOf(key);
+            return (index == -1) ? null : (V)this.content[2*index + 1];
+        }
+        
+        @Override
+        Node<K, V> with(
+                final K     key,
+                final V     value,
+                final int   hash,
+                final int   shift,
+                final int[] sizeChange) {
+            int index = this.indexOf(key);
+            if (index != -1) {
+                if (this.content[2*index + 1] == value) {
+                    return this;
+                }
+                Object[] content = this.content.clone();
+                content[2*index + 1] = value;
+                return new CollisionNode<K, V>(this.hash, content);
+            }
+            sizeChange[0] = 1;
+            Object[] content = Arrays.copyOf(this.content, this.content.length + 2);
+            content[this.content.length]     = key;
+            content[this.content.length + 1] = value;
+            return new CollisionNode<K, V>(this.hash, content);
+        }
+        
+        @Override
+        Node<K, V> without(
+                final Object key,
+                final int    hash,
+                final int    shift) {
+            int index = this.indexOf(key);
+            if (index == -1) {
+                return this;
+            }
+            Object[] content = new Object[this.content.length - 2];
+            System.arraycopy(this.content, 0, content, 0, 2*index);
+            System.arraycopy(this.content, 2*index + 2, content, 2*index, this.content.length - 2*index - 2);
+            return new CollisionNode<K, V>(this.hash, content);
+        }
+        
+        @Override
+        int entryCount() {
+            return this.content.length / 2;
+        }
+        
+        @SuppressWarnings("unchecked")
+        @Override
+        K keyAt(
+                final int index) {
+            return (K)this.content[2*index];
+        }
+        
+        @SuppressWarnings("unchecked")
+        @Override
+        V valueAt(
+                final int index) {
+            return (V)this.content[2*index + 1];
+        }
+        
+        @Override
+        int nodeCount() {
+            return 0;
+        }
+        
+        @Override
+        Node<K, V> nodeAt(
+                final int index) {
+            throw new IndexOutOfBoundsException();
+        }
+        
+        private int indexOf(
+                final Object key) {
+            for (int i = 0; i < this.content.length; i += 2) {
+                if (key.equals(this.content[i])) {
+                    return i / 2;
+                }
+            }
+            return -1;
+        }
+        
+    }
+    
+    /** Walks the trie depth first with a stack of the nodes being walked. */
+    static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+        
+        /** The deepest possible path -- one node per 5 bits of the hash and the collision node. */
+        private static final int MAX_DEPTH = (32 + BITS - 1) / BITS + 1;
+        
+        private final Node<K, V>[] nodes;
+        
+        private final int[] entryIndexes;
+        
+        private final int[] nodeIndexes;
+        
+        private int depth;
+        
+        @SuppressWarnings("unchecked")
+        EntryIterator(
+                final Node<K, V> root) {
+            this.nodes        = (Node<K, V>[])new Node<?, ?>[MAX_DEPTH];
+            this.entryIndexes = new int[MAX_DEPTH];
+            this.nodeIndexes  = new int[MAX_DEPTH];
+            this.nodes[0]     = root;
+            this.depth        = 0;
+        }
+        
+        @Override
+        public boolean hasNext() {
+            while (this.depth >= 0) {
+                Node<K, V> node = this.nodes[this.depth];
+                if (this.entryIndexes[this.depth] < node.entryCount()) {
+                    return true;
+                }
+                if (this.nodeIndexes[this.depth] < node.nodeCount()) {
+                    Node<K, V> child = node.nodeAt(this.nodeIndexes[this.depth]++);
+                    this.depth++;
+                    this.nodes[this.depth]        = child;
+                    this.entryIndexes[this.depth] = 0;
+                    this.nodeIndexes[this.depth]  = 0;
+                } else {
+                    this.nodes[this.depth] = null;
+                    this.depth--;
+                }
+            }
+            return false;
+        }
+        
+        @Override
+        public Map.Entry<K, V> next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Node<K, V> node  = this.nodes[this.depth];
+            int        index = this.entryIndexes[this.depth]++;
+            return new AbstractMap.SimpleImmutableEntry<K, V>(node.keyAt(index), node.valueAt(index));
+        }
+        
+    }
+    
+}
@@ -0,0 +1,126 @@
+package nawaman.papercuts.concurrency.atomicvariable;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * An immutable set that makes its changed copies by sharing all but the changed path of its trie -- to be held in an
+ *   {@link AtomicVariable} instead of a set that has to be copied as a whole on each change.
+ * 
+ * The set is a {@link PersistentMap} of its elements so it has the same costs -- see there.
+ * 
+ * NOTE: The elements cannot be null.
+ * 
+ * @author NawaMan
+ */
+public final class PersistentSet<E> extends AbstractSet<E> {
+    
+    private static final PersistentSet<Object> EMPTY = new PersistentSet<>(PersistentMap.empty());
+    
+    private final PersistentMap<E, Boolean> map;
+    
+    private PersistentSet(
+            final PersistentMap<E, Boolean> map) {
+        this.map = map;
+    }
+    
+    /**
+     * Returns the empty set.
+     * 
+     * @return the empty set.
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentSet<E> empty() {
+        return (PersistentSet<E>)EMPTY;
+    }
+    
+    /**
+     * Returns a set with the given elements.
+     * 
+     * @param elements
+     *          the elements.
+     * @return the persistent set.
+     */
+    public static <E> PersistentSet<E> of(
+            final Collection<? extends E> elements) {
+        PersistentSet<E> result = empty();
+        for (E element : elements) {
+            result = result.with(element);
+        }
+        return result;
+    }
+    
+    /**
+     * Atomically add the element to the set in the variable.
+     * 
+     * @param variable
+     *          the variable holding the set.
+     * @param element
+     *          the element.
+     * @return the set that is in the variable at the end of the invocation.
+     */
+    public static <E> PersistentSet<E> addTo(
+            final AtomicVariable<PersistentSet<E>> variable,
+            final E                                element) {
+        return variable.updateAfterCheck(set -> !set.contains(element), set -> set.with(element));
+    }
+    
+    /**
+     * Atomically remove the element from the set in the variable.
+     * 
+     * @param variable
+     *          the variable holding the set.
+     * @param element
+     *          the element.
+     * @return the set that is in the variable at the end of the invocation.
+     */
+    public static <E> PersistentSet<E> removeFrom(
+            final AtomicVariable<PersistentSet<E>> variable,
+            final Object                           element) {
+        return variable.updateAfterCheck(set -> set.contains(element), set -> set.without(element));
+    }
+    
+    /**
+     * Returns the set with the element -- this set if it already has the element.
+     * 
+     * @param element
+     *          the element.
+     * @return the new set.
+     */
+    public PersistentSet<E> with(
+            final E element) {
+        PersistentMap<E, Boolean> newMap = this.map.with(element, Boolean.TRUE);
+        return (newMap == this.map) ? this : new PersistentSet<E>(newMap);
+    }
+    
+    /**
+     * Returns the set without the element -- this set if it does not have the element.
+     * 
+     * @param element
+     *          the element.
+     * @return the new set.
+     */
+    public PersistentSet<E> without(
+            final Object element) {
+        PersistentMap<E, Boolean> newMap = this.map.without(element);
+        return (newMap == this.map) ? this : (newMap.isEmpty() ? empty() : new PersistentSet<E>(newMap));
+    }
+    
+    @Override
+    public int size() {
+        return this.map.size();
+    }
+    
+    @Override
+    public boolean contains(
+            final Object element) {
+        return this.map.containsKey(element);
+    }
+    
+    @Override
+    public Iterator<E> iterator() {
+        return this.map.keySet().iterator();
+    }
+    
+}
@@ -0,0 +1,302 @@
+package nawaman.papercuts.concurrency.atomicvariable;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * An immutable list that makes its changed copies by sharing all but the changed path of its trie -- to be held in an
+ *   {@link AtomicVariable} instead of a list that has to be copied as a whole on each change.
+ * 
+ * The elements are kept in the leaves of a 32-way trie indexed by the bits of the element index, plus a tail of up to
+ *   32 elements not yet in the trie. Reading or replacing an element walks (and replacing copies) one node per
+ *   level -- O(log32 n) -- and appending or removing the last element mostly only copies the small tail.
+ * 
+ * The list is read through the {@link java.util.List} interface and changed through {@link #with(int, Object)},
+ *   {@link #append(Object)} and {@link #withoutLast()} -- the mutators of {@link java.util.List} throw
+ *   {@link UnsupportedOperationException}.
+ * 
+ * @author NawaMan
+ */
+public final class PersistentVector<E> extends AbstractList<E> implements RandomAccess {
+    
+    private static final int BITS = 5;
+    
+    private static final int WIDTH = 1 << BITS;
+    
+    private static final int MASK = WIDTH - 1;
+    
+    private static final Object[] EMPTY_NODE = new Object[WIDTH];
+    
+    private static final PersistentVector<Object> EMPTY = new PersistentVector<>(0, BITS, EMPTY_NODE, new Object[0]);
+    
+    private final int size;
+    
+    /** The shift of the top level of the trie. */
+    private final int shift;
+    
+    private final Object[] root;
+    
+    private final Object[] tail;
+    
+    private PersistentVector(
+            final int      size,
+            final int      shift,
+            final Object[] root,
+            final Object[] tail) {
+        this.size  = size;
+        this.shift = shift;
+        this.root  = root;
+        this.tail  = tail;
+    }
+    
+    /**
+     * Returns the empty vector.
+     * 
+     * @return the empty vector.
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentVector<E> empty() {
+        return (PersistentVector<E>)EMPTY;
+    }
+    
+    /**
+     * Returns a vector with the given elements.
+     * 
+     * @param elements
+     *          the elements.
+     * @return the persistent vector.
+     */
+    public static <E> PersistentVector<E> of(
+            final Collection<? extends E> elements) {
+        PersistentVector<E> result = empty();
+        for (E element : elements) {
+            result = result.append(element);
+        }
+        return result;
+    }
+    
+    /**
+     * Atomically append the element to the vector in the variable.
+     * 
+     * @param variable
+     *          the variable holding the vector.
+     * @param element
+     *          the element.
+     * @return the vector that is in the variable at the end of the invocation.
+     */
+    public static <E> PersistentVector<E> appendTo(
+            final AtomicVariable<PersistentVector<E>> variable,
+            final E                                   element) {
+        return variable.updateAfterCheck(vector -> true, vector -> vector.append(element));
+    }
+    
+    /**
+     * Atomically replace the element at the index of the vector in the variable.
+     * 
+     * @param variable
+     *          the variable holding the vector.
+     * @param index
+     *          the index.
+     * @param element
+     *          the element.
+     * @return the vector that is in the variable at the end of the invocation.
+     * @throws IndexOutOfBoundsException
+     *          if the index is out of the vector in the variable.
+     */
+    public static <E> PersistentVector<E> setIn(
+            final AtomicVariable<PersistentVector<E>> variable,
+            final int                                 index,
+            final E                                   element) {
+        return variable.updateAfterCheck(vector -> true, vector -> vector.with(index, element));
+    }
+    
+    /**
+     * Returns the vector with the element at the index replaced.
+     * 
+     * @param index
+     *          the index.
+     * @param element
+     *          the element.
+     * @return the new vector.
+     * @throws IndexOutOfBoundsException
+     *          if the index is out of this vector.
+     */
+    public PersistentVector<E> with(
+            final int index,
+            final E   element) {
+        this.checkIndex(index);
+        if (index >= this.tailOffset()) {
+            Object[] tail = this.tail.clone();
+            tail[index & MASK] = element;
+            return new PersistentVector<E>(this.size, this.shift, this.root, tail);
+        }
+        return new PersistentVector<E>(this.size, this.shift, with(this.shift, this.root, index, element), this.tail);
+    }
+    
+    /**
+     * Returns the vector with the element appended.
+     * 
+     * @param element
+     *          the element.
+     * @return the new vector.
+     */
+    public PersistentVector<E> append(
+            final E element) {
+        if (this.size - this.tailOffset() < WIDTH) {
+            Object[] tail = Arrays.copyOf(this.tail, this.tail.length + 1);
+            tail[this.tail.length] = element;
+            return new PersistentVector<E>(this.size + 1, this.shift, this.root, tail);
+        }
+        
+        // The tail is full -- push it into the trie, adding a level on top when the trie is full.
+        Object[] root;
+        int      shift = this.shift;
+        if ((this.size >>> BITS) > (1 << this.shift)) {
+            root    = new Object[WIDTH];
+            root[0] = this.root;
+            root[1] = newPath(this.shift, this.tail);
+            shift  += BITS;
+        } else {
+            root = this.pushTail(this.shift, this.root, this.tail);
+        }
+        return new PersistentVector<E>(this.size + 1, shift, root, new Object[] { element });
+    }
+    
+    /**
+     * Returns the vector without its last element.
+     * 
+     * @return the new vector.
+     * @throws IllegalStateException
+     *          if this vector is empty.
+     */
+    public PersistentVector<E> withoutLast() {
+        if (this.size == 0) {
+            throw new IllegalStateException("The vector is empty.");
+        }
+        if (this.size == 1) {
+            return empty();
+        }
+        if (this.size - this.tailOffset() > 1) {
+            Object[] tail = Arrays.copyOf(this.tail, this.tail.length - 1);
+            return new PersistentVector<E>(this.size - 1, this.shift, this.root, tail);
+        }
+        
+        // The tail becomes empty -- the last leaf of the trie becomes the new tail.
+        Object[] tail  = this.leafOf(this.size - 2);
+        Object[] root  = this.popTail(this.shift, this.root);
+        int      shift = this.shift;
+        if (root == null) {
+            root = EMPTY_NODE;
+        }
+        if ((shift > BITS) && (root[1] == null)) {
+            root   = (Object[])root[0];
+            shift -= BITS;
+        }
+        return new PersistentVector<E>(this.size - 1, shift, root, tail);
+    }
+    
+    @Override
+    public int size() {
+        return this.size;
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Override
+    public E get(
+            final int index) {
+        this.checkIndex(index);
+        return (E)this.leafOf(index)[index & MASK];
+    }
+    
+    private void checkIndex(
+            final int index) {
+        if ((index < 0) || (index >= this.size)) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+        }
+    }
+    
+    /** The index of the first element in the tail. */
+    private int tailOffset() {
+        return (this.size < WIDTH) ? 0 : (((this.size - 1) >>> BITS) << BITS);
+    }
+    
+    private Object[] leafOf(
+            final int index) {
+        if (index >= this.tailOffset()) {
+            return this.tail;
+        }
+        Object[] node = this.root;
+        for (int level = this.shift; level > 0; level -= BITS) {
+            node = (Object[])node[(index >>> level) & MASK];
+        }
+        return node;
+    }
+    
+    private static Object[] with(
+            final int      level,
+            final Object[] node,
+            final int      index,
+            final Object   element) {
+        Object[] newNode = node.clone();
+        if (level == 0) {
+            newNode[index & MASK] = element;
+        } else {
+            int subIndex = (index >>> level) & MASK;
+            newNode[subIndex] = with(level - BITS, (Object[])node[subIndex], index, element);
+        }
+        return newNode;
+    }
+    
+    private static Object[] newPath(
+            final int      level,
+            final Object[] node) {
+        if (level == 0) {
+            return node;
+        }
+        Object[] path = new Object[WIDTH];
+        path[0] = newPath(level - BITS, node);
+        return path;
+    }
+    
+    private Object[] pushTail(
+            final int      level,
+            final Object[] parent,
+            final Object[] tail) {
+        int      subIndex = ((this.size - 1) >>> level) & MASK;
+        Object[] node     = parent.clone();
+        if (level == BITS) {
+            node[subIndex] = tail;
+        } else {
+            Object[] child = (Object[])parent[subIndex];
+            node[subIndex] = (child != null)
+                    ? this.pushTail(level - BITS, child, tail)
+                    : newPath(level - BITS, tail);
+        }
+        return node;
+    }
+    
+    /** Returns null when the node becomes empty. */
+    private Object[] popTail(
+            final int      level,
+            final Object[] node) {
+        int subIndex = ((this.size - 2) >>> level) & MASK;
+        if (level > BITS) {
+            Object[] child = this.popTail(level - BITS, (Object[])node[subIndex]);
+            if ((child == null) && (subIndex == 0)) {
+                return null;
+            }
+            Object[] newNode = node.clone();
+            newNode[subIndex] = child;
+            return newNode;
+        }
+        if (subIndex == 0) {
+            return null;
+        }
+        Object[] newNode = node.clone();
+        newNode[subIndex] = null;
+        return newNode;
+    }
+    
+}
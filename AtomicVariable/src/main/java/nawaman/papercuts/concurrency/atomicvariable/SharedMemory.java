@@ -0,0 +1,134 @@
+package nawaman.papercuts.concurrency.atomicvariable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file mapped into memory as an array of 8-byte slots, each usable as an {@link OffHeapLongVariable}.
+ * 
+ * All the processes on the host that open the same file share the slots -- put the file on a memory file system
+ *   (like {@code /dev/shm}) to keep it from being written back to a disk. The slots are not in the Java heap so
+ *   millions of them cost the garbage collector nothing. A new file (or the part of a file beyond its old size)
+ *   starts with all the slots at 0.
+ * 
+ * NOTE: The slots are packed -- the slots that are updated by different threads at a high rate should be kept
+ *         at least 8 slots (64 bytes) apart so they do not share a cache line.
+ * 
+ * @author NawaMan
+ */
+public final class SharedMemory implements Closeable {
+    
+    /** The size of a slot in bytes. */
+    public static final int SLOT_SIZE = 8;
+    
+    private final Path file;
+    
+    private final int slotCount;
+    
+    /** Kept so the mapping lives as long as this object (and so its variables). */
+    private final MappedByteBuffer buffer;
+    
+    private final long address;
+    
+    private volatile boolean isClosed = false;
+    
+    private SharedMemory(
+            final Path             file,
+            final int              slotCount,
+            final MappedByteBuffer buffer) {
+        this.file      = file;
+        this.slotCount = slotCount;
+        this.buffer    = buffer;
+        this.address   = UnsafeAccess.addressOf(buffer);
+    }
+    
+    /**
+     * Map the file (creating it if needed) with at least the given number of slots.
+     * 
+     * @param file
+     *          the file to map.
+     * @param slotCount
+     *          the number of the slots.
+     * @return the shared memory.
+     * @throws IOException
+     *          if the file cannot be opened or mapped.
+     */
+    public static SharedMemory open(
+            final Path file,
+            final int  slotCount) throws IOException {
+        if ((slotCount <= 0) || (slotCount > (Integer.MAX_VALUE / SLOT_SIZE))) {
+            throw new IllegalArgumentException("slotCount is out of range: " + slotCount);
+        }
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping stays valid after the channel is closed.
+            MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, (long)slotCount * SLOT_SIZE);
+            return new SharedMemory(file, slotCount, buffer);
+        }
+    }
+    
+    /**
+     * Returns the mapped file.
+     * 
+     * @return the file.
+     */
+    public Path getFile() {
+        return this.file;
+    }
+    
+    /**
+     * Returns the number of the slots.
+     * 
+     * @return the slot count.
+     */
+    public int getSlotCount() {
+        return this.slotCount;
+    }
+    
+    /**
+     * Returns the variable of the slot -- the variables of the same slot (in any process) share the value.
+     * 
+     * @param slot
+     *          the slot index.
+     * @return the variable.
+     */
+    public OffHeapLongVariable getLongVariable(
+            final int slot) {
+        if ((slot < 0) || (slot >= this.slotCount)) {
+            throw new IndexOutOfBoundsException("slot: " + slot);
+        }
+        this.ensureOpen();
+        return new OffHeapLongVariable(this, this.address + (long)slot * SLOT_SIZE);
+    }
+    
+    /**
+     * Write the slots back to the file -- only needed if the file is on a disk and should survive a machine crash.
+     */
+    public void force() {
+        this.ensureOpen();
+        this.buffer.force();
+    }
+    
+    /**
+     * Stop handing out the variables.
+     * 
+     * NOTE: The mapping itself is released by the garbage collector once this object and all its variables are
+     *         gone -- the variables already handed out stay usable.
+     */
+    @Override
+    public void close() {
+        this.isClosed = true;
+    }
+    
+    private void ensureOpen() {
+        if (this.isClosed) {
+            throw new IllegalStateException("The shared memory is closed.");
+        }
+    }
+    
+}
@@ -0,0 +1,261 @@
+package nawaman.papercuts.concurrency.atomicvariable;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * A variable for a value that many threads keep accumulating to -- like {@link java.util.concurrent.atomic.LongAdder}
+ *   but for any value with a given merge function.
+ * 
+ * The accumulations are first done to a base value. Once the threads start to collide on that base, each thread
+ *   accumulates into one of a table of cells instead (which cell is picked by a per-thread probe). The table grows
+ *   when the threads keep colliding on the cells up to the number of the processors. Each cell sits alone on its
+ *   cache line so the threads working on different cells do not slow one another down. The value is obtained by
+ *   folding the base and all the cells together.
+ * 
+ * NOTE: As the accumulations are applied in no particular order and in no particular grouping, the merge function
+ *         must be associative and commutative (for example: sum, max or set-union) and the identity must be its
+ *         identity value.
+ * 
+ * NOTE: The value obtained by {@link #get()} is not an atomic snapshot -- accumulations that happen during
+ *         the fold may or may not be included.
+ * 
+ * @author NawaMan
+ */
+public class StripedAtomicVariable<V> implements Supplier<V> {
+    
+    private static final int NCPU = Runtime.getRuntime().availableProcessors();
+    
+    /** The maximum number of cells -- the smallest power of two that is not less than the number of processors. */
+    private static final int MAX_CELLS = Integer.highestOneBit(Math.max(NCPU - 1, 1)) << 1;
+    
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<StripedAtomicVariable, Object> BASE
+            = AtomicReferenceFieldUpdater.newUpdater(StripedAtomicVariable.class, Object.class, "base");
+    
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<StripedAtomicVariable> CELLS_BUSY
+            = AtomicIntegerFieldUpdater.newUpdater(StripedAtomicVariable.class, "cellsBusy");
+    
+    private static final ThreadLocal<Probe> PROBE = ThreadLocal.withInitial(Probe::new);
+    
+    private final V identity;
+    
+    private final BinaryOperator<V> merge;
+    
+    private volatile V base;
+    
+    private volatile Cell<V>[] cells;
+    
+    /** Spin lock (1 when locked) used when creating or resizing the cells. */
+    private volatile int cellsBusy;
+    
+    /**
+     * Construct a variable with an identity value and a merge function.
+     * 
+     * @param identity
+     *          the identity of the merge function -- also the initial value.
+     * @param merge
+     *          the associative and commutative function to merge two values.
+     */
+    public StripedAtomicVariable(
+            final V                 identity,
+            final BinaryOperator<V> merge) {
+        this.identity = identity;
+        this.merge    = Objects.requireNonNull(merge);
+        this.base     = identity;
+    }
+    
+    /**
+     * Obtains the variable value by folding all the accumulated values.
+     * 
+     * @return the variable value.
+     **/
+    @Override
+    public final V get() {
+        V value = this.base;
+        Cell<V>[] cells = this.cells;
+        if (cells != null) {
+            for (Cell<V> cell : cells) {
+                if (cell != null) {
+                    value = this.merge.apply(value, cell.value);
+                }
+            }
+        }
+        return value;
+    }
+    
+    /**
+     * Accumulate the given value to this variable.
+     * 
+     * @param value
+     *          the value to be merged in.
+     */
+    public final void accumulate(
+            final V value) {
+        if (this.cells == null) {
+            V current = this.base;
+            if (BASE.compareAndSet(this, current, this.merge.apply(current, value))) {
+                return;
+            }
+        }
+        this.accumulateToCell(value);
+    }
+    
+    /**
+     * Reset the variable value back to the identity.
+     * 
+     * NOTE: This is only effective when there is no concurrent accumulations.
+     */
+    public final void reset() {
+        Cell<V>[] cells = this.cells;
+        if (cells != null) {
+            for (Cell<V> cell : cells) {
+                if (cell != null) {
+                    cell.value = this.identity;
+                }
+            }
+        }
+        this.base = this.identity;
+    }
+    
+    /**
+     * Returns the current number of cells -- zero if there has been no contention.
+     * 
+     * @return the number of cells.
+     */
+    public final int getStripeCount() {
+        Cell<V>[] cells = this.cells;
+        return (cells == null) ? 0 : cells.length;
+    }
+    
+    private void accumulateToCell(
+            final V value) {
+        Probe   probe    = PROBE.get();
+        boolean collided = false;
+        while (true) {
+            Cell<V>[] cells = this.cells;
+            if (cells == null) {
+                if (this.lockCells()) {
+                    try {
+                        if (this.cells == null) {
+                            @SuppressWarnings("unchecked")
+                            Cell<V>[] newCells = (Cell<V>[])new Cell<?>[2];
+                            newCells[probe.hash & 1] = new Cell<V>(this.merge.apply(this.identity, value));
+                            this.cells = newCells;
+                            return;
+                        }
+                    } finally {
+                        this.cellsBusy = 0;
+                    }
+                    continue;
+                }
+                // Someone else is creating the cells, try the base once more.
+                V current = this.base;
+                if (BASE.compareAndSet(this, current, this.merge.apply(current, value))) {
+                    return;
+                }
+                continue;
+            }
+            
+            int     index = probe.hash & (cells.length - 1);
+            Cell<V> cell  = cells[index];
+            if (cell == null) {
+                if (this.lockCells()) {
+                    try {
+                        if ((this.cells == cells) && (cells[index] == null)) {
+                            cells[index] = new Cell<V>(this.merge.apply(this.identity, value));
+                            return;
+                        }
+                    } finally {
+                        this.cellsBusy = 0;
+                    }
+                    continue;
+                }
+                collided = false;
+            } else {
+                V current = cell.value;
+                if (cell.compareAndSet(current, this.merge.apply(current, value))) {
+                    return;
+                }
+                if ((cells.length >= MAX_CELLS) || (this.cells != cells)) {
+                    collided = false;
+                } else if (!collided) {
+                    collided = true;
+                } else {
+                    if (this.lockCells()) {
+                        try {
+                            if (this.cells == cells) {
+                                this.cells = Arrays.copyOf(cells, cells.length << 1);
+                            }
+                        } finally {
+                            this.cellsBusy = 0;
+                        }
+                        collided = false;
+                        continue;
+                    }
+                }
+            }
+            probe.advance();
+        }
+    }
+    
+    private boolean lockCells() {
+        return (this.cellsBusy == 0) && CELLS_BUSY.compareAndSet(this, 0, 1);
+    }
+    
+    // == AUX class ====================================================================================================
+    
+    /** Per-thread hash used to pick a cell. */
+    private static final class Probe {
+        
+        int hash = ThreadLocalRandom.current().nextInt() | 1;
+        
+        /** Move to another pseudo-random cell (xorshift). */
+        void advance() {
+            int hash = this.hash;
+            hash ^= hash << 13;
+            hash ^= hash >>> 17;
+            hash ^= hash << 5;
+            this.hash = hash;
+        }
+        
+    }
+    
+    /** Padding before the cell value. */
+    static abstract class CellLeftPadding {
+        long p00, p01, p02, p03, p04, p05, p06, p07;
+    }
+    
+    /** The cell value. */
+    static abstract class CellValue<V> extends CellLeftPadding {
+        volatile V value;
+    }
+    
+    /** A cell -- padded on both sides so that no other cell shares its cache line. */
+    static final class Cell<V> extends CellValue<V> {
+        
+        @SuppressWarnings("rawtypes")
+        private static final AtomicReferenceFieldUpdater<CellValue, Object> VALUE
+                = AtomicReferenceFieldUpdater.newUpdater(CellValue.class, Object.class, "value");
+        
+        long p10, p11, p12, p13, p14, p15, p16, p17;
+        
+        Cell(final V value) {
+            this.value = value;
+        }
+        
+        boolean compareAndSet(
+                final V expected,
+                final V newValue) {
+            return VALUE.compareAndSet(this, expected, newValue);
+        }
+        
+    }
+    
+}
@@ -0,0 +1,99 @@
+package nawaman.papercuts.concurrency.atomicvariable;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * A subscription to the changes of an {@link AtomicVariable}.
+ * 
+ * The writer only marks the subscription dirty and, if no delivery is pending, hands one to the executor. The
+ *   delivery reads the latest value of the variable, so the changes that happen while the listener is busy (or while
+ *   the delivery waits in the executor) are coalesced into one notification of the latest value -- nothing is queued
+ *   per change. A value that is the same instance as the one delivered last is not delivered again.
+ * 
+ * A delivery the executor rejects is dropped without failing the writer (whose change is already made) -- the change
+ *   stays marked so the delivery is handed to the executor again on the next change.
+ * 
+ * @author NawaMan
+ */
+public final class Subscription<V> {
+    
+    private final AtomicVariable<V> variable;
+    
+    private final Consumer<? super V> listener;
+    
+    private final Executor executor;
+    
+    private final AtomicBoolean isDirty = new AtomicBoolean(false);
+    
+    private final AtomicBoolean isScheduled = new AtomicBoolean(false);
+    
+    private volatile boolean isCancelled = false;
+    
+    /** Only accessed by the delivery which never runs concurrently with itself. */
+    private V lastDelivered;
+    
+    Subscription(
+            final AtomicVariable<V>   variable,
+            final Consumer<? super V> listener,
+            final Executor            executor,
+            final V                   initial) {
+        this.variable      = variable;
+        this.listener      = listener;
+        this.executor      = executor;
+        this.lastDelivered = initial;
+    }
+    
+    /**
+     * Stop the notifications -- a delivery that is already running is not interrupted.
+     */
+    public void cancel() {
+        this.isCancelled = true;
+        this.variable.unsubscribe(this);
+    }
+    
+    /**
+     * Check if this subscription is cancelled.
+     * 
+     * @return {@code true} if this subscription is cancelled.
+     */
+    public boolean isCancelled() {
+        return this.isCancelled;
+    }
+    
+    /** Called by the writer after each change -- never throws so the other subscriptions and waiters are notified. */
+    void changed() {
+        this.isDirty.set(true);
+        if (this.isScheduled.compareAndSet(false, true)) {
+            this.schedule();
+        }
+    }
+    
+    private void schedule() {
+        try {
+            this.executor.execute(this::deliver);
+        } catch (RuntimeException exception) {
+            // Rejected by the executor but the change has already been made -- leave it dirty for the next change.
+            this.isScheduled.set(false);
+        }
+    }
+    
+    private void deliver() {
+        try {
+            this.isDirty.set(false);
+            V current = this.variable.get();
+            if (!this.isCancelled && (current != this.lastDelivered)) {
+                this.lastDelivered = current;
+                this.listener.accept(current);
+            }
+        } finally {
+            this.isScheduled.set(false);
+            // A change after the dirty flag was cleared may have seen the delivery still scheduled.
+            if (this.isDirty.get() && !this.isCancelled && this.isScheduled.compareAndSet(false, true)) {
+                this.schedule();
+            }
+        }
+    }
+    
+}
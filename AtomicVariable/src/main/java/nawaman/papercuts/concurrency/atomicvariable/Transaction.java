@@ -0,0 +1,217 @@
+package nawaman.papercuts.concurrency.atomicvariable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * An atomic check-and-update across several variables.
+ * 
+ * The transaction holds the monitors of all its variables while it runs -- the same monitors the variables' own
+ *   updates hold -- so no other update of those variables can come in between. The monitors are always taken in the
+ *   same global order (by identity hash code, with a shared tie lock for the rare equal hashes) so two transactions
+ *   over the same variables can never deadlock, while the transactions over disjoint variables never touch the same
+ *   lock.
+ * 
+ * The changes are buffered and written together once the updater returns, so an updater that throws changes
+ *   nothing. A reader that needs a consistent view of several variables should use
+ *   {@link #read(Collection, Function)} -- separate {@link AtomicVariable#get()} calls may see one variable before a
+ *   transaction and another after it.
+ * 
+ * NOTE: Only the variables in {@link UpdateMode#LOCKING} or {@link UpdateMode#COMBINING} mode can take part --
+ *         the compare-and-set updates of the optimistic mode do not take the monitor.
+ * 
+ * @author NawaMan
+ */
+public final class Transaction {
+    
+    /** Taken (before anything else) by the transactions with two variables of the same identity hash code. */
+    private static final Object TIE_LOCK = new Object();
+    
+    private static final Comparator<AtomicVariable<?>> LOCK_ORDER
+            = Comparator.comparingInt(variable -> System.identityHashCode(variable));
+    
+    private final List<AtomicVariable<?>> variables;
+    
+    private final Map<AtomicVariable<?>, Object> changes = new IdentityHashMap<>();
+    
+    private boolean isOpen = true;
+    
+    private Transaction(
+            final List<AtomicVariable<?>> variables) {
+        this.variables = variables;
+    }
+    
+    /**
+     * Atomically run the updater ONLY when the variables pass the check.
+     * 
+     * @param variables
+     *          the variables in the transaction.
+     * @param expectedChecker
+     *          the predicate to determine if the variables are as expected.
+     * @param updater
+     *          the function to set the new values through the given transaction.
+     * @return {@code true} if the check passed and the changes are written.
+     */
+    public static boolean checkBeforeUpdate(
+            final Collection<? extends AtomicVariable<?>> variables,
+            final Predicate<Transaction>                  expectedChecker,
+            final Consumer<Transaction>                   updater) {
+        Objects.requireNonNull(expectedChecker);
+        Objects.requireNonNull(updater);
+        return run(variables, transaction -> {
+            if (!expectedChecker.test(transaction)) {
+                return false;
+            }
+            updater.accept(transaction);
+            transaction.commit();
+            return true;
+        });
+    }
+    
+    /**
+     * Atomically read the variables.
+     * 
+     * @param variables
+     *          the variables to read.
+     * @param reader
+     *          the function to read the variables through the given transaction.
+     * @return the value returned by the reader.
+     */
+    public static <R> R read(
+            final Collection<? extends AtomicVariable<?>> variables,
+            final Function<Transaction, R>                reader) {
+        Objects.requireNonNull(reader);
+        return run(variables, reader);
+    }
+    
+    /**
+     * Returns the value of the variable in this transaction -- including the change made in it.
+     * 
+     * @param variable
+     *          the variable.
+     * @return the value.
+     */
+    @SuppressWarnings("unchecked")
+    public <V> V get(
+            final AtomicVariable<V> variable) {
+        this.ensureEnlisted(variable);
+        if (this.changes.containsKey(variable)) {
+            return (V)this.changes.get(variable);
+        }
+        return variable.get();
+    }
+    
+    /**
+     * Set the value of the variable -- the value is written when the transaction ends.
+     * 
+     * @param variable
+     *          the variable.
+     * @param newValue
+     *          the new value.
+     */
+    public <V> void set(
+            final AtomicVariable<V> variable,
+            final V                 newValue) {
+        this.ensureEnlisted(variable);
+        this.changes.put(variable, newValue);
+    }
+    
+    private void ensureEnlisted(
+            final AtomicVariable<?> variable) {
+        if (!this.isOpen) {
+            throw new IllegalStateException("The transaction is over.");
+        }
+        for (AtomicVariable<?> each : this.variables) {
+            if (each == variable) {
+                return;
+            }
+        }
+        throw new IllegalArgumentException("The variable is not in the transaction: " + variable);
+    }
+    
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void commit() {
+        for (Map.Entry<AtomicVariable<?>, Object> change : this.changes.entrySet()) {
+            Object newValue = change.getValue();
+            ((AtomicVariable)change.getKey()).lockedCheckAndUpdate(current -> true, current -> newValue);
+        }
+    }
+    
+    private static <R> R run(
+            final Collection<? extends AtomicVariable<?>> variables,
+            final Function<Transaction, R>                body) {
+        List<AtomicVariable<?>> ordered = new ArrayList<>(variables.size());
+        for (AtomicVariable<?> variable : variables) {
+            if (variable.getMode() == UpdateMode.OPTIMISTIC) {
+                throw new IllegalArgumentException("An optimistic variable cannot be in a transaction.");
+            }
+            if (!containsSame(ordered, variable)) {
+                ordered.add(variable);
+            }
+        }
+        Collections.sort(ordered, LOCK_ORDER);
+        
+        Transaction transaction = new Transaction(ordered);
+        Supplier<R> locked = () -> lockAndRun(ordered, 0, () -> body.apply(transaction));
+        try {
+            if (hasTie(ordered)) {
+                synchronized (TIE_LOCK) {
+                    return locked.get();
+                }
+            }
+            return locked.get();
+        } finally {
+            transaction.isOpen = false;
+        }
+    }
+    
+    private static <R> R lockAndRun(
+            final List<AtomicVariable<?>> ordered,
+            final int                     index,
+            final Supplier<R>             body) {
+        if (index == ordered.size()) {
+            return body.get();
+        }
+        AtomicVariable<?> variable = ordered.get(index);
+        synchronized (variable) {
+            variable.enterBusy();
+            try {
+                return lockAndRun(ordered, index + 1, body);
+            } finally {
+                variable.exitBusy();
+            }
+        }
+    }
+    
+    private static boolean containsSame(
+            final List<AtomicVariable<?>> variables,
+            final AtomicVariable<?>       variable) {
+        for (AtomicVariable<?> each : variables) {
+            if (each == variable) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static boolean hasTie(
+            final List<AtomicVariable<?>> ordered) {
+        for (int i = 1; i < ordered.size(); i++) {
+            if (System.identityHashCode(ordered.get(i - 1)) == System.identityHashCode(ordered.get(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+}
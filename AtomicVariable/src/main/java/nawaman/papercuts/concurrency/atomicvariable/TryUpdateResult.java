@@ -0,0 +1,20 @@
+package nawaman.papercuts.concurrency.atomicvariable;
+
+/**
+ * The outcomes of a try update of an AtomicVariable -- see
+ *   {@link AtomicVariable#tryCheckBeforeUpdate(java.util.function.Predicate, java.util.function.Function)}.
+ * 
+ * @author NawaMan
+ */
+public enum TryUpdateResult {
+    
+    /** The check passed and the new value is in the variable. */
+    UPDATED,
+    
+    /** The check failed -- nothing is changed. */
+    CHECK_FAILED,
+    
+    /** Another update was in progress (until the deadline, if one was given) -- nothing is changed. */
+    CONTENDED;
+    
+}
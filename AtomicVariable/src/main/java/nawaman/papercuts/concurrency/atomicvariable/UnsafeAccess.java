@@ -0,0 +1,129 @@
+package nawaman.papercuts.concurrency.atomicvariable;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * The access to the off-heap memory -- the only place that touches {@code sun.misc.Unsafe}.
+ * 
+ * The Unsafe is found by name and called through method handles so that nothing refers to it at compile time (which
+ *   would bring in the "internal proprietary API" warnings). The handles are constants so the JIT inlines the calls
+ *   down to the Unsafe intrinsics.
+ * 
+ * @author NawaMan
+ */
+final class UnsafeAccess {
+    
+    private static final Object UNSAFE = findUnsafe();
+    
+    private static final MethodHandle GET_LONG = findMethod("getLong", long.class, Object.class, long.class);
+    
+    private static final MethodHandle GET_LONG_VOLATILE
+            = findMethod("getLongVolatile", long.class, Object.class, long.class);
+    
+    private static final MethodHandle PUT_LONG_VOLATILE
+            = findMethod("putLongVolatile", void.class, Object.class, long.class, long.class);
+    
+    private static final MethodHandle COMPARE_AND_SWAP_LONG
+            = findMethod("compareAndSwapLong", boolean.class, Object.class, long.class, long.class, long.class);
+    
+    private static final long ADDRESS_OFFSET = findAddressOffset();
+    
+    private UnsafeAccess() {
+    }
+    
+    /** Returns the native address of the first byte of the direct buffer. */
+    static long addressOf(
+            final ByteBuffer buffer) {
+        if (!buffer.isDirect()) {
+            throw new IllegalArgumentException("The buffer is not direct.");
+        }
+        try {
+            return (long)GET_LONG.invokeExact((Object)buffer, ADDRESS_OFFSET);
+        } catch (Throwable exception) {
+            throw unexpected(exception);
+        }
+    }
+    
+    /** Returns the long at the address with the volatile semantic. */
+    static long getLongVolatile(
+            final long address) {
+        try {
+            return (long)GET_LONG_VOLATILE.invokeExact((Object)null, address);
+        } catch (Throwable exception) {
+            throw unexpected(exception);
+        }
+    }
+    
+    /** Put the long at the address with the volatile semantic. */
+    static void putLongVolatile(
+            final long address,
+            final long value) {
+        try {
+            PUT_LONG_VOLATILE.invokeExact((Object)null, address, value);
+        } catch (Throwable exception) {
+            throw unexpected(exception);
+        }
+    }
+    
+    /** Atomically change the long at the address to the new value ONLY when it is as expected. */
+    static boolean compareAndSwapLong(
+            final long address,
+            final long expected,
+            final long newValue) {
+        try {
+            return (boolean)COMPARE_AND_SWAP_LONG.invokeExact((Object)null, address, expected, newValue);
+        } catch (Throwable exception) {
+            throw unexpected(exception);
+        }
+    }
+    
+    /** The Unsafe methods throw no checked exception so what is caught is thrown on as is (or wrapped if checked). */
+    private static RuntimeException unexpected(
+            final Throwable exception) {
+        if (exception instanceof Error) {
+            throw (Error)exception;
+        }
+        if (exception instanceof RuntimeException) {
+            return (RuntimeException)exception;
+        }
+        return new IllegalStateException(exception);
+    }
+    
+    private static Object findUnsafe() {
+        try {
+            Field field = Class.forName("sun.misc.Unsafe").getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return field.get(null);
+        } catch (ReflectiveOperationException exception) {
+            throw new ExceptionInInitializerError(exception);
+        }
+    }
+    
+    private static MethodHandle findMethod(
+            final String     name,
+            final Class<?>   returnType,
+            final Class<?>... parameterTypes) {
+        try {
+            MethodType type = MethodType.methodType(returnType, parameterTypes);
+            return MethodHandles.lookup().findVirtual(UNSAFE.getClass(), name, type).bindTo(UNSAFE);
+        } catch (ReflectiveOperationException exception) {
+            throw new ExceptionInInitializerError(exception);
+        }
+    }
+    
+    private static long findAddressOffset() {
+        try {
+            MethodType   type   = MethodType.methodType(long.class, Field.class);
+            MethodHandle offset = MethodHandles.lookup().findVirtual(UNSAFE.getClass(), "objectFieldOffset", type);
+            return (long)offset.invoke(UNSAFE, Buffer.class.getDeclaredField("address"));
+        } catch (Throwable exception) {
+            throw new ExceptionInInitializerError(exception);
+        }
+    }
+    
+}
@@ -0,0 +1,63 @@
+package nawaman.papercuts.concurrency.atomicvariable;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * The JFR event of an update of an instrumented variable.
+ * 
+ * NOTE: Only use through {@link JfrSupport} -- this class cannot be loaded on a JVM without JFR.
+ * 
+ * @author NawaMan
+ */
+@Name("nawaman.AtomicVariableUpdate")
+@Label("AtomicVariable Update")
+@Category("AtomicVariable")
+@Description("A conditional update of an instrumented AtomicVariable")
+class UpdateEvent extends Event {
+    
+    @Label("Variable")
+    String variable;
+    
+    @Label("Mode")
+    String mode;
+    
+    @Label("Wait Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long waitTime;
+    
+    @Label("Function Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long functionTime;
+    
+    @Label("Changed")
+    boolean isChanged;
+    
+    @Label("Recheck Failed")
+    boolean isRecheckFailed;
+    
+    static void emit(
+            final String     name,
+            final UpdateMode mode,
+            final long       waitTime,
+            final long       functionTime,
+            final boolean    isChanged,
+            final boolean    isRecheckFailed) {
+        UpdateEvent event = new UpdateEvent();
+        if (!event.shouldCommit()) {
+            return;
+        }
+        event.variable        = name;
+        event.mode            = mode.name();
+        event.waitTime        = waitTime;
+        event.functionTime    = functionTime;
+        event.isChanged       = isChanged;
+        event.isRecheckFailed = isRecheckFailed;
+        event.commit();
+    }
+    
+}
@@ -0,0 +1,40 @@
+package nawaman.papercuts.concurrency.atomicvariable;
+
+/**
+ * The ways an AtomicVariable can apply its atomic changes.
+ * 
+ * @author NawaMan
+ */
+public enum UpdateMode {
+    
+    /**
+     * Changes are applied while holding the variable's monitor.
+     * 
+     * The new-value function is called at most once for each successful change so it is safe for functions with
+     *   side effects or functions that are too expensive to be repeated.
+     */
+    LOCKING,
+    
+    /**
+     * Changes are applied with a compare-and-set retry loop -- read the current value, check it, calculate the new
+     *   value and try to swap it in; start over if another thread changed the value in the mean time.
+     * 
+     * No thread ever blocks but the checker and the new-value function might be called more than once for a single
+     *   change so they should be cheap and free from side effects.
+     */
+    OPTIMISTIC,
+    
+    /**
+     * Changes are applied by flat combining -- a thread that finds the variable busy publishes its change and waits
+     *   while the thread currently holding the combiner role applies all the published changes in one pass.
+     * 
+     * Like {@link #LOCKING}, the new-value function is called at most once for each successful change. This mode
+     *   suits variables with expensive new-value functions that receive many small changes from many threads as the
+     *   monitor and the value stay with one thread for a whole batch of changes. A change nested in another (made from
+     *   a new-value function, for one) is applied right away as the re-entered monitor of {@link #LOCKING} does.
+     * 
+     * The primitive variables (such as {@link AtomicIntVariable}) apply the changes of this mode as {@link #LOCKING}.
+     */
+    COMBINING;
+    
+}
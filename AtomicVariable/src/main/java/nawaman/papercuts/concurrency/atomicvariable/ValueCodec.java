@@ -0,0 +1,69 @@
+package nawaman.papercuts.concurrency.atomicvariable;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Turns the values of a {@link DurableAtomicVariable} into bytes and back.
+ * 
+ * NOTE: Null values never reach the codec -- they are recorded as such by the log.
+ * 
+ * @author NawaMan
+ */
+public interface ValueCodec<V> {
+    
+    /**
+     * Encode the value.
+     * 
+     * @param value
+     *          the value (never null).
+     * @return the bytes.
+     */
+    public byte[] encode(V value);
+    
+    /**
+     * Decode the value.
+     * 
+     * @param bytes
+     *          the bytes returned by {@link #encode(Object)}.
+     * @return the value.
+     */
+    public V decode(byte[] bytes);
+    
+    /**
+     * Returns the codec of the strings (in UTF-8).
+     * 
+     * @return the codec.
+     */
+    public static ValueCodec<String> ofString() {
+        return new ValueCodec<String>() {
+            @Override
+            public byte[] encode(String value) {
+                return value.getBytes(StandardCharsets.UTF_8);
+            }
+            @Override
+            public String decode(byte[] bytes) {
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+    }
+    
+    /**
+     * Returns the codec of the longs -- for the sequence numbers and the checkpoints.
+     * 
+     * @return the codec.
+     */
+    public static ValueCodec<Long> ofLong() {
+        return new ValueCodec<Long>() {
+            @Override
+            public byte[] encode(Long value) {
+                return ByteBuffer.allocate(Long.BYTES).putLong(value).array();
+            }
+            @Override
+            public Long decode(byte[] bytes) {
+                return ByteBuffer.wrap(bytes).getLong();
+            }
+        };
+    }
+    
+}
@@ -0,0 +1,73 @@
+package nawaman.papercuts.concurrency.atomicvariable;
+
+/**
+ * The contention and latency figures of an instrumented {@link AtomicVariable}.
+ * 
+ * The figures cover the conditional updates (everything that goes through
+ *   {@link AtomicVariable#checkBeforeUpdate(java.util.function.Predicate, java.util.function.Function)} including
+ *   the compare- and the after- variants) -- the plain {@link AtomicVariable#set(Object)} and the batches of the
+ *   async updates are not counted.
+ * 
+ * @author NawaMan
+ */
+public interface VariableMetrics {
+    
+    /**
+     * Returns the name given when the instrumentation was enabled.
+     * 
+     * @return the name.
+     */
+    public String getName();
+    
+    /**
+     * Returns the number of the conditional updates.
+     * 
+     * @return the update count.
+     */
+    public long getUpdateCount();
+    
+    /**
+     * Returns the number of the updates that changed the value.
+     * 
+     * @return the change count.
+     */
+    public long getChangeCount();
+    
+    /**
+     * Returns the number of the updates rejected by the first test of the check (before any lock is taken).
+     * 
+     * @return the check failure count.
+     */
+    public long getCheckFailureCount();
+    
+    /**
+     * Returns the number of the updates that passed the first test of the check but failed the one that counts --
+     *   another thread changed the value in between.
+     * 
+     * @return the recheck failure count.
+     */
+    public long getRecheckFailureCount();
+    
+    /**
+     * Returns the number of the compare-and-set attempts that lost to another thread ({@link UpdateMode#OPTIMISTIC}).
+     * 
+     * @return the retry count.
+     */
+    public long getRetryCount();
+    
+    /**
+     * Returns the times the updates spent not running the new value function -- waiting for the monitor or for the
+     *   combiner, or on the retries.
+     * 
+     * @return the wait times in nanoseconds.
+     */
+    public LatencyHistogram getWaitTimes();
+    
+    /**
+     * Returns the times the new value functions run.
+     * 
+     * @return the function times in nanoseconds.
+     */
+    public LatencyHistogram getFunctionTimes();
+    
+}
@@ -0,0 +1,159 @@
+package nawaman.papercuts.concurrency.atomicvariable;
+
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * An atomic variable that stamps its value with a version -- the version goes up by one on every change.
+ * 
+ * The version allows the change detection without comparing the values: a poller remembers the version it last saw
+ *   and calls {@link #hasChangedSince(long)} which is a single volatile read (no {@code equals}, no allocation).
+ *   Unlike a value comparison, the version also tells A-B-A from "unchanged".
+ * 
+ * The changes are applied while holding the variable's monitor. The value is written before the version so the
+ *   value read after {@link #getVersion()} is always at least as new as that version -- a value read this way may
+ *   be newer than the version it was read with (which only makes the next check report a change) but never older.
+ * 
+ * @author NawaMan
+ */
+public class VersionedAtomicVariable<V> implements Supplier<V> {
+    
+    private volatile V value;
+    
+    private volatile long version;
+    
+    /**
+     * Construct a variable with a default value -- the initial version is 0.
+     * 
+     * @param defaultValue
+     *          the default value.
+     */
+    public VersionedAtomicVariable(
+            final V defaultValue) {
+        this.value = defaultValue;
+    }
+    
+    /**
+     * Obtains the variable value.
+     * 
+     * @return the variable value.
+     **/
+    @Override
+    public final V get() {
+        return this.value;
+    }
+    
+    /**
+     * Obtains the version of the variable value.
+     * 
+     * @return the current version.
+     */
+    public final long getVersion() {
+        return this.version;
+    }
+    
+    /**
+     * Check if the variable has changed since the given version.
+     * 
+     * @param version
+     *          the version last seen.
+     * @return {@code true} if the variable has changed since.
+     */
+    public final boolean hasChangedSince(
+            final long version) {
+        return this.version != version;
+    }
+    
+    /**
+     * Change the variable value.
+     * 
+     * @param value
+     *          the new value.
+     * @return the version of the new value.
+     */
+    public final long set(
+            final V value) {
+        synchronized (this) {
+            return this.change(value);
+        }
+    }
+    
+    /**
+     * Atomically change the variable value to the new value ONLY when the version is as expected.
+     * 
+     * @param expectedVersion
+     *          the expected current version.
+     * @param newValue
+     *          the new value.
+     * @return {@code true} if the change is successful.
+     */
+    public final boolean setIfVersion(
+            final long expectedVersion,
+            final V    newValue) {
+        return this.updateIfVersion(
+                expectedVersion,
+                current->newValue);
+    }
+    
+    /**
+     * Atomically change the variable value to the new value determined from the current value ONLY when the version
+     *   is as expected.
+     * 
+     * @param expectedVersion
+     *          the expected current version.
+     * @param newValueFunction
+     *          the function to calculate the new value from the current one.
+     * @return {@code true} if the change is successful.
+     */
+    public final boolean updateIfVersion(
+            final long           expectedVersion,
+            final Function<V, V> newValueFunction) {
+        if (this.version != expectedVersion) {
+            return false;
+        }
+        synchronized (this) {
+            if (this.version != expectedVersion) {
+                return false;
+            }
+            this.change(newValueFunction.apply(this.value));
+            return true;
+        }
+    }
+    
+    /**
+     * Atomically change the variable value to the new value ONLY when the current value pass the check.
+     * 
+     * NOTE: The expectedChecker might to be called more than once for execution.
+     * 
+     * @param expectedChecker
+     *          the predicate to determine if the current value still as expected.
+     * @param newValueFunction
+     *          the function to calculate the new value from the current one.
+     * @return {@code true} if the change is successful.
+     */
+    public final boolean checkBeforeUpdate(
+            final Predicate<V>   expectedChecker,
+            final Function<V, V> newValueFunction) {
+        if (!expectedChecker.test(this.value)) {
+            return false;
+        }
+        synchronized (this) {
+            if (!expectedChecker.test(this.value)) {
+                return false;
+            }
+            this.change(newValueFunction.apply(this.value));
+            return true;
+        }
+    }
+    
+    /** Write the value then its version -- the caller must hold this variable's monitor. */
+    private long change(
+            final V newValue) {
+        this.value = newValue;
+        long newVersion = this.version + 1;
+        this.version = newVersion;
+        return newVersion;
+    }
+    
+}
@@ -0,0 +1,132 @@
+package nawaman.papercuts.concurrency.atomicvariable;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Predicate;
+
+/**
+ * A thread parked until the value of an {@link AtomicVariable} pass its condition.
+ * 
+ * The writers test the condition against each new value and only unpark the waiter once it passes -- the waiters
+ *   whose condition does not pass are not woken up just to find that out themselves.
+ * 
+ * @author NawaMan
+ */
+final class Waiter<V> {
+    
+    private static final int WAITING    = 0;
+    private static final int COMPLETING = 1;
+    private static final int DONE       = 2;
+    private static final int CANCELLED  = 3;
+    
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<Waiter> STATE
+            = AtomicIntegerFieldUpdater.newUpdater(Waiter.class, "state");
+    
+    private final Predicate<? super V> condition;
+    
+    private final Thread thread;
+    
+    private volatile int state = WAITING;
+    
+    /** The value that passed the condition -- written before the state is. */
+    private V value;
+    
+    /** The failure of the condition -- rethrown by the waiting thread rather than by the writer. */
+    private RuntimeException failure;
+    
+    Waiter(final Predicate<? super V> condition) {
+        this.condition = condition;
+        this.thread    = Thread.currentThread();
+    }
+    
+    /**
+     * Test the condition against the value and, if it passes, wake the waiter up -- called by the writers.
+     */
+    void test(
+            final V value) {
+        if (this.state != WAITING) {
+            return;
+        }
+        boolean          isPassed;
+        RuntimeException failure = null;
+        try {
+            isPassed = this.condition.test(value);
+        } catch (RuntimeException exception) {
+            isPassed = true;
+            failure  = exception;
+        }
+        if (isPassed && STATE.compareAndSet(this, WAITING, COMPLETING)) {
+            this.value   = value;
+            this.failure = failure;
+            this.state   = DONE;
+            LockSupport.unpark(this.thread);
+        }
+    }
+    
+    /**
+     * Park until the condition passes or until the deadline.
+     * 
+     * @param deadline
+     *          the deadline in {@link System#nanoTime()} or {@code 0} for no deadline.
+     * @param isInterruptible
+     *          {@code true} if the wait ends when the thread is interrupted.
+     * @return {@code true} if the condition passed -- the value is then in {@link #value()}.
+     * @throws InterruptedException
+     *          if interruptible and the thread is interrupted.
+     */
+    boolean await(
+            final long    deadline,
+            final boolean isInterruptible) throws InterruptedException {
+        boolean isInterrupted = false;
+        try {
+            while (true) {
+                if (this.state == DONE) {
+                    return true;
+                }
+                if (Thread.interrupted()) {
+                    if (isInterruptible) {
+                        if (STATE.compareAndSet(this, WAITING, CANCELLED)) {
+                            throw new InterruptedException();
+                        }
+                        // Passing just in time -- keep the interrupt for the caller.
+                        isInterrupted = true;
+                        continue;
+                    }
+                    isInterrupted = true;
+                }
+                if (deadline == 0) {
+                    LockSupport.park(this);
+                } else {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        if (STATE.compareAndSet(this, WAITING, CANCELLED)) {
+                            return false;
+                        }
+                        // Passing just in time -- the value is being written.
+                        Thread.yield();
+                        continue;
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                }
+            }
+        } finally {
+            if (isInterrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    /**
+     * Returns the value that passed the condition.
+     * 
+     * @return the value.
+     */
+    V value() {
+        if (this.failure != null) {
+            throw this.failure;
+        }
+        return this.value;
+    }
+    
+}
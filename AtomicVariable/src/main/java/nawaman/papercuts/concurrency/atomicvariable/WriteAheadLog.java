@@ -0,0 +1,194 @@
+package nawaman.papercuts.concurrency.atomicvariable;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * The memory-mapped append log of a {@link DurableAtomicVariable}.
+ * 
+ * Each record is [tag:int][crc:int][bytes] where the tag is 0 for the end of the log, -1 for null and the length plus
+ *   one otherwise -- the CRC covers the tag and the bytes so a record torn by a crash is seen as the end of the log.
+ *   Only the last record matters so, when the file is full, the log is compacted into a new file holding just the
+ *   last record, which is then moved over the old one. The new file is twice as big as the old one when the last
+ *   record takes more than an eighth of the old one, so the compactions get rarer as the records get bigger.
+ * 
+ * NOTE: A mapping cannot be released explicitly in Java 8 -- the mapping of a replaced file stays (and counts toward
+ *         the limit of the mappings of the process) until the garbage collector reclaims its buffer. Use a capacity
+ *         big enough for the compactions to be rare.
+ * 
+ * The appends are done by one thread at a time (the one holding the variable's monitor); the syncs may come from
+ *   any thread -- the one that syncs covers all the records appended so far (group commit).
+ * 
+ * @author NawaMan
+ */
+class WriteAheadLog {
+    
+    static final int HEADER_SIZE = 8;
+    
+    static final int MIN_CAPACITY = 4096;
+    
+    static final int MAX_CAPACITY = 1 << 30;
+    
+    private static final int TAG_END  = 0;
+    
+    private static final int TAG_NULL = -1;
+    
+    private final Path file;
+    
+    private final Object syncLock = new Object();
+    
+    private volatile MappedByteBuffer buffer;
+    
+    private int capacity;
+    
+    private byte[] lastRecord;
+    
+    private boolean isLastNull;
+    
+    /** The number of the records appended -- only grows. */
+    private volatile long appendedCount;
+    
+    /** The number of the records known to be on the disk. */
+    private long syncedCount;
+    
+    WriteAheadLog(
+            final Path file,
+            final int  capacity) {
+        this.file     = file;
+        this.capacity = Math.min(Math.max(capacity, MIN_CAPACITY), MAX_CAPACITY);
+    }
+    
+    /**
+     * Read the last record of the existing file (if any) then compact the file into just that record.
+     * 
+     * @return {@code true} if a record is found -- see {@link #lastBytes()}.
+     */
+    boolean restore() throws IOException {
+        boolean isFound = false;
+        if (Files.exists(this.file)) {
+            try (FileChannel channel = FileChannel.open(this.file, StandardOpenOption.READ)) {
+                long size = channel.size();
+                this.capacity = (int)Math.max(this.capacity, Math.min(size, Integer.MAX_VALUE));
+                MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, size);
+                while (buffer.remaining() >= HEADER_SIZE) {
+                    int tag = buffer.getInt();
+                    int crc = buffer.getInt();
+                    int length = (tag > 0) ? tag - 1 : 0;
+                    if ((tag == TAG_END) || (tag < TAG_NULL) || (length > buffer.remaining())) {
+                        break;
+                    }
+                    byte[] bytes = new byte[length];
+                    buffer.get(bytes);
+                    if (crcOf(tag, bytes) != crc) {
+                        break;
+                    }
+                    this.isLastNull = (tag == TAG_NULL);
+                    this.lastRecord = bytes;
+                    isFound = true;
+                }
+            }
+        }
+        this.compact();
+        return isFound;
+    }
+    
+    /** Returns the bytes of the last record -- null if the last record is null. */
+    byte[] lastBytes() {
+        return this.isLastNull ? null : this.lastRecord;
+    }
+    
+    /**
+     * Append the record -- the caller must be the only appender at the time.
+     * 
+     * @return the sequence of the record to sync up to.
+     */
+    long append(
+            final byte[] bytes) throws IOException {
+        int length = (bytes == null) ? 0 : bytes.length;
+        if (this.buffer.remaining() < HEADER_SIZE + length + HEADER_SIZE) {
+            this.lastRecord = bytes;
+            this.isLastNull = (bytes == null);
+            // Grow when the live record takes a large part of the file -- not to compact every few appends.
+            long recordSize = HEADER_SIZE + length;
+            if (recordSize > this.capacity / 8) {
+                this.capacity = (int)Math.min(Math.max(2L * this.capacity, 8 * recordSize), MAX_CAPACITY);
+            }
+            this.compact();
+            return this.appendedCount;
+        }
+        this.write(this.buffer, bytes);
+        this.lastRecord = bytes;
+        this.isLastNull = (bytes == null);
+        return ++this.appendedCount;
+    }
+    
+    /** Make sure the records up to the sequence are on the disk. */
+    void syncUpTo(
+            final long sequence) {
+        synchronized (this.syncLock) {
+            if (this.syncedCount >= sequence) {
+                return;
+            }
+            long target = this.appendedCount;
+            this.buffer.force();
+            this.syncedCount = Math.max(this.syncedCount, target);
+        }
+    }
+    
+    /** Sync all the records appended so far. */
+    void sync() {
+        this.syncUpTo(this.appendedCount);
+    }
+    
+    /**
+     * Rewrite the file with only the last record -- the caller must be the only appender at the time.
+     */
+    void compact() throws IOException {
+        Path compacted = this.file.resolveSibling(this.file.getFileName() + ".compact");
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(compacted,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            buffer = channel.map(MapMode.READ_WRITE, 0, this.capacity);
+        }
+        if ((this.lastRecord != null) || this.isLastNull) {
+            this.write(buffer, this.lastRecord);
+        }
+        buffer.force();
+        synchronized (this.syncLock) {
+            Files.move(compacted, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            this.buffer      = buffer;
+            this.syncedCount = ++this.appendedCount;
+        }
+    }
+    
+    private void write(
+            final MappedByteBuffer buffer,
+            final byte[]           bytes) {
+        int tag = (bytes == null) ? TAG_NULL : bytes.length + 1;
+        byte[] body = (bytes == null) ? new byte[0] : bytes;
+        buffer.putInt(tag);
+        buffer.putInt(crcOf(tag, body));
+        buffer.put(body);
+    }
+    
+    private static int crcOf(
+            final int    tag,
+            final byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(tag >>> 24);
+        crc.update(tag >>> 16);
+        crc.update(tag >>>  8);
+        crc.update(tag);
+        crc.update(bytes, 0, bytes.length);
+        return (int)crc.getValue();
+    }
+    
+}
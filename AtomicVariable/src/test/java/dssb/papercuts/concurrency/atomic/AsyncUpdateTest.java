@@ -0,0 +1,129 @@
+package dssb.papercuts.concurrency.atomic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import nawaman.papercuts.concurrency.atomicvariable.AtomicVariable;
+import nawaman.papercuts.concurrency.atomicvariable.UpdateMode;
+
+import org.junit.Test;
+
+/**
+ * Test for the async updates of AtomicVariable.
+ * 
+ * @author NawaMan
+ */
+public class AsyncUpdateTest {
+    
+    /** The queued updates are applied in order by one drain task. */
+    @Test
+    public void queuedUpdatesAreAppliedInOrder() throws Exception {
+        for (UpdateMode mode : UpdateMode.values()) {
+            AtomicVariable<String> variable = new AtomicVariable<>("", mode);
+            List<Runnable> tasks = new ArrayList<>();
+            variable.setAsyncExecutor(tasks::add);
+            
+            CompletableFuture<String>  first  = variable.updateAsync(current -> true, current -> current + "A");
+            CompletableFuture<Boolean> second = variable.checkBeforeUpdateAsync(current -> current.equals("A"), current -> current + "B");
+            CompletableFuture<Boolean> third  = variable.checkBeforeUpdateAsync(current -> current.equals("A"), current -> current + "C");
+            CompletableFuture<String>  fourth = variable.updateAsync(current -> true, current -> current + "D");
+            assertFalse(first.isDone());
+            assertEquals("", variable.get());
+            assertEquals(1, tasks.size());
+            
+            tasks.remove(0).run();
+            assertTrue(tasks.isEmpty());
+            assertEquals("A", first.get());
+            assertTrue(second.get());
+            assertFalse(third.get());
+            assertEquals("ABD", fourth.get());
+            assertEquals("ABD", variable.get());
+        }
+    }
+    
+    /** A failing update fails its own future only. */
+    @Test
+    public void failureIsGivenToTheFuture() throws Exception {
+        AtomicVariable<String> variable = new AtomicVariable<>("A");
+        CompletableFuture<String> failed = variable.updateAsync(current -> true, current -> {
+            throw new IllegalArgumentException();
+        });
+        CompletableFuture<String> next = variable.updateAsync(current -> true, current -> current + "B");
+        try {
+            failed.get();
+            fail("Expect an exception.");
+        } catch (ExecutionException exception) {
+            assertTrue(exception.getCause() instanceof IllegalArgumentException);
+        }
+        assertEquals("AB", next.get());
+    }
+    
+    /** An update whose drain the executor rejects is never applied -- its future fails instead. */
+    @Test
+    public void rejectedUpdateIsNotApplied() throws Exception {
+        AtomicVariable<String> variable = new AtomicVariable<>("A");
+        List<Runnable> tasks = new ArrayList<>();
+        boolean[] isRejecting = { true };
+        variable.setAsyncExecutor(task -> {
+            if (isRejecting[0]) {
+                throw new RejectedExecutionException();
+            }
+            tasks.add(task);
+        });
+        
+        CompletableFuture<String> rejected = variable.updateAsync(current -> true, current -> current + "B");
+        try {
+            rejected.get();
+            fail("Expect an exception.");
+        } catch (ExecutionException exception) {
+            assertTrue(exception.getCause() instanceof RejectedExecutionException);
+        }
+        
+        isRejecting[0] = false;
+        CompletableFuture<String> next = variable.updateAsync(current -> true, current -> current + "C");
+        tasks.remove(0).run();
+        assertEquals("AC", next.get());
+        assertEquals("AC", variable.get());
+    }
+    
+    /** Concurrent async updates are never lost. */
+    @Test
+    public void asyncUpdateIsAtomic() throws Exception {
+        for (UpdateMode mode : UpdateMode.values()) {
+            AtomicVariable<Integer> variable = new AtomicVariable<>(0, mode);
+            List<CompletableFuture<Integer>> futures = new ArrayList<>();
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                threads.add(new Thread(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        CompletableFuture<Integer> future = variable.updateAsync(current -> true, current -> current + 1);
+                        if (i % 2 == 0) {
+                            // Mix with the blocking updates.
+                            variable.updateAfterCheck(current -> true, current -> current + 1);
+                        }
+                        synchronized (futures) {
+                            futures.add(future);
+                        }
+                    }
+                }));
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+            assertEquals(12000, variable.get().intValue());
+        }
+    }
+    
+}
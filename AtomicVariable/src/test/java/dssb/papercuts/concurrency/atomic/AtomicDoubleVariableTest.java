@@ -0,0 +1,85 @@
+package dssb.papercuts.concurrency.atomic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import nawaman.papercuts.concurrency.atomicvariable.AtomicDoubleVariable;
+import nawaman.papercuts.concurrency.atomicvariable.UpdateMode;
+
+import org.junit.Test;
+
+/**
+ * Test for AtomicDoubleVariable.
+ * 
+ * @author NawaMan
+ */
+public class AtomicDoubleVariableTest {
+    
+    /** Variable value setting can be done only when the current value is as expected. */
+    @Test
+    public void variableCompareBeforeSet() {
+        for (UpdateMode mode : UpdateMode.values()) {
+            AtomicDoubleVariable variable = new AtomicDoubleVariable(1.5, mode);
+            assertEquals(1.5, variable.get(), 0.0);
+            
+            assertTrue(variable.compareBeforeSet(1.5, 2.5));
+            assertEquals(2.5, variable.get(), 0.0);
+            
+            assertFalse(variable.compareBeforeSet(1.5, 3.5));
+            assertEquals(2.5, variable.getAsDouble(), 0.0);
+        }
+    }
+    
+    /** The comparison is done on the bits of the values. */
+    @Test
+    public void variableCompareIsBitwise() {
+        for (UpdateMode mode : UpdateMode.values()) {
+            AtomicDoubleVariable variable = new AtomicDoubleVariable(Double.NaN, mode);
+            assertTrue(variable.compareBeforeSet(Double.NaN, 0.0));
+            assertFalse(variable.compareBeforeSet(-0.0, 1.0));
+            assertEquals(0.0, variable.get(), 0.0);
+        }
+    }
+    
+    /** The after-variants return the value at the end of the invocation. */
+    @Test
+    public void variableUpdateAfterCheck() {
+        for (UpdateMode mode : UpdateMode.values()) {
+            AtomicDoubleVariable variable = new AtomicDoubleVariable(1.0, mode);
+            
+            assertEquals(2.0, variable.updateAfterCheck(current -> current < 2.0, current -> current * 2), 0.0);
+            assertEquals(2.0, variable.updateAfterCheck(current -> current < 2.0, current -> current * 2), 0.0);
+            assertEquals(2.5, variable.updateAfterCompare(2.0, current -> current + 0.5), 0.0);
+            assertEquals(0.5, variable.setAfterCompare(2.5, 0.5), 0.0);
+            assertEquals(0.5, variable.setAfterCheck(current -> current > 1.0, 9.0), 0.0);
+        }
+    }
+    
+    /** Concurrent updates are never lost. */
+    @Test
+    public void variableUpdateIsAtomic() throws InterruptedException {
+        for (UpdateMode mode : UpdateMode.values()) {
+            AtomicDoubleVariable variable = new AtomicDoubleVariable(0.0, mode);
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                threads.add(new Thread(() -> {
+                    for (int i = 0; i < 10000; i++) {
+                        variable.checkBeforeUpdate(current -> true, current -> current + 1.0);
+                    }
+                }));
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(mode.toString(), 80000.0, variable.get(), 0.0);
+        }
+    }
+    
+}
@@ -0,0 +1,93 @@
+package dssb.papercuts.concurrency.atomic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import nawaman.papercuts.concurrency.atomicvariable.AtomicIntVariable;
+import nawaman.papercuts.concurrency.atomicvariable.UpdateMode;
+
+import org.junit.Test;
+
+/**
+ * Test for AtomicIntVariable.
+ * 
+ * @author NawaMan
+ */
+public class AtomicIntVariableTest {
+    
+    /** Variable value setting can be done only when the current value is as expected. */
+    @Test
+    public void variableCompareBeforeSet() {
+        for (UpdateMode mode : UpdateMode.values()) {
+            AtomicIntVariable variable = new AtomicIntVariable(123, mode);
+            assertEquals(123, variable.get());
+            
+            assertTrue(variable.compareBeforeSet(123, 124));
+            assertEquals(124, variable.get());
+            
+            assertFalse(variable.compareBeforeSet(123, 125));
+            assertEquals(124, variable.getAsInt());
+        }
+    }
+    
+    /** Variable value setting can be done only when the current value is as expected. */
+    @Test
+    public void variableCheckBeforeUpdate() {
+        for (UpdateMode mode : UpdateMode.values()) {
+            AtomicIntVariable variable = new AtomicIntVariable(123, mode);
+            
+            assertTrue(variable.checkBeforeUpdate(current -> (current % 2) == 1, current -> current + 1));
+            assertEquals(124, variable.get());
+            
+            assertFalse(variable.checkBeforeUpdate(current -> (current % 2) == 1, current -> current + 1));
+            assertEquals(124, variable.get());
+            
+            assertTrue(variable.checkBeforeSet(current -> (current % 2) == 0, -1));
+            assertEquals(-1, variable.get());
+        }
+    }
+    
+    /** The after-variants return the value at the end of the invocation. */
+    @Test
+    public void variableUpdateAfterCheck() {
+        for (UpdateMode mode : UpdateMode.values()) {
+            AtomicIntVariable variable = new AtomicIntVariable(123, mode);
+            
+            assertEquals(124, variable.updateAfterCheck(current -> (current % 2) == 1, current -> current + 1));
+            assertEquals(124, variable.updateAfterCheck(current -> (current % 2) == 1, current -> current + 1));
+            assertEquals(125, variable.updateAfterCompare(124, current -> current + 1));
+            assertEquals(125, variable.updateAfterCompare(124, current -> current + 1));
+            assertEquals(  7, variable.setAfterCompare(125, 7));
+            assertEquals(  8, variable.setAfterCheck(current -> current == 7, 8));
+            assertEquals(  8, variable.setAfterCheck(current -> current == 7, 9));
+        }
+    }
+    
+    /** Concurrent updates are never lost. */
+    @Test
+    public void variableUpdateIsAtomic() throws InterruptedException {
+        for (UpdateMode mode : UpdateMode.values()) {
+            AtomicIntVariable variable = new AtomicIntVariable(0, mode);
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                threads.add(new Thread(() -> {
+                    for (int i = 0; i < 10000; i++) {
+                        variable.updateAfterCheck(current -> true, current -> current + 1);
+                    }
+                }));
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(mode.toString(), 80000, variable.get());
+        }
+    }
+    
+}
@@ -0,0 +1,87 @@
+package dssb.papercuts.concurrency.atomic;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import nawaman.papercuts.concurrency.atomicvariable.AtomicIntVariableArray;
+import nawaman.papercuts.concurrency.atomicvariable.AtomicLongVariableArray;
+import nawaman.papercuts.concurrency.atomicvariable.AtomicVariableArray;
+
+import org.junit.Test;
+
+/**
+ * Test for AtomicVariableArray and its primitive versions.
+ * 
+ * @author NawaMan
+ */
+public class AtomicVariableArrayTest {
+    
+    /** Element value setting can be done only when the current value is as expected. */
+    @Test
+    public void elementCompareAndCheck() {
+        for (boolean isPadded : new boolean[] { false, true }) {
+            AtomicVariableArray<String> array = new AtomicVariableArray<>(3, isPadded);
+            assertEquals(3, array.length());
+            
+            assertTrue(array.compareBeforeSet(1, null, "A"));
+            assertFalse(array.compareBeforeSet(1, null, "B"));
+            assertTrue(array.compareBeforeSet(1, new String("A"), "B"));
+            assertEquals("BC", array.updateAfterCheck(1, current -> current.equals("B"), current -> current + "C"));
+            assertFalse(array.checkBeforeSet(1, current -> current.equals("B"), "D"));
+            assertEquals(Arrays.asList(null, "BC", null), array.snapshot());
+        }
+    }
+    
+    /** The bulk operations cover every element. */
+    @Test
+    public void bulkOperations() {
+        for (boolean isPadded : new boolean[] { false, true }) {
+            AtomicVariableArray<Integer> array = new AtomicVariableArray<>(1000, isPadded);
+            array.updateAll(current -> 1);
+            array.updateAll(current -> current + 1);
+            assertEquals(2000, array.reduce(0, Integer::sum).intValue());
+            
+            AtomicLongVariableArray longs = new AtomicLongVariableArray(1000, isPadded);
+            longs.updateAll(current -> current + 2);
+            assertEquals(2000L, longs.reduce(0L, Long::sum));
+            assertEquals(1000, longs.snapshot().length);
+            
+            AtomicIntVariableArray ints = new AtomicIntVariableArray(3, isPadded);
+            ints.set(0, 5);
+            assertTrue(ints.compareBeforeSet(2, 0, 7));
+            assertEquals(6, ints.updateAfterCheck(0, current -> current == 5, current -> current + 1));
+            assertArrayEquals(new int[] { 6, 0, 7 }, ints.snapshot());
+        }
+    }
+    
+    /** Concurrent updates are never lost -- neither on the same element nor on the neighbors. */
+    @Test
+    public void elementUpdateIsAtomic() throws InterruptedException {
+        for (boolean isPadded : new boolean[] { false, true }) {
+            AtomicLongVariableArray array = new AtomicLongVariableArray(4, isPadded);
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int index = t % 4;
+                threads.add(new Thread(() -> {
+                    for (int i = 0; i < 10000; i++) {
+                        array.updateAfterCheck(index, current -> true, current -> current + 1);
+                    }
+                }));
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertArrayEquals(new long[] { 20000, 20000, 20000, 20000 }, array.snapshot());
+        }
+    }
+    
+}
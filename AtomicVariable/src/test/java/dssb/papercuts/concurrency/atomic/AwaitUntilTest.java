@@ -0,0 +1,131 @@
+package dssb.papercuts.concurrency.atomic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import nawaman.papercuts.concurrency.atomicvariable.AtomicVariable;
+import nawaman.papercuts.concurrency.atomicvariable.UpdateMode;
+
+import org.junit.Test;
+
+/**
+ * Test for the awaitUntil of AtomicVariable.
+ * 
+ * @author NawaMan
+ */
+public class AwaitUntilTest {
+    
+    /** Each waiter is woken up once its own condition passes. */
+    @Test
+    public void waitersWakeUpOnTheirConditions() throws InterruptedException {
+        for (UpdateMode mode : UpdateMode.values()) {
+            AtomicVariable<Integer> epoch = new AtomicVariable<>(0, mode);
+            List<Thread>   threads = new ArrayList<>();
+            AtomicInteger  wrongs  = new AtomicInteger();
+            CountDownLatch done    = new CountDownLatch(10);
+            for (int t = 0; t < 10; t++) {
+                int target = t * 100;
+                threads.add(new Thread(() -> {
+                    int value = epoch.awaitUntil(current -> current >= target);
+                    if (value < target) {
+                        wrongs.incrementAndGet();
+                    }
+                    done.countDown();
+                }));
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (int i = 0; i < 1000; i++) {
+                epoch.updateAfterCheck(current -> true, current -> current + 1);
+            }
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(0, wrongs.get());
+        }
+    }
+    
+    /** The timed wait returns false once the time is up. */
+    @Test
+    public void timedWait() throws InterruptedException {
+        AtomicVariable<String> state = new AtomicVariable<>("starting");
+        assertTrue(state.awaitUntil(current -> current.startsWith("start"), 0, TimeUnit.MILLISECONDS));
+        assertFalse(state.awaitUntil("initialized"::equals, 0, TimeUnit.MILLISECONDS));
+        
+        long start = System.nanoTime();
+        assertFalse(state.awaitUntil("initialized"::equals, 50, TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        
+        new Thread(() -> state.set("initialized")).start();
+        assertTrue(state.awaitUntil("initialized"::equals, 10, TimeUnit.SECONDS));
+    }
+    
+    /** The interruptible wait ends on the interrupt -- the other keeps waiting. */
+    @Test
+    public void interruptedWait() throws InterruptedException {
+        AtomicVariable<Boolean> flag = new AtomicVariable<>(false);
+        
+        AtomicBoolean isInterrupted = new AtomicBoolean(false);
+        Thread interruptible = new Thread(() -> {
+            try {
+                flag.awaitUntilInterruptibly(current -> current);
+            } catch (InterruptedException exception) {
+                isInterrupted.set(true);
+            }
+        });
+        AtomicReference<Boolean> value = new AtomicReference<>();
+        AtomicBoolean isStillInterrupted = new AtomicBoolean(false);
+        Thread uninterruptible = new Thread(() -> {
+            value.set(flag.awaitUntil(current -> current));
+            isStillInterrupted.set(Thread.currentThread().isInterrupted());
+        });
+        interruptible.start();
+        uninterruptible.start();
+        Thread.sleep(50);
+        interruptible.interrupt();
+        uninterruptible.interrupt();
+        interruptible.join(10000);
+        assertTrue(isInterrupted.get());
+        
+        Thread.sleep(50);
+        assertTrue(uninterruptible.isAlive());
+        flag.set(true);
+        uninterruptible.join(10000);
+        assertTrue(value.get());
+        assertTrue(isStillInterrupted.get());
+    }
+    
+    /** The failure of the condition is thrown to the waiter, not to the writer. */
+    @Test
+    public void conditionFailure() throws InterruptedException {
+        AtomicVariable<String> variable = new AtomicVariable<>("");
+        AtomicBoolean isFailed = new AtomicBoolean(false);
+        Thread waiter = new Thread(() -> {
+            try {
+                variable.awaitUntil(current -> current.length() > 0);
+            } catch (NullPointerException exception) {
+                isFailed.set(true);
+            }
+        });
+        waiter.start();
+        Thread.sleep(50);
+        variable.set(null);
+        waiter.join(10000);
+        assertTrue(isFailed.get());
+        try {
+            variable.awaitUntil(current -> current.length() > 0);
+            fail("Expect an exception.");
+        } catch (NullPointerException exception) {
+        }
+    }
+    
+}
@@ -0,0 +1,102 @@
+package dssb.papercuts.concurrency.atomic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import nawaman.papercuts.concurrency.atomicvariable.AtomicVariable;
+import nawaman.papercuts.concurrency.atomicvariable.BackoffStrategy;
+import nawaman.papercuts.concurrency.atomicvariable.UpdateMode;
+
+import org.junit.Test;
+
+/**
+ * Test for BackoffStrategy.
+ * 
+ * @author NawaMan
+ */
+public class BackoffStrategyTest {
+    
+    /** The strategy of the call is used instead of the variable's after a lost race. */
+    @Test
+    public void backoffAfterLostRace() {
+        AtomicVariable<Integer> variable = new AtomicVariable<>(0, UpdateMode.OPTIMISTIC);
+        assertSame(BackoffStrategy.NONE, variable.getBackoffStrategy());
+        
+        List<Integer> variableAttempts = new ArrayList<>();
+        List<Integer> callAttempts     = new ArrayList<>();
+        variable.setBackoffStrategy(variableAttempts::add);
+        
+        // The first two attempts lose the race to a change made from inside the function.
+        int[] applyCount = { 0 };
+        int result = variable.updateAfterCheck(current -> true, current -> {
+            if (applyCount[0]++ < 2) {
+                variable.set(current + 10);
+            }
+            return current + 1;
+        }, callAttempts::add);
+        
+        assertEquals(21, result);
+        assertEquals(Arrays.asList(1, 2), callAttempts);
+        assertEquals(Arrays.asList(), variableAttempts);
+        
+        applyCount[0] = 0;
+        variable.updateAfterCheck(current -> true, current -> {
+            if (applyCount[0]++ < 1) {
+                variable.set(current + 10);
+            }
+            return current + 1;
+        });
+        assertEquals(32, variable.get().intValue());
+        assertEquals(Arrays.asList(1), variableAttempts);
+    }
+    
+    /** The built-in strategies lose no update. */
+    @Test
+    public void builtInStrategies() throws InterruptedException {
+        List<BackoffStrategy> strategies = Arrays.asList(
+                BackoffStrategy.none(),
+                BackoffStrategy.onSpinWait(),
+                BackoffStrategy.spinYieldPark(4, 4, 1, TimeUnit.MICROSECONDS),
+                BackoffStrategy.exponential(1, 100, TimeUnit.MICROSECONDS));
+        for (BackoffStrategy strategy : strategies) {
+            AtomicVariable<Integer> variable = new AtomicVariable<>(0, UpdateMode.OPTIMISTIC);
+            variable.setBackoffStrategy(strategy);
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                threads.add(new Thread(() -> {
+                    for (int i = 0; i < 10000; i++) {
+                        variable.updateAfterCheck(current -> true, current -> current + 1);
+                    }
+                }));
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(40000, variable.get().intValue());
+        }
+    }
+    
+    /** The exponential limit does not overflow with many attempts. */
+    @Test
+    public void exponentialLimit() {
+        BackoffStrategy strategy = BackoffStrategy.exponential(1, 10, TimeUnit.NANOSECONDS);
+        strategy.backoff(1);
+        strategy.backoff(100);
+        strategy.backoff(Integer.MAX_VALUE);
+        try {
+            BackoffStrategy.exponential(10, 1, TimeUnit.NANOSECONDS);
+            fail("Expect an exception.");
+        } catch (IllegalArgumentException exception) {
+        }
+    }
+    
+}
@@ -0,0 +1,92 @@
+package dssb.papercuts.concurrency.atomic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nawaman.papercuts.concurrency.atomicvariable.AtomicVariable;
+import nawaman.papercuts.concurrency.atomicvariable.UpdateMode;
+
+import org.junit.Test;
+
+/**
+ * Runs all the Variable tests against a variable in the flat-combining mode.
+ * 
+ * @author NawaMan
+ */
+public class CombiningAtomicVariableTest extends AtomicVariableTest {
+    
+    @Override
+    protected AtomicVariable<Object> createVariable(
+            final Object defValue) {
+        return new AtomicVariable<Object>(defValue, UpdateMode.COMBINING);
+    }
+    
+    @Override
+    protected AtomicVariable<Object> createVariable() {
+        return new AtomicVariable<Object>(defValue, UpdateMode.COMBINING);
+    }
+    
+    /** The update function is called exactly once for each update even when the updates are combined. */
+    @Test
+    public void variableUpdateFunctionIsCalledOnce() throws InterruptedException {
+        AtomicVariable<Integer> counter = new AtomicVariable<>(0, UpdateMode.COMBINING);
+        AtomicInteger           calls   = new AtomicInteger();
+        
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 5000; i++) {
+                    counter.updateAfterCheck(
+                            current -> true,
+                            current -> {
+                                calls.incrementAndGet();
+                                return current + 1;
+                            });
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        
+        assertEquals(40000, counter.get().intValue());
+        assertEquals(40000, calls.get());
+    }
+    
+    /** An exception thrown by the update function goes to the thread that requested the update. */
+    @Test
+    public void variableUpdateFunctionExceptionIsRethrown() {
+        AtomicVariable<Integer> counter = new AtomicVariable<>(0, UpdateMode.COMBINING);
+        try {
+            counter.checkBeforeUpdate(current -> true, current -> { throw new IllegalStateException(); });
+            fail("Expect an exception.");
+        } catch (IllegalStateException exception) {
+        }
+        assertEquals(0, counter.get().intValue());
+        assertEquals(1, counter.updateAfterCheck(current -> true, current -> current + 1).intValue());
+    }
+    
+    /** An update nested in the update function is applied right away -- as it is in the locking mode. */
+    @Test
+    public void nestedUpdateIsApplied() {
+        for (UpdateMode mode : new UpdateMode[] { UpdateMode.LOCKING, UpdateMode.COMBINING }) {
+            AtomicVariable<Integer> counter = new AtomicVariable<>(0, mode);
+            int[] nested = { 0 };
+            int   result = counter.updateAfterCheck(current -> true, current -> {
+                nested[0] = counter.updateAfterCheck(inner -> true, inner -> inner + 10);
+                return nested[0] + 1;
+            });
+            assertEquals(10, nested[0]);
+            assertEquals(11, result);
+            assertEquals(11, counter.get().intValue());
+        }
+    }
+    
+}
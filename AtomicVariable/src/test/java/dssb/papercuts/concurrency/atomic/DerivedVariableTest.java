@@ -0,0 +1,98 @@
+package dssb.papercuts.concurrency.atomic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nawaman.papercuts.concurrency.atomicvariable.AtomicVariable;
+import nawaman.papercuts.concurrency.atomicvariable.DerivedVariable;
+
+import org.junit.Test;
+
+/**
+ * Test for DerivedVariable.
+ * 
+ * @author NawaMan
+ */
+public class DerivedVariableTest {
+    
+    /** The value is computed lazily and only once per change of the sources. */
+    @Test
+    public void recomputeOncePerChange() {
+        AtomicVariable<Integer> a = new AtomicVariable<>(1);
+        AtomicVariable<Integer> b = new AtomicVariable<>(2);
+        AtomicInteger computeCount = new AtomicInteger();
+        DerivedVariable<Integer> total = AtomicVariable.combine(a, b, (x, y) -> {
+            computeCount.incrementAndGet();
+            return x + y;
+        });
+        assertEquals(0, computeCount.get());
+        
+        assertEquals(3, total.get().intValue());
+        assertEquals(3, total.get().intValue());
+        assertEquals(1, computeCount.get());
+        assertEquals(0, total.getVersion());
+        
+        a.set(10);
+        a.set(20);
+        assertEquals(22, total.get().intValue());
+        assertEquals(22, total.get().intValue());
+        assertEquals(2, computeCount.get());
+        assertEquals(1, total.getVersion());
+    }
+    
+    /** A recomputed value equal to the previous one does not recompute the variables derived from it. */
+    @Test
+    public void unchangedBranchIsNotRecomputed() {
+        AtomicVariable<String> raw = new AtomicVariable<>("timeout=10, retries=3");
+        AtomicInteger parseCount  = new AtomicInteger();
+        AtomicInteger reportCount = new AtomicInteger();
+        DerivedVariable<List<String>> config = raw.map(text -> {
+            parseCount.incrementAndGet();
+            List<String> entries = new ArrayList<>();
+            for (String entry : text.split(",")) {
+                entries.add(entry.trim());
+            }
+            return entries;
+        });
+        DerivedVariable<String> report = config.map(entries -> {
+            reportCount.incrementAndGet();
+            return entries.size() + " entries";
+        });
+        
+        assertEquals("2 entries", report.get());
+        List<String> parsed = config.get();
+        
+        // Only the spaces are different -- the parsed config is equal.
+        raw.set("timeout=10,retries=3");
+        assertEquals("2 entries", report.get());
+        assertSame(parsed, config.get());
+        assertEquals(2, parseCount.get());
+        assertEquals(1, reportCount.get());
+        assertEquals(0, config.getVersion());
+        
+        raw.set("timeout=10");
+        assertEquals("1 entries", report.get());
+        assertEquals(3, parseCount.get());
+        assertEquals(2, reportCount.get());
+    }
+    
+    /** A failed computation is tried again by the next read. */
+    @Test
+    public void failureIsNotKept() {
+        AtomicVariable<String> raw = new AtomicVariable<>("x");
+        DerivedVariable<Integer> number = raw.map(Integer::parseInt);
+        try {
+            number.get();
+            fail("Expect an exception.");
+        } catch (NumberFormatException exception) {
+        }
+        raw.set("42");
+        assertEquals(42, number.get().intValue());
+    }
+    
+}
@@ -0,0 +1,131 @@
+package dssb.papercuts.concurrency.atomic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import nawaman.papercuts.concurrency.atomicvariable.DurableAtomicVariable;
+import nawaman.papercuts.concurrency.atomicvariable.DurableAtomicVariable.SyncPolicy;
+import nawaman.papercuts.concurrency.atomicvariable.ValueCodec;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test for DurableAtomicVariable.
+ * 
+ * @author NawaMan
+ */
+public class DurableAtomicVariableTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    /** The last value is restored by the next variable on the same file. */
+    @Test
+    public void valueIsRestored() throws IOException {
+        Path file = this.folder.getRoot().toPath().resolve("sequence.log");
+        try (DurableAtomicVariable<Long> sequence = new DurableAtomicVariable<>(file, 0L, ValueCodec.ofLong())) {
+            assertEquals(0L, sequence.get().longValue());
+            sequence.set(5L);
+            sequence.updateAfterCheck(current -> current < 10, current -> current + 1);
+        }
+        try (DurableAtomicVariable<Long> sequence = new DurableAtomicVariable<>(file, 0L, ValueCodec.ofLong())) {
+            assertEquals(6L, sequence.get().longValue());
+        }
+    }
+    
+    /** The log is compacted when it fills up -- the values survive it. */
+    @Test
+    public void valueSurvivesCompaction() throws IOException {
+        Path file = this.folder.getRoot().toPath().resolve("checkpoint.log");
+        try (DurableAtomicVariable<String> checkpoint = new DurableAtomicVariable<>(file, null, ValueCodec.ofString(), SyncPolicy.NONE, 0, TimeUnit.MILLISECONDS)) {
+            assertNull(checkpoint.get());
+            for (int i = 0; i < 20000; i++) {
+                checkpoint.set("checkpoint-" + i);
+            }
+        }
+        try (DurableAtomicVariable<String> checkpoint = new DurableAtomicVariable<>(file, null, ValueCodec.ofString(), SyncPolicy.INTERVAL, 10, TimeUnit.MILLISECONDS)) {
+            assertEquals("checkpoint-19999", checkpoint.get());
+            checkpoint.set(null);
+        }
+        try (DurableAtomicVariable<String> checkpoint = new DurableAtomicVariable<>(file, "default", ValueCodec.ofString())) {
+            assertNull(checkpoint.get());
+        }
+    }
+    
+    /** A record torn by a crash is ignored. */
+    @Test
+    public void tornRecordIsIgnored() throws IOException {
+        Path file = this.folder.getRoot().toPath().resolve("torn.log");
+        try (DurableAtomicVariable<Long> sequence = new DurableAtomicVariable<>(file, 0L, ValueCodec.ofLong())) {
+            sequence.set(42L);
+        }
+        // The compacted file holds one record of 8 + 8 bytes -- put a record with a bad CRC after it.
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ByteBuffer torn = ByteBuffer.allocate(16);
+            torn.putInt(9).putInt(12345).putLong(7L).flip();
+            channel.write(torn, 16);
+        }
+        try (DurableAtomicVariable<Long> sequence = new DurableAtomicVariable<>(file, 0L, ValueCodec.ofLong())) {
+            assertEquals(42L, sequence.get().longValue());
+        }
+    }
+    
+    /** The log grows when the records take a large part of it -- and compacts as it fills up. */
+    @Test
+    public void logGrowsWithTheRecords() throws IOException {
+        Path file = this.folder.getRoot().toPath().resolve("grow.log");
+        char[] chars = new char[1000];
+        try (DurableAtomicVariable<String> checkpoint = new DurableAtomicVariable<>(file, null, ValueCodec.ofString(), SyncPolicy.NONE, 0, TimeUnit.MILLISECONDS, 4096)) {
+            assertEquals(4096, Files.size(file));
+            for (int i = 0; i < 20; i++) {
+                Arrays.fill(chars, (char)('a' + i));
+                checkpoint.set(new String(chars));
+            }
+        }
+        assertTrue(Files.size(file) > 4096);
+        try (DurableAtomicVariable<String> checkpoint = new DurableAtomicVariable<>(file, null, ValueCodec.ofString())) {
+            assertEquals(new String(chars), checkpoint.get());
+        }
+    }
+    
+    /** Concurrent synced updates are never lost. */
+    @Test
+    public void concurrentUpdatesAreLogged() throws Exception {
+        Path file = this.folder.getRoot().toPath().resolve("counter.log");
+        try (DurableAtomicVariable<Long> counter = new DurableAtomicVariable<>(file, 0L, ValueCodec.ofLong())) {
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                threads.add(new Thread(() -> {
+                    for (int i = 0; i < 250; i++) {
+                        counter.updateAfterCheck(current -> true, current -> current + 1);
+                    }
+                }));
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(1000L, counter.get().longValue());
+        }
+        try (DurableAtomicVariable<Long> counter = new DurableAtomicVariable<>(file, 0L, ValueCodec.ofLong())) {
+            assertEquals(1000L, counter.get().longValue());
+        }
+    }
+    
+}
@@ -0,0 +1,137 @@
+package dssb.papercuts.concurrency.atomic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import nawaman.papercuts.concurrency.atomicvariable.AtomicVariable;
+import nawaman.papercuts.concurrency.atomicvariable.LatencyHistogram;
+import nawaman.papercuts.concurrency.atomicvariable.UpdateMode;
+import nawaman.papercuts.concurrency.atomicvariable.VariableMetrics;
+
+import org.junit.Test;
+
+/**
+ * Test for the instrumentation of AtomicVariable.
+ * 
+ * @author NawaMan
+ */
+public class InstrumentationTest {
+    
+    /** The updates are counted by their outcome. */
+    @Test
+    public void updatesAreCounted() {
+        for (UpdateMode mode : UpdateMode.values()) {
+            AtomicVariable<String> variable = new AtomicVariable<>("A", mode);
+            assertNull(variable.getMetrics());
+            
+            VariableMetrics metrics = variable.enableInstrumentation("test");
+            assertEquals("test", metrics.getName());
+            
+            variable.compareBeforeSet("A", "B");
+            variable.compareBeforeSet("A", "C");
+            variable.updateAfterCheck(current -> true, current -> current + "D");
+            // Passes the first test only -- the optimistic mode tests once per attempt.
+            boolean isLocking = (mode != UpdateMode.OPTIMISTIC);
+            if (isLocking) {
+                boolean[] isFirst = { true };
+                variable.checkBeforeUpdate(current -> {
+                    boolean result = isFirst[0];
+                    isFirst[0] = false;
+                    return result;
+                }, current -> "E");
+            }
+            
+            assertEquals(isLocking ? 4 : 3, metrics.getUpdateCount());
+            assertEquals(2, metrics.getChangeCount());
+            assertEquals(1, metrics.getCheckFailureCount());
+            assertEquals(isLocking ? 1 : 0, metrics.getRecheckFailureCount());
+            assertEquals(0, metrics.getRetryCount());
+            assertEquals(isLocking ? 3 : 2, metrics.getWaitTimes().getCount());
+            assertEquals(2, metrics.getFunctionTimes().getCount());
+            
+            variable.disableInstrumentation();
+            variable.set("F");
+            variable.compareBeforeSet("F", "G");
+            assertNull(variable.getMetrics());
+            assertEquals(isLocking ? 4 : 3, metrics.getUpdateCount());
+        }
+    }
+    
+    /** The lost compare-and-set attempts are counted as the retries. */
+    @Test
+    public void optimisticRetriesAreCounted() throws InterruptedException {
+        AtomicVariable<Integer> variable = new AtomicVariable<>(0, UpdateMode.OPTIMISTIC);
+        VariableMetrics metrics = variable.enableInstrumentation("counter");
+        
+        // Loses three races (to the sets made from within the function) before it succeeds.
+        int[] applyCount = { 0 };
+        variable.updateAfterCheck(current -> true, current -> {
+            if (applyCount[0]++ < 3) {
+                variable.set(current + 10);
+            }
+            return current + 1;
+        });
+        assertEquals(31, variable.get().intValue());
+        assertEquals(3, metrics.getRetryCount());
+        assertEquals(1, metrics.getUpdateCount());
+        assertEquals(1, metrics.getChangeCount());
+        
+        // The same for an update that loses once and then fails the check.
+        applyCount[0] = 0;
+        variable.updateAfterCheck(current -> current < 40, current -> {
+            if (applyCount[0]++ < 1) {
+                variable.set(current + 10);
+            }
+            return current + 1;
+        });
+        assertEquals(41, variable.get().intValue());
+        assertEquals(4, metrics.getRetryCount());
+        assertEquals(2, metrics.getUpdateCount());
+        assertEquals(1, metrics.getChangeCount());
+        
+        variable.set(0);
+        metrics = variable.enableInstrumentation("counter");
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    variable.updateAfterCheck(current -> true, current -> current + 1);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40000, variable.get().intValue());
+        assertEquals(40000, metrics.getUpdateCount());
+        assertEquals(40000, metrics.getChangeCount());
+        assertEquals(40000, metrics.getFunctionTimes().getCount());
+        assertEquals(40000, metrics.getWaitTimes().getCount());
+    }
+    
+    /** The percentiles are the upper bounds of the power-of-two buckets. */
+    @Test
+    public void histogramPercentiles() {
+        AtomicVariable<String> variable = new AtomicVariable<>("A");
+        VariableMetrics metrics = variable.enableInstrumentation("test");
+        LatencyHistogram functionTimes = metrics.getFunctionTimes();
+        assertEquals(0, functionTimes.getPercentile(50));
+        
+        for (int i = 0; i < 10; i++) {
+            variable.updateAfterCheck(current -> true, current -> current + "A");
+        }
+        assertEquals(10, functionTimes.getCount());
+        long median = functionTimes.getPercentile(50);
+        long p100   = functionTimes.getPercentile(100);
+        assertTrue(median <= p100);
+        assertTrue(functionTimes.getMean() <= p100);
+    }
+    
+}
@@ -0,0 +1,57 @@
+package dssb.papercuts.concurrency.atomic;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nawaman.papercuts.concurrency.atomicvariable.AtomicVariable;
+import nawaman.papercuts.concurrency.atomicvariable.UpdateMode;
+
+import org.junit.Test;
+
+/**
+ * Runs all the Variable tests against a variable in the optimistic (compare-and-set) mode.
+ * 
+ * @author NawaMan
+ */
+public class OptimisticAtomicVariableTest extends AtomicVariableTest {
+    
+    @Override
+    protected AtomicVariable<Object> createVariable(
+            final Object defValue) {
+        return new AtomicVariable<Object>(defValue, UpdateMode.OPTIMISTIC);
+    }
+    
+    @Override
+    protected AtomicVariable<Object> createVariable() {
+        return new AtomicVariable<Object>(defValue, UpdateMode.OPTIMISTIC);
+    }
+    
+    /** No update is lost even when the update function has to be retried. */
+    @Test
+    public void variableUpdateAfterCheckDoesNotLoseUpdate() {
+        defValue    =     0;
+        countSize   =    10;
+        threadCount =   100;
+        
+        variable = createVariable((Integer)defValue);
+        assertEquals(UpdateMode.OPTIMISTIC, variable.getMode());
+        
+        AtomicInteger calls = new AtomicInteger();
+        List<Thread> threads = prepareDelayedThreads(
+                current->{
+                    variable.updateAfterCheck(
+                            curValue->true,
+                            curValue->{
+                                calls.incrementAndGet();
+                                return (int)curValue + 1;
+                            });
+                });
+        runAllThreadsAndWait(threads);
+        
+        assertEquals(countSize*threadCount, variable.get());
+        assertEquals(true, calls.get() >= countSize*threadCount);
+    }
+    
+}
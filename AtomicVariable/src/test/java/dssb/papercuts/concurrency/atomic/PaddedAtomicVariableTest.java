@@ -0,0 +1,61 @@
+package dssb.papercuts.concurrency.atomic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import nawaman.papercuts.concurrency.atomicvariable.AtomicVariable;
+import nawaman.papercuts.concurrency.atomicvariable.PaddedAtomicVariable;
+import nawaman.papercuts.concurrency.atomicvariable.UpdateMode;
+
+import org.junit.Test;
+
+/**
+ * Test for PaddedAtomicVariable.
+ * 
+ * @author NawaMan
+ */
+public class PaddedAtomicVariableTest {
+    
+    /** The allocated variables are padded variables with the given default values and mode. */
+    @Test
+    public void allocateHotVariables() {
+        List<AtomicVariable<String>> variables = PaddedAtomicVariable.allocate(4, index -> "V" + index, UpdateMode.COMBINING);
+        assertEquals(4, variables.size());
+        for (int i = 0; i < variables.size(); i++) {
+            AtomicVariable<String> variable = variables.get(i);
+            assertTrue(variable instanceof PaddedAtomicVariable);
+            assertEquals("V" + i, variable.get());
+            assertEquals(UpdateMode.COMBINING, variable.getMode());
+        }
+    }
+    
+    /** The padded variables are updated by their own threads without losing any update. */
+    @Test
+    public void neighborUpdatesAreAtomic() throws InterruptedException {
+        for (UpdateMode mode : UpdateMode.values()) {
+            List<AtomicVariable<Integer>> variables = PaddedAtomicVariable.allocate(4, index -> 0, mode);
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                AtomicVariable<Integer> variable = variables.get(t % 4);
+                threads.add(new Thread(() -> {
+                    for (int i = 0; i < 10000; i++) {
+                        variable.updateAfterCheck(current -> true, current -> current + 1);
+                    }
+                }));
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            for (AtomicVariable<Integer> variable : variables) {
+                assertEquals(20000, variable.get().intValue());
+            }
+        }
+    }
+    
+}
@@ -0,0 +1,136 @@
+package dssb.papercuts.concurrency.atomic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import nawaman.papercuts.concurrency.atomicvariable.AtomicVariable;
+import nawaman.papercuts.concurrency.atomicvariable.PersistentMap;
+import nawaman.papercuts.concurrency.atomicvariable.PersistentSet;
+import nawaman.papercuts.concurrency.atomicvariable.UpdateMode;
+
+import org.junit.Test;
+
+/**
+ * Test for PersistentMap and PersistentSet.
+ * 
+ * @author NawaMan
+ */
+public class PersistentMapTest {
+    
+    /** A key with a poor hash code -- to have the collisions. */
+    static final class Key {
+        final int id;
+        Key(int id) {
+            this.id = id;
+        }
+        @Override
+        public int hashCode() {
+            return this.id % 100;
+        }
+        @Override
+        public boolean equals(Object obj) {
+            return (obj instanceof Key) && (((Key)obj).id == this.id);
+        }
+        @Override
+        public String toString() {
+            return "Key" + this.id;
+        }
+    }
+    
+    /** The map works the same as a HashMap -- and the old versions stay as they were. */
+    @Test
+    public void sameAsHashMap() {
+        Random random = new Random(42);
+        for (int bound : new int[] { 50, 5000 }) {
+            Map<Object, Integer>           expected = new HashMap<>();
+            PersistentMap<Object, Integer> actual   = PersistentMap.empty();
+            for (int i = 0; i < 20000; i++) {
+                int    id  = random.nextInt(bound);
+                Object key = (i % 2 == 0) ? new Key(id) : Integer.valueOf(id);
+                PersistentMap<Object, Integer> before     = actual;
+                Map<Object, Integer>           beforeCopy = (i % 1000 == 0) ? new HashMap<>(before) : null;
+                if (random.nextInt(3) == 0) {
+                    expected.remove(key);
+                    actual = actual.without(key);
+                } else {
+                    expected.put(key, i);
+                    actual = actual.with(key, i);
+                }
+                assertEquals(expected.size(), actual.size());
+                assertEquals(expected.get(key), actual.get(key));
+                if (beforeCopy != null) {
+                    assertEquals(beforeCopy, before);
+                }
+            }
+            assertEquals(expected, actual);
+            assertEquals(actual, expected);
+            assertEquals(expected.hashCode(), actual.hashCode());
+            
+            for (Object key : new ArrayList<>(expected.keySet())) {
+                actual = actual.without(key);
+            }
+            assertTrue(actual.isEmpty());
+            assertSame(PersistentMap.empty(), actual);
+        }
+    }
+    
+    /** Nothing changes when nothing is different. */
+    @Test
+    public void unchangedMapIsReturned() {
+        PersistentMap<String, String> map = PersistentMap.<String, String>empty().with("A", "a");
+        assertSame(map, map.with("A", "a"));
+        assertSame(map, map.without("B"));
+        assertSame(map, map.without(null));
+        assertNull(map.get(null));
+        assertFalse(map.containsKey("B"));
+    }
+    
+    /** The helpers update the map in the variable atomically. */
+    @Test
+    public void concurrentPutIn() throws InterruptedException {
+        for (UpdateMode mode : UpdateMode.values()) {
+            AtomicVariable<PersistentMap<Integer, Integer>> variable = new AtomicVariable<>(PersistentMap.empty(), mode);
+            AtomicVariable<PersistentSet<Integer>>          set      = new AtomicVariable<>(PersistentSet.empty(), mode);
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int offset = t * 1000;
+                threads.add(new Thread(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        PersistentMap.putIn(variable, offset + i, i);
+                        PersistentSet.addTo(set, offset + i);
+                        if (i % 2 == 1) {
+                            PersistentMap.removeFrom(variable, offset + i);
+                            PersistentSet.removeFrom(set, offset + i);
+                        }
+                    }
+                }));
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(2000, variable.get().size());
+            assertEquals(2000, set.get().size());
+            Set<Integer> expected = new HashSet<>();
+            for (int i = 0; i < 4000; i += 2) {
+                expected.add(i);
+            }
+            assertEquals(expected, variable.get().keySet());
+            assertEquals(expected, set.get());
+        }
+    }
+    
+}
@@ -0,0 +1,104 @@
+package dssb.papercuts.concurrency.atomic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import nawaman.papercuts.concurrency.atomicvariable.AtomicVariable;
+import nawaman.papercuts.concurrency.atomicvariable.PersistentVector;
+
+import org.junit.Test;
+
+/**
+ * Test for PersistentVector.
+ * 
+ * @author NawaMan
+ */
+public class PersistentVectorTest {
+    
+    /** The vector works the same as an ArrayList -- and the old versions stay as they were. */
+    @Test
+    public void sameAsArrayList() {
+        List<Integer>             expected = new ArrayList<>();
+        PersistentVector<Integer> actual   = PersistentVector.empty();
+        List<PersistentVector<Integer>> versions = new ArrayList<>();
+        List<List<Integer>>             copies   = new ArrayList<>();
+        
+        // Grow past three levels of the trie, shrink back to nothing and grow again.
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < 40000; i++) {
+                expected.add(i);
+                actual = actual.append(i);
+                if (i % 7 == 0) {
+                    int index = i / 2;
+                    expected.set(index, -i);
+                    actual = actual.with(index, -i);
+                }
+                if (i % 4999 == 0) {
+                    versions.add(actual);
+                    copies.add(new ArrayList<>(expected));
+                }
+            }
+            assertEquals(expected, actual);
+            while (!expected.isEmpty()) {
+                expected.remove(expected.size() - 1);
+                actual = actual.withoutLast();
+                if (expected.size() % 1111 == 0) {
+                    assertEquals(expected, actual);
+                }
+            }
+            assertSame(PersistentVector.empty(), actual);
+        }
+        for (int i = 0; i < versions.size(); i++) {
+            assertEquals(copies.get(i), versions.get(i));
+        }
+    }
+    
+    /** The indexes out of the vector are rejected. */
+    @Test
+    public void outOfBounds() {
+        PersistentVector<String> vector = PersistentVector.<String>empty().append("A");
+        try {
+            vector.get(1);
+            fail("Expect an exception.");
+        } catch (IndexOutOfBoundsException exception) {
+        }
+        try {
+            vector.with(-1, "B");
+            fail("Expect an exception.");
+        } catch (IndexOutOfBoundsException exception) {
+        }
+        try {
+            PersistentVector.empty().withoutLast();
+            fail("Expect an exception.");
+        } catch (IllegalStateException exception) {
+        }
+    }
+    
+    /** The helpers update the vector in the variable atomically. */
+    @Test
+    public void concurrentAppendTo() throws InterruptedException {
+        AtomicVariable<PersistentVector<Integer>> variable = new AtomicVariable<>(PersistentVector.empty());
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    PersistentVector.appendTo(variable, i);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(4000, variable.get().size());
+        PersistentVector.setIn(variable, 3999, -1);
+        assertEquals(-1, variable.get().get(3999).intValue());
+    }
+    
+}
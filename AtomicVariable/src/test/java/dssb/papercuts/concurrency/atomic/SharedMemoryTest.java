@@ -0,0 +1,79 @@
+package dssb.papercuts.concurrency.atomic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import nawaman.papercuts.concurrency.atomicvariable.OffHeapLongVariable;
+import nawaman.papercuts.concurrency.atomicvariable.SharedMemory;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test for SharedMemory and OffHeapLongVariable.
+ * 
+ * @author NawaMan
+ */
+public class SharedMemoryTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    /** Variable value setting can be done only when the current value is as expected. */
+    @Test
+    public void variableCompareAndCheck() throws IOException {
+        Path file = this.folder.getRoot().toPath().resolve("flags");
+        try (SharedMemory memory = SharedMemory.open(file, 16)) {
+            OffHeapLongVariable variable = memory.getLongVariable(3);
+            assertEquals(0, variable.get());
+            
+            assertTrue(variable.compareBeforeSet(0, 123));
+            assertFalse(variable.compareBeforeSet(0, 124));
+            assertEquals(123, variable.getAsLong());
+            
+            assertEquals(124, variable.updateAfterCheck(current -> (current % 2) == 1, current -> current + 1));
+            assertEquals(124, variable.updateAfterCheck(current -> (current % 2) == 1, current -> current + 1));
+            assertEquals(125, variable.updateAfterCompare(124, current -> current + 1));
+            assertEquals(  7, variable.setAfterCompare(125, 7));
+            assertEquals(  8, variable.setAfterCheck(current -> current == 7, 8));
+            assertEquals(  0, memory.getLongVariable(2).get());
+        }
+    }
+    
+    /** Two mappings of the same file share the slots -- as two processes would. */
+    @Test
+    public void mappingsShareTheSlots() throws Exception {
+        Path file = this.folder.getRoot().toPath().resolve("counters");
+        try (SharedMemory first  = SharedMemory.open(file, 1024);
+             SharedMemory second = SharedMemory.open(file, 1024)) {
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                OffHeapLongVariable counter = ((t % 2) == 0 ? first : second).getLongVariable(1000);
+                threads.add(new Thread(() -> {
+                    for (int i = 0; i < 10000; i++) {
+                        counter.updateAfterCheck(current -> true, current -> current + 1);
+                    }
+                }));
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(40000, first.getLongVariable(1000).get());
+            assertEquals(40000, second.getLongVariable(1000).get());
+        }
+        try (SharedMemory again = SharedMemory.open(file, 1024)) {
+            assertEquals(40000, again.getLongVariable(1000).get());
+        }
+    }
+    
+}
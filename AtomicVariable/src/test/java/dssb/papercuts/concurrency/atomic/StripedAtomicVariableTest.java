@@ -0,0 +1,122 @@
+package dssb.papercuts.concurrency.atomic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+import nawaman.papercuts.concurrency.atomicvariable.StripedAtomicVariable;
+
+import org.junit.Test;
+
+/**
+ * Test for StripedAtomicVariable.
+ * 
+ * @author NawaMan
+ */
+public class StripedAtomicVariableTest {
+    
+    private static final int THREAD_COUNT = 8;
+    private static final int LOOP_COUNT   = 20000;
+    
+    /** Accumulated values are folded when obtained. */
+    @Test
+    public void variableAccumulates() {
+        StripedAtomicVariable<Long> variable = new StripedAtomicVariable<>(0L, Long::sum);
+        assertEquals(0L, variable.get().longValue());
+        
+        variable.accumulate(5L);
+        variable.accumulate(7L);
+        assertEquals(12L, variable.get().longValue());
+        
+        variable.reset();
+        assertEquals(0L, variable.get().longValue());
+    }
+    
+    /** No accumulation is lost under contention. */
+    @Test
+    public void variableSumIsNotLost() throws InterruptedException {
+        StripedAtomicVariable<Long> variable = new StripedAtomicVariable<>(0L, Long::sum);
+        runThreads(t -> {
+            for (int i = 0; i < LOOP_COUNT; i++) {
+                variable.accumulate(1L);
+            }
+        });
+        assertEquals(THREAD_COUNT * LOOP_COUNT, variable.get().longValue());
+    }
+    
+    /** Losing the race on the base moves the accumulations to the cells. */
+    @Test
+    public void contentionAddsStripes() {
+        // The merge makes one accumulation of its own when asked -- so the accumulation calling it loses its race.
+        boolean[] isInterfering = { false };
+        List<StripedAtomicVariable<Long>> holder = new ArrayList<>();
+        StripedAtomicVariable<Long> variable = new StripedAtomicVariable<>(0L, (a, b) -> {
+            if (isInterfering[0]) {
+                isInterfering[0] = false;
+                holder.get(0).accumulate(100L);
+            }
+            return a + b;
+        });
+        holder.add(variable);
+        
+        variable.accumulate(1L);
+        assertEquals(0, variable.getStripeCount());
+        
+        isInterfering[0] = true;
+        variable.accumulate(2L);
+        assertTrue(variable.getStripeCount() > 1);
+        assertEquals(103L, variable.get().longValue());
+    }
+    
+    /** Any associative and commutative merge can be used -- for example, max. */
+    @Test
+    public void variableTracksMax() throws InterruptedException {
+        StripedAtomicVariable<Integer> variable = new StripedAtomicVariable<>(Integer.MIN_VALUE, Math::max);
+        runThreads(t -> {
+            for (int i = 0; i < LOOP_COUNT; i++) {
+                variable.accumulate(t * LOOP_COUNT + i);
+            }
+        });
+        assertEquals(THREAD_COUNT * LOOP_COUNT - 1, variable.get().intValue());
+    }
+    
+    /** Any associative and commutative merge can be used -- for example, set union. */
+    @Test
+    public void variableUnionsSets() throws InterruptedException {
+        StripedAtomicVariable<Set<Integer>> variable = new StripedAtomicVariable<>(
+                Collections.emptySet(),
+                (a, b) -> {
+                    Set<Integer> union = new HashSet<>(a);
+                    union.addAll(b);
+                    return Collections.unmodifiableSet(union);
+                });
+        runThreads(t -> {
+            for (int i = 0; i < 100; i++) {
+                variable.accumulate(Collections.singleton(t * 100 + i));
+            }
+        });
+        assertEquals(THREAD_COUNT * 100, variable.get().size());
+    }
+    
+    private static void runThreads(
+            final IntConsumer body) throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREAD_COUNT; t++) {
+            int index = t;
+            threads.add(new Thread(() -> body.accept(index)));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+    
+}
@@ -0,0 +1,126 @@
+package dssb.papercuts.concurrency.atomic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import nawaman.papercuts.concurrency.atomicvariable.AtomicVariable;
+import nawaman.papercuts.concurrency.atomicvariable.Subscription;
+import nawaman.papercuts.concurrency.atomicvariable.UpdateMode;
+
+import org.junit.Test;
+
+/**
+ * Test for Subscription.
+ * 
+ * @author NawaMan
+ */
+public class SubscriptionTest {
+    
+    /** The changes made while a notification is pending are delivered as one notification of the latest value. */
+    @Test
+    public void changesAreCoalesced() {
+        for (UpdateMode mode : UpdateMode.values()) {
+            AtomicVariable<String> variable = new AtomicVariable<>("A", mode);
+            List<Runnable> tasks = new ArrayList<>();
+            List<String> received = new ArrayList<>();
+            variable.subscribe(received::add, tasks::add);
+            
+            variable.set("B");
+            variable.compareBeforeSet("B", "C");
+            variable.updateAfterCheck(current -> true, current -> current + "D");
+            assertEquals(1, tasks.size());
+            
+            runAll(tasks);
+            assertEquals(Arrays.asList("CD"), received);
+            
+            variable.set("E");
+            runAll(tasks);
+            assertEquals(Arrays.asList("CD", "E"), received);
+        }
+    }
+    
+    /** A rejected delivery does not fail the writer nor keep the others from being notified. */
+    @Test
+    public void rejectedDeliveryDoesNotFailTheWriter() {
+        for (UpdateMode mode : UpdateMode.values()) {
+            AtomicVariable<String> variable = new AtomicVariable<>("A", mode);
+            List<Runnable> tasks = new ArrayList<>();
+            List<String> received = new ArrayList<>();
+            boolean[] isRejecting = { true };
+            variable.subscribe(value -> {}, task -> {
+                if (isRejecting[0]) {
+                    throw new RejectedExecutionException();
+                }
+                tasks.add(task);
+            });
+            variable.subscribe(received::add, tasks::add);
+            
+            assertEquals("AB", variable.updateAfterCheck(current -> true, current -> current + "B"));
+            assertEquals("C", variable.set("C"));
+            runAll(tasks);
+            assertEquals(Arrays.asList("C"), received);
+            
+            // The rejected change is delivered with the next one.
+            isRejecting[0] = false;
+            variable.set("D");
+            assertEquals(2, tasks.size());
+        }
+    }
+    
+    /** A cancelled subscription is not notified any more. */
+    @Test
+    public void cancelledSubscriptionIsNotNotified() {
+        AtomicVariable<String> variable = new AtomicVariable<>("A");
+        List<Runnable> tasks = new ArrayList<>();
+        List<String> received = new ArrayList<>();
+        Subscription<String> subscription = variable.subscribe(received::add, tasks::add);
+        Subscription<String> other        = variable.subscribe(value -> {}, tasks::add);
+        
+        variable.set("B");
+        subscription.cancel();
+        assertTrue(subscription.isCancelled());
+        runAll(tasks);
+        
+        variable.set("C");
+        other.cancel();
+        variable.set("D");
+        runAll(tasks);
+        assertEquals(Collections.emptyList(), received);
+    }
+    
+    /** The listener is called on the executor's thread and ends up with the latest value. */
+    @Test
+    public void listenerSeesTheLatestValue() throws InterruptedException {
+        AtomicVariable<Integer> variable = new AtomicVariable<>(0);
+        CountDownLatch done = new CountDownLatch(1);
+        Thread writer = Thread.currentThread();
+        List<Thread> listenerThreads = Collections.synchronizedList(new ArrayList<>());
+        variable.subscribe(value -> {
+            listenerThreads.add(Thread.currentThread());
+            if (value == 1000) {
+                done.countDown();
+            }
+        });
+        for (int i = 1; i <= 1000; i++) {
+            variable.set(i);
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(listenerThreads.size() <= 1000);
+        assertTrue(!listenerThreads.contains(writer));
+    }
+    
+    private static void runAll(List<Runnable> tasks) {
+        while (!tasks.isEmpty()) {
+            tasks.remove(0).run();
+        }
+    }
+    
+}
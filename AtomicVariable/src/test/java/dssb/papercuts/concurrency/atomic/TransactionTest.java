@@ -0,0 +1,130 @@
+package dssb.papercuts.concurrency.atomic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import nawaman.papercuts.concurrency.atomicvariable.AtomicVariable;
+import nawaman.papercuts.concurrency.atomicvariable.Transaction;
+import nawaman.papercuts.concurrency.atomicvariable.UpdateMode;
+
+import org.junit.Test;
+
+/**
+ * Test for Transaction.
+ * 
+ * @author NawaMan
+ */
+public class TransactionTest {
+    
+    /** The changes are only written when the check passes. */
+    @Test
+    public void transactionChecksBeforeUpdate() {
+        AtomicVariable<Integer> balance     = new AtomicVariable<>(10);
+        AtomicVariable<Integer> reservation = new AtomicVariable<>(0, UpdateMode.COMBINING);
+        List<AtomicVariable<Integer>> both = Arrays.asList(balance, reservation);
+        
+        assertTrue(Transaction.checkBeforeUpdate(both, tx -> tx.get(balance) >= 7, tx -> {
+            tx.set(balance,     tx.get(balance) - 7);
+            tx.set(reservation, tx.get(reservation) + 7);
+        }));
+        assertEquals(3, balance.get().intValue());
+        assertEquals(7, reservation.get().intValue());
+        
+        assertFalse(Transaction.checkBeforeUpdate(both, tx -> tx.get(balance) >= 7, tx -> {
+            tx.set(balance,     tx.get(balance) - 7);
+            tx.set(reservation, tx.get(reservation) + 7);
+        }));
+        assertEquals(3, balance.get().intValue());
+        assertEquals(7, reservation.get().intValue());
+    }
+    
+    /** An updater that throws changes nothing. */
+    @Test
+    public void failedTransactionChangesNothing() {
+        AtomicVariable<Integer> first  = new AtomicVariable<>(1);
+        AtomicVariable<Integer> second = new AtomicVariable<>(2);
+        try {
+            Transaction.checkBeforeUpdate(Arrays.asList(first, second), tx -> true, tx -> {
+                tx.set(first, 10);
+                tx.set(second, 20);
+                throw new IllegalStateException();
+            });
+            fail("Expect an exception.");
+        } catch (IllegalStateException exception) {
+        }
+        assertEquals(1, first.get().intValue());
+        assertEquals(2, second.get().intValue());
+    }
+    
+    /** Only the non-optimistic variables in the transaction can be used. */
+    @Test
+    public void onlyEnlistedLockingVariables() {
+        AtomicVariable<Integer> first  = new AtomicVariable<>(1);
+        AtomicVariable<Integer> other  = new AtomicVariable<>(2);
+        AtomicVariable<Integer> casVar = new AtomicVariable<>(3, UpdateMode.OPTIMISTIC);
+        try {
+            Transaction.read(Arrays.asList(first), tx -> tx.get(other));
+            fail("Expect an exception.");
+        } catch (IllegalArgumentException exception) {
+        }
+        try {
+            Transaction.read(Arrays.asList(first, casVar), tx -> tx.get(first));
+            fail("Expect an exception.");
+        } catch (IllegalArgumentException exception) {
+        }
+    }
+    
+    /** Transfers in both directions neither deadlock nor let a reader see a torn state. */
+    @Test
+    public void transfersKeepTheTotal() throws InterruptedException {
+        AtomicVariable<Integer> left  = new AtomicVariable<>(1000);
+        AtomicVariable<Integer> right = new AtomicVariable<>(1000);
+        AtomicBoolean isTorn = new AtomicBoolean(false);
+        AtomicBoolean isDone = new AtomicBoolean(false);
+        
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            boolean isLeftToRight = (t % 2) == 0;
+            AtomicVariable<Integer> from = isLeftToRight ? left  : right;
+            AtomicVariable<Integer> to   = isLeftToRight ? right : left;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    Transaction.checkBeforeUpdate(Arrays.asList(from, to), tx -> tx.get(from) > 0, tx -> {
+                        tx.set(from, tx.get(from) - 1);
+                        tx.set(to,   tx.get(to)   + 1);
+                    });
+                    // The single updates still work alongside.
+                    from.updateAfterCheck(current -> true, current -> current);
+                }
+            }));
+        }
+        Thread reader = new Thread(() -> {
+            while (!isDone.get()) {
+                int total = Transaction.read(Arrays.asList(left, right), tx -> tx.get(left) + tx.get(right));
+                if (total != 2000) {
+                    isTorn.set(true);
+                }
+            }
+        });
+        reader.start();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        isDone.set(true);
+        reader.join();
+        
+        assertFalse(isTorn.get());
+        assertEquals(2000, left.get() + right.get());
+    }
+    
+}
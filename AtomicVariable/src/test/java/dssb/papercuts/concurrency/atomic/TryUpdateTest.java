@@ -0,0 +1,137 @@
+package dssb.papercuts.concurrency.atomic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import nawaman.papercuts.concurrency.atomicvariable.AtomicVariable;
+import nawaman.papercuts.concurrency.atomicvariable.Transaction;
+import nawaman.papercuts.concurrency.atomicvariable.TryUpdateResult;
+import nawaman.papercuts.concurrency.atomicvariable.UpdateMode;
+
+import org.junit.Test;
+
+/**
+ * Test for the try updates of AtomicVariable.
+ * 
+ * @author NawaMan
+ */
+public class TryUpdateTest {
+    
+    /** Without contention, the try update is the same as the update. */
+    @Test
+    public void uncontended() {
+        for (UpdateMode mode : UpdateMode.values()) {
+            AtomicVariable<Integer> variable = new AtomicVariable<>(0, mode);
+            assertEquals(TryUpdateResult.UPDATED,      variable.tryCheckBeforeUpdate(current -> current == 0, current -> current + 1));
+            assertEquals(TryUpdateResult.CHECK_FAILED, variable.tryCheckBeforeUpdate(current -> current == 0, current -> current + 1));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+            assertEquals(TryUpdateResult.UPDATED,      variable.tryCheckBeforeUpdate(current -> current == 1, current -> current + 1, deadline));
+            assertEquals(TryUpdateResult.CHECK_FAILED, variable.tryCheckBeforeUpdate(current -> current == 1, current -> current + 1, deadline));
+            assertEquals(2, variable.get().intValue());
+        }
+    }
+    
+    /** The try update gives up while another update holds the variable -- right away or at the deadline. */
+    @Test
+    public void contendedLockingModes() throws InterruptedException {
+        for (UpdateMode mode : Arrays.asList(UpdateMode.LOCKING, UpdateMode.COMBINING)) {
+            AtomicVariable<Integer> variable = new AtomicVariable<>(0, mode);
+            CountDownLatch isInside = new CountDownLatch(1);
+            CountDownLatch release  = new CountDownLatch(1);
+            Thread slowUpdate = new Thread(() -> {
+                variable.updateAfterCheck(current -> true, current -> {
+                    isInside.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException exception) {
+                    }
+                    return current + 10;
+                });
+            });
+            slowUpdate.start();
+            assertTrue(isInside.await(10, TimeUnit.SECONDS));
+            
+            assertEquals(TryUpdateResult.CONTENDED, variable.tryCheckBeforeUpdate(current -> true, current -> current + 1));
+            long start    = System.nanoTime();
+            long deadline = start + TimeUnit.MILLISECONDS.toNanos(20);
+            assertEquals(TryUpdateResult.CONTENDED, variable.tryCheckBeforeUpdate(current -> true, current -> current + 1, deadline));
+            assertTrue(System.nanoTime() - deadline >= 0);
+            
+            release.countDown();
+            slowUpdate.join();
+            assertEquals(TryUpdateResult.UPDATED, variable.tryCheckBeforeUpdate(current -> true, current -> current + 1));
+            assertEquals(11, variable.get().intValue());
+        }
+    }
+    
+    /** A lost compare-and-set is the contention of the optimistic mode -- tried again until the deadline. */
+    @Test
+    public void contendedOptimisticMode() {
+        AtomicVariable<Integer> variable = new AtomicVariable<>(0, UpdateMode.OPTIMISTIC);
+        int[] applyCount = { 0 };
+        assertEquals(TryUpdateResult.CONTENDED, variable.tryCheckBeforeUpdate(current -> true, current -> {
+            applyCount[0]++;
+            variable.set(current + 10);
+            return current + 1;
+        }));
+        assertEquals(1, applyCount[0]);
+        assertEquals(10, variable.get().intValue());
+        
+        // Loses three races before the deadline then succeeds.
+        applyCount[0] = 0;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        assertEquals(TryUpdateResult.UPDATED, variable.tryCheckBeforeUpdate(current -> true, current -> {
+            if (applyCount[0]++ < 3) {
+                variable.set(current + 10);
+            }
+            return current + 1;
+        }, deadline));
+        assertEquals(41, variable.get().intValue());
+    }
+    
+    /** A transaction holding the variable is a contention too. */
+    @Test
+    public void contendedByTransaction() {
+        AtomicVariable<Integer> variable = new AtomicVariable<>(0);
+        TryUpdateResult result = Transaction.read(Arrays.asList(variable), tx -> {
+            TryUpdateResult[] inner = new TryUpdateResult[1];
+            Thread other = new Thread(() -> inner[0] = variable.tryCheckBeforeUpdate(current -> true, current -> current + 1));
+            other.start();
+            try {
+                other.join();
+            } catch (InterruptedException exception) {
+            }
+            return inner[0];
+        });
+        assertEquals(TryUpdateResult.CONTENDED, result);
+        assertEquals(0, variable.get().intValue());
+    }
+    
+    /** An update re-entering the monitor inside a transaction does not unmark the variable the transaction holds. */
+    @Test
+    public void reenteredUpdateKeepsTheVariableBusy() {
+        for (UpdateMode mode : Arrays.asList(UpdateMode.LOCKING, UpdateMode.COMBINING)) {
+            AtomicVariable<Integer> variable = new AtomicVariable<>(0, mode);
+            TryUpdateResult result = Transaction.read(Arrays.asList(variable), tx -> {
+                variable.updateAfterCheck(current -> true, current -> current + 1);
+                variable.set(5);
+                TryUpdateResult[] inner = new TryUpdateResult[1];
+                Thread other = new Thread(() -> inner[0] = variable.tryCheckBeforeUpdate(current -> true, current -> current + 1));
+                other.start();
+                try {
+                    other.join();
+                } catch (InterruptedException exception) {
+                }
+                return inner[0];
+            });
+            assertEquals(TryUpdateResult.CONTENDED, result);
+            assertEquals(5, variable.get().intValue());
+            assertEquals(TryUpdateResult.UPDATED, variable.tryCheckBeforeUpdate(current -> true, current -> current + 1));
+        }
+    }
+    
+}
@@ -0,0 +1,84 @@
+package dssb.papercuts.concurrency.atomic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import nawaman.papercuts.concurrency.atomicvariable.VersionedAtomicVariable;
+
+import org.junit.Test;
+
+/**
+ * Test for VersionedAtomicVariable.
+ * 
+ * @author NawaMan
+ */
+public class VersionedAtomicVariableTest {
+    
+    /** Every change moves the version forward -- even the one back to an earlier value. */
+    @Test
+    public void versionTellsABAFromUnchanged() {
+        VersionedAtomicVariable<String> variable = new VersionedAtomicVariable<>("A");
+        long seen = variable.getVersion();
+        assertFalse(variable.hasChangedSince(seen));
+        
+        variable.set("B");
+        variable.set("A");
+        assertEquals("A", variable.get());
+        assertTrue(variable.hasChangedSince(seen));
+        assertEquals(seen + 2, variable.getVersion());
+    }
+    
+    /** Variable value setting can be done only when the version is as expected. */
+    @Test
+    public void variableSetIfVersion() {
+        VersionedAtomicVariable<String> variable = new VersionedAtomicVariable<>("A");
+        long version = variable.getVersion();
+        
+        assertTrue(variable.setIfVersion(version, "B"));
+        assertEquals("B", variable.get());
+        
+        assertFalse(variable.setIfVersion(version, "C"));
+        assertEquals("B", variable.get());
+        
+        assertTrue(variable.updateIfVersion(version + 1, current -> current + "C"));
+        assertEquals("BC", variable.get());
+        
+        assertFalse(variable.checkBeforeUpdate(current -> current.isEmpty(), current -> "D"));
+        assertTrue(variable.checkBeforeUpdate(current -> current.equals("BC"), current -> "D"));
+        assertEquals("D", variable.get());
+        assertEquals(version + 3, variable.getVersion());
+    }
+    
+    /** Concurrent version-guarded updates are never lost. */
+    @Test
+    public void variableUpdateIfVersionIsAtomic() throws InterruptedException {
+        VersionedAtomicVariable<Integer> variable = new VersionedAtomicVariable<>(0);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    while (true) {
+                        long version = variable.getVersion();
+                        int  current = variable.get();
+                        if (variable.setIfVersion(version, current + 1)) {
+                            break;
+                        }
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(80000, variable.get().intValue());
+        assertEquals(80000, variable.getVersion());
+    }
+    
+}
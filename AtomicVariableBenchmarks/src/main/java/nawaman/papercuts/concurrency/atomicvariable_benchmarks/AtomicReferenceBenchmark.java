@@ -0,0 +1,76 @@
+package nawaman.papercuts.concurrency.atomicvariable_benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The Java-built-in AtomicReference doing the closest equivalent of each AtomicVariableBenchmark operation.
+ * 
+ * @author NawaMan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AtomicReferenceBenchmark {
+    
+    private AtomicReference<Integer> reference;
+    
+    private UnaryOperator<Integer> increment;
+    
+    @Setup
+    public void setup(
+            final Values.Cost cost) {
+        this.reference = new AtomicReference<>(Values.VALUES[0]);
+        this.increment = cost::next;
+    }
+    
+    @Benchmark
+    public Integer get() {
+        return this.reference.get();
+    }
+    
+    @Benchmark
+    public Integer set() {
+        Integer value = Values.random();
+        this.reference.set(value);
+        return value;
+    }
+    
+    @Benchmark
+    public boolean compareAndSet() {
+        Integer current = this.reference.get();
+        return this.reference.compareAndSet(current, Values.next(current));
+    }
+    
+    @Benchmark
+    public Integer updateAndGet(
+            final Values.Cost cost) {
+        return this.reference.updateAndGet(this.increment);
+    }
+    
+    @Benchmark
+    public Integer mixed(
+            final Values.Mix  mix,
+            final Values.Cost cost) {
+        if (mix.isRead()) {
+            return this.reference.get();
+        }
+        return this.reference.updateAndGet(this.increment);
+    }
+    
+}
@@ -0,0 +1,92 @@
+package nawaman.papercuts.concurrency.atomicvariable_benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import nawaman.papercuts.concurrency.atomicvariable.AtomicVariable;
+import nawaman.papercuts.concurrency.atomicvariable.UpdateMode;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the AtomicVariable operations on one variable shared by all the benchmark threads.
+ * 
+ * The check of the check-and-update operations always passes so every call is a write.
+ * 
+ * @author NawaMan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AtomicVariableBenchmark {
+    
+    @Param({ "LOCKING", "OPTIMISTIC", "COMBINING" })
+    public UpdateMode mode;
+    
+    private AtomicVariable<Integer> variable;
+    
+    private Predicate<Integer> isNotNull;
+    
+    private Function<Integer, Integer> increment;
+    
+    @Setup
+    public void setup(
+            final Values.Cost cost) {
+        this.variable  = new AtomicVariable<>(Values.VALUES[0], this.mode);
+        this.isNotNull = current -> current != null;
+        this.increment = cost::next;
+    }
+    
+    @Benchmark
+    public Integer get() {
+        return this.variable.get();
+    }
+    
+    @Benchmark
+    public Integer set() {
+        return this.variable.set(Values.random());
+    }
+    
+    @Benchmark
+    public boolean compareBeforeSet() {
+        Integer current = this.variable.get();
+        return this.variable.compareBeforeSet(current, Values.next(current));
+    }
+    
+    @Benchmark
+    public Integer updateAfterCheck(
+            final Values.Cost cost) {
+        return this.variable.updateAfterCheck(this.isNotNull, this.increment);
+    }
+    
+    @Benchmark
+    public boolean checkBeforeUpdate(
+            final Values.Cost cost) {
+        return this.variable.checkBeforeUpdate(this.isNotNull, this.increment);
+    }
+    
+    @Benchmark
+    public Integer mixed(
+            final Values.Mix  mix,
+            final Values.Cost cost) {
+        if (mix.isRead()) {
+            return this.variable.get();
+        }
+        return this.variable.updateAfterCheck(this.isNotNull, this.increment);
+    }
+    
+}
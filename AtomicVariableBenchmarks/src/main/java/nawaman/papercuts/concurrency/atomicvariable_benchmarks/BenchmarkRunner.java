@@ -0,0 +1,49 @@
+package nawaman.papercuts.concurrency.atomicvariable_benchmarks;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks at 1, 2, 4, 8 and all-available threads with the GC profiler so the report has
+ *   the ops/sec (Throughput), the latency percentiles (SampleTime) and the bytes allocated per operation
+ *   (gc.alloc.rate.norm).
+ * 
+ * The first argument, if given, is the regular expression of the benchmarks to run (default to all).
+ * The results of each thread count is also written to "jmh-result-[threads]-threads.json".
+ * 
+ * @author NawaMan
+ */
+public class BenchmarkRunner {
+    
+    public static void main(
+            final String[] args) throws RunnerException {
+        String include = (args.length != 0) ? args[0] : ".*Benchmark.*";
+        for (int threads : threadCounts()) {
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                    .include(include)
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("jmh-result-" + threads + "-threads.json");
+            new Runner(options.build()).run();
+        }
+    }
+    
+    static Set<Integer> threadCounts() {
+        Set<Integer> counts = new LinkedHashSet<>();
+        counts.add(1);
+        counts.add(2);
+        counts.add(4);
+        counts.add(8);
+        counts.add(Runtime.getRuntime().availableProcessors());
+        return counts;
+    }
+    
+}
@@ -0,0 +1,85 @@
+package nawaman.papercuts.concurrency.atomicvariable_benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import nawaman.papercuts.concurrency.atomicvariable.AtomicVariable;
+import nawaman.papercuts.concurrency.atomicvariable.PaddedAtomicVariable;
+import nawaman.papercuts.concurrency.atomicvariable.UpdateMode;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of two independent variables, each updated by its own thread, allocated one right after the other --
+ *   with and without the padding.
+ * 
+ * Nothing is shared between the two threads but, without the padding, the two values are likely on the same cache
+ *   line so every update of one thread invalidates the line of the other.
+ * 
+ * @author NawaMan
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FalseSharingBenchmark {
+    
+    @Param({ "false", "true" })
+    public boolean isPadded;
+    
+    @Param({ "OPTIMISTIC", "LOCKING" })
+    public UpdateMode mode;
+    
+    private AtomicVariable<Integer> left;
+    
+    private AtomicVariable<Integer> right;
+    
+    private Predicate<Integer> isNotNull;
+    
+    private Function<Integer, Integer> increment;
+    
+    @Setup
+    public void setup() {
+        if (this.isPadded) {
+            List<AtomicVariable<Integer>> variables = PaddedAtomicVariable.allocate(2, index -> Values.VALUES[0], this.mode);
+            this.left  = variables.get(0);
+            this.right = variables.get(1);
+        } else {
+            this.left  = new AtomicVariable<>(Values.VALUES[0], this.mode);
+            this.right = new AtomicVariable<>(Values.VALUES[0], this.mode);
+        }
+        this.isNotNull = current -> current != null;
+        this.increment = Values::next;
+    }
+    
+    @Benchmark
+    @Group("neighbors")
+    @GroupThreads(1)
+    public Integer updateLeft() {
+        return this.left.updateAfterCheck(this.isNotNull, this.increment);
+    }
+    
+    @Benchmark
+    @Group("neighbors")
+    @GroupThreads(1)
+    public Integer updateRight() {
+        return this.right.updateAfterCheck(this.isNotNull, this.increment);
+    }
+    
+}
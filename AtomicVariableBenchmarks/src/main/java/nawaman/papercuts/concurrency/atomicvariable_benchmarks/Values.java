@@ -0,0 +1,86 @@
+package nawaman.papercuts.concurrency.atomicvariable_benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Pre-allocated values and the shared knobs of the benchmarks.
+ * 
+ * The values are pre-allocated so that the allocation reported by the GC profiler comes from the variables
+ *   and not from boxing in the benchmark itself.
+ * 
+ * @author NawaMan
+ */
+public final class Values {
+    
+    static final int SIZE = 1024;
+    static final int MASK = SIZE - 1;
+    
+    static final Integer[] VALUES = new Integer[SIZE];
+    static {
+        for (int i = 0; i < SIZE; i++) {
+            VALUES[i] = Integer.valueOf(i);
+        }
+    }
+    
+    private Values() {
+    }
+    
+    /** Returns the pre-allocated value that comes after the given one. */
+    static Integer next(
+            final Integer current) {
+        return VALUES[(current.intValue() + 1) & MASK];
+    }
+    
+    /** Returns a random pre-allocated value. */
+    static Integer random() {
+        return VALUES[ThreadLocalRandom.current().nextInt(SIZE)];
+    }
+    
+    /** How expensive the update function is. */
+    @State(Scope.Benchmark)
+    public static class Cost {
+        
+        /** The amount of CPU tokens (see Blackhole#consumeCPU) the update function burns. */
+        @Param({ "0", "100" })
+        public long tokens;
+        
+        /** Returns the pre-allocated value that comes after the given one after burning the configured CPU. */
+        public Integer next(
+                final Integer current) {
+            if (this.tokens != 0) {
+                Blackhole.consumeCPU(this.tokens);
+            }
+            return Values.next(current);
+        }
+        
+    }
+    
+    /** The read-write mix of the mixed benchmarks. */
+    @State(Scope.Benchmark)
+    public static class Mix {
+        
+        /** The percentage of operations that are reads. */
+        @Param({ "100", "90", "75", "50" })
+        public int readPercent;
+        
+        /** Randomly decides if the next operation is a read according to the read percent. */
+        public boolean isRead() {
+            return ThreadLocalRandom.current().nextInt(100) < this.readPercent;
+        }
+        
+        @Setup
+        public void check() {
+            if ((this.readPercent < 0) || (this.readPercent > 100)) {
+                throw new IllegalArgumentException("readPercent: " + this.readPercent);
+            }
+        }
+        
+    }
+    
+}
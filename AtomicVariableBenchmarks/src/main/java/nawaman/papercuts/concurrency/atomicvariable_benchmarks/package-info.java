@@ -0,0 +1,7 @@
+/**
+ * JMH benchmarks that measure the throughput, latency and allocation of AtomicVariable under contention
+ *   with the Java-built-in AtomicReference as the baseline.
+ * 
+ * @author NawaMan
+ */
+package nawaman.papercuts.concurrency.atomicvariable_benchmarks;
@@ -0,0 +1,193 @@
+package nawaman.papercuts.concurrency.atomicvariable_examples.cache;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import nawaman.papercuts.concurrency.atomicvariable.AtomicVariable;
+
+/**
+ * A loader that coalesces the loads of many keys from concurrent callers into bulk loads.
+ * 
+ * The variable holds the batch that is currently open. A caller adds its key to the open batch (opening a new one
+ *   if there is none) and waits for the key's future. The batch is closed and bulk loaded as soon as it reaches
+ *   maxBatchSize keys or when maxWait has passed since it was opened, whichever comes first. A full batch takes no
+ *   more keys so a bulk load never gets more than maxBatchSize keys. The keys missing from the bulk result get null;
+ *   if the bulk load fails, all the waiters of that batch fail.
+ * 
+ * It can be used as the loader of a LoadingCache (with {@code batchLoader::get}) so that the concurrent misses of
+ *   different keys become one bulk call.
+ */
+public class BatchLoader<K, V> {
+    
+    private static final ScheduledExecutorService DEFAULT_SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable->{
+        Thread thread = new Thread(runnable, "BatchLoader");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    private final AtomicVariable<Batch<K, V>> openBatch = new AtomicVariable<>(null);
+    
+    private final Function<Set<K>, Map<K, V>> bulkLoader;
+    
+    private final int maxBatchSize;
+    
+    private final long maxWaitNanos;
+    
+    private final ScheduledExecutorService scheduler;
+    
+    private final Executor loadExecutor;
+    
+    public BatchLoader(Function<Set<K>, Map<K, V>> bulkLoader, int maxBatchSize, long maxWait, TimeUnit unit) {
+        this(bulkLoader, maxBatchSize, maxWait, unit, DEFAULT_SCHEDULER, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * The scheduler only times the batches that do not fill up in time -- the bulk loads of those batches run on the
+     *   load executor so that a slow bulk load does not hold up the timers of the other batches.
+     */
+    public BatchLoader(Function<Set<K>, Map<K, V>> bulkLoader, int maxBatchSize, long maxWait, TimeUnit unit,
+            ScheduledExecutorService scheduler, Executor loadExecutor) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize must be positive: " + maxBatchSize);
+        }
+        this.bulkLoader = Objects.requireNonNull(bulkLoader);
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = unit.toNanos(maxWait);
+        this.scheduler = Objects.requireNonNull(scheduler);
+        this.loadExecutor = Objects.requireNonNull(loadExecutor);
+    }
+    
+    public V get(K key) {
+        return SimpleCache.join(this.load(key));
+    }
+    
+    public CompletableFuture<V> load(K key) {
+        while (true) {
+            Batch<K, V> batch = this.openBatch.get();
+            if (batch == null) {
+                Batch<K, V> newBatch = new Batch<>();
+                if (!this.openBatch.checkBeforeSet(current -> current == null, newBatch)) {
+                    continue;
+                }
+                batch = newBatch;
+                Runnable timeout = ()->this.dispatchLater(newBatch);
+                newBatch.setTimer(this.scheduler.schedule(timeout, this.maxWaitNanos, TimeUnit.NANOSECONDS));
+            }
+            
+            Batch.Added<V> added = batch.add(key, this.maxBatchSize);
+            if (added == null) {
+                // The batch is full or was closed just now -- make way for a new one.
+                Batch<K, V> fullBatch = batch;
+                this.openBatch.checkBeforeSet(current -> current == fullBatch, null);
+                continue;
+            }
+            if (added.isFilling) {
+                this.dispatch(batch);
+            }
+            return added.future;
+        }
+    }
+    
+    private void dispatchLater(Batch<K, V> batch) {
+        this.loadExecutor.execute(()->this.dispatch(batch));
+    }
+    
+    private void dispatch(Batch<K, V> batch) {
+        // Stop new keys from going to this batch first, then take the keys that made it in.
+        this.openBatch.checkBeforeSet(current -> current == batch, null);
+        Map<K, CompletableFuture<V>> futures = batch.close();
+        if (futures == null) {
+            return;
+        }
+        
+        Map<K, V> values;
+        try {
+            // A copy -- the bulk loader must not be able to change the keys the futures are completed for.
+            values = this.bulkLoader.apply(Collections.unmodifiableSet(new HashSet<>(futures.keySet())));
+        } catch (RuntimeException | Error exception) {
+            futures.values().forEach(future -> future.completeExceptionally(exception));
+            return;
+        }
+        futures.forEach((key, future) -> future.complete((values != null) ? values.get(key) : null));
+    }
+    
+    // == AUX class ====================================================================================================
+    
+    static class Batch<K, V> {
+        
+        private Map<K, CompletableFuture<V>> futures = new HashMap<>();
+        
+        private boolean isFull = false;
+        
+        /** The maxWait timer -- cancelled when the batch is closed (by filling up) before it fires. */
+        private ScheduledFuture<?> timer;
+        
+        synchronized void setTimer(ScheduledFuture<?> timer) {
+            if (this.futures == null) {
+                timer.cancel(false);
+            } else {
+                this.timer = timer;
+            }
+        }
+        
+        /**
+         * Returns the future of the key or null if this batch is already closed or full. A key already in a full batch
+         *   still gets its future as it does not make the batch bigger.
+         */
+        synchronized Added<V> add(K key, int maxBatchSize) {
+            if (this.futures == null) {
+                return null;
+            }
+            CompletableFuture<V> future = this.futures.get(key);
+            if (future != null) {
+                return new Added<>(future, false);
+            }
+            if (this.isFull) {
+                return null;
+            }
+            future = new CompletableFuture<>();
+            this.futures.put(key, future);
+            this.isFull = (this.futures.size() >= maxBatchSize);
+            return new Added<>(future, this.isFull);
+        }
+        
+        /** Close the batch and return its futures -- null if the batch was already closed. */
+        synchronized Map<K, CompletableFuture<V>> close() {
+            Map<K, CompletableFuture<V>> futures = this.futures;
+            this.futures = null;
+            if (this.timer != null) {
+                this.timer.cancel(false);
+                this.timer = null;
+            }
+            return futures;
+        }
+        
+        /** The future of an added key and if that key is the one that filled the batch. */
+        static class Added<V> {
+            
+            final CompletableFuture<V> future;
+            
+            final boolean isFilling;
+            
+            Added(CompletableFuture<V> future, boolean isFilling) {
+                this.future = future;
+                this.isFilling = isFilling;
+            }
+            
+        }
+        
+    }
+    
+}
@@ -0,0 +1,53 @@
+package nawaman.papercuts.concurrency.atomicvariable_examples.cache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A ticker that keeps the time of its source clock in a volatile field so the readers never call the clock themselves.
+ * 
+ * The shared ones behind {@link Ticker#cachedMillis()} and {@link Ticker#cachedNanos()} are refreshed every
+ *   millisecond by one daemon thread (started on the first use).
+ */
+final class CachedTicker implements Ticker {
+    
+    private static final long RESOLUTION = TimeUnit.MILLISECONDS.toNanos(1);
+    
+    static final CachedTicker MILLIS = new CachedTicker(System::currentTimeMillis);
+    
+    static final CachedTicker NANOS = new CachedTicker(System::nanoTime);
+    
+    static {
+        Thread refresher = new Thread(CachedTicker::refreshShared, "CachedTicker");
+        refresher.setDaemon(true);
+        refresher.start();
+    }
+    
+    private final Ticker source;
+    
+    private volatile long time;
+    
+    CachedTicker(Ticker source) {
+        this.source = source;
+        this.time = source.currentTime();
+    }
+    
+    @Override
+    public long currentTime() {
+        return this.time;
+    }
+    
+    /** Read the source clock into the cache. */
+    void refresh() {
+        this.time = this.source.currentTime();
+    }
+    
+    private static void refreshShared() {
+        while (true) {
+            LockSupport.parkNanos(RESOLUTION);
+            MILLIS.refresh();
+            NANOS.refresh();
+        }
+    }
+    
+}
@@ -1,6 +1,18 @@
 package nawaman.papercuts.concurrency.atomicvariable_examples.cache;
 
-import nawaman.papercuts.concurrency.atomicvariable_examples.cache.ExpirableCache.TimeProvider;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Assert;
 import org.junit.Before;
@@ -68,29 +80,77 @@ public class Client {
         System.out.println();
     }
     
+    @Test
+    public void singleFlightSimpleCache() throws InterruptedException {
+        System.out.println(this.getTestName() + ": ");
+        
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger produceCount = new AtomicInteger();
+        SimpleCache<Integer> cache = new SimpleCache<Integer>(()->{
+            produceCount.incrementAndGet();
+            loading.countDown();
+            await(release);
+            return 42;
+        });
+        
+        List<Thread> getters = new ArrayList<>();
+        AtomicInteger gotCount = new AtomicInteger();
+        for (int i = 0; i < 4; i++) {
+            getters.add(new Thread(()->{
+                if (cache.get() == 42) {
+                    gotCount.incrementAndGet();
+                }
+            }));
+        }
+        getters.get(0).start();
+        loading.await();
+        for (Thread getter : getters.subList(1, getters.size())) {
+            getter.start();
+        }
+        for (Thread getter : getters.subList(1, getters.size())) {
+            while (getter.getState() != Thread.State.WAITING) {
+                Thread.yield();
+            }
+        }
+        
+        // The invalidation does not wait for the in-flight load.
+        cache.invalidate();
+        release.countDown();
+        for (Thread getter : getters) {
+            getter.join();
+        }
+        assertEquals("Concurrent getters: ", "4 got 42 from 1 production", gotCount + " got 42 from " + produceCount + " production");
+        
+        // The in-flight value was loaded before the invalidation so it was not kept.
+        cache.get();
+        assertEquals("After invalidation: ", "2 productions", produceCount + " productions");
+        System.out.println();
+    }
+    
     @Test
     public void expirableCache() {
         System.out.println(this.getTestName() + ": ");
         
         DataProducer producer = new DataProducer(logger);
-        TimeProvider timeProvider = new TimeProvider();
+        ManualTicker ticker = new ManualTicker();
         int liveTime = 5;
-        ExpirableCache<Integer> cache = new ExpirableCache<>(timeProvider, liveTime, ()->producer.produce());
+        ExpirableCache<Integer> cache = new ExpirableCache<>(ticker, liveTime, ()->producer.produce());
         logger.log("GET");
         cache.get();
         logger.log("GET");
         cache.get();
         logger.log("GET");
-        timeProvider.currentTime = 3;
+        ticker.set(3);
         logger.log("CURRENT-TIME=3");
         logger.log("GET");
         cache.get();
         logger.log("GET");
-        timeProvider.currentTime = 5;
+        ticker.set(5);
         logger.log("CURRENT-TIME=5");
         cache.get();
         logger.log("GET");
-        timeProvider.currentTime = 6;
+        ticker.set(6);
         logger.log("CURRENT-TIME=6");
         logger.log("GET");
         cache.get();
@@ -101,6 +161,215 @@ public class Client {
         System.out.println();
     }
     
+    @Test
+    public void refreshAheadExpirableCache() {
+        System.out.println(this.getTestName() + ": ");
+        
+        DataProducer producer = new DataProducer(logger);
+        ManualTicker ticker = new ManualTicker();
+        List<Runnable> refreshTasks = new ArrayList<>();
+        Executor refreshExecutor = refreshTasks::add;
+        int liveTime = 5;
+        ExpirableCache<Integer> cache = new ExpirableCache<>(ticker, liveTime, ()->producer.produce(), refreshExecutor, 0.8);
+        logger.log("GET");
+        cache.get();
+        ticker.set(3);
+        logger.log("CURRENT-TIME=3");
+        logger.log("GET");
+        cache.get();
+        ticker.set(4);
+        logger.log("CURRENT-TIME=4");
+        logger.log("GET");
+        cache.get();
+        logger.log("GET");
+        cache.get();
+        logger.log("REFRESH");
+        runAll(refreshTasks);
+        ticker.set(6);
+        logger.log("CURRENT-TIME=6");
+        logger.log("GET");
+        cache.get();
+        ticker.set(10);
+        logger.log("CURRENT-TIME=10");
+        logger.log("GET");
+        cache.get();
+        logger.log("REFRESH");
+        runAll(refreshTasks);
+        assertEquals("Via cache: ", "GET - PRODUCE - CURRENT-TIME=3 - GET - CURRENT-TIME=4 - GET - GET - REFRESH - PRODUCE - CURRENT-TIME=6 - GET - CURRENT-TIME=10 - GET - REFRESH - PRODUCE", logger.toString());
+        System.out.println("Only the first production is done by a getter.");
+        System.out.println("When 80% of the live time passes, the value is refreshed in the background once.");
+        System.out.println("An expired value is still returned while it is refreshed in the background.");
+        System.out.println();
+    }
+    
+    @Test
+    public void loadingCacheKeepsFrequentlyUsedKeys() {
+        System.out.println(this.getTestName() + ": ");
+        
+        Map<Integer, AtomicInteger> loadCounts = new ConcurrentHashMap<>();
+        ManualTicker ticker = new ManualTicker();
+        LoadingCache<Integer, String> cache = new LoadingCache<>(ticker, 10, 100, key->{
+            loadCounts.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+            return "value-" + key;
+        });
+        
+        for (int key = 0; key < 10; key++) {
+            Assert.assertEquals("value-" + key, cache.get(key));
+        }
+        for (int round = 0; round < 5; round++) {
+            for (int key = 0; key < 5; key++) {
+                cache.get(key);
+            }
+        }
+        cache.cleanUp();
+        
+        // A scan of one-hit wonders.
+        for (int key = 10; key < 30; key++) {
+            cache.get(key);
+            cache.cleanUp();
+        }
+        Assert.assertTrue(cache.estimatedSize() <= 10);
+        
+        for (int key = 0; key < 5; key++) {
+            cache.get(key);
+        }
+        int hotLoads = 0;
+        for (int key = 0; key < 5; key++) {
+            hotLoads += loadCounts.get(key).get();
+        }
+        assertEquals("Loads of the frequently used keys: ", "5", "" + hotLoads);
+        System.out.println("The frequently used keys survive a scan of keys that are used once.");
+        System.out.println();
+    }
+    
+    @Test
+    public void loadingCacheWithPerKeyLiveTime() {
+        System.out.println(this.getTestName() + ": ");
+        
+        ManualTicker ticker = new ManualTicker();
+        LoadingCache<String, String> cache = new LoadingCache<>(ticker, 100, (key, value) -> 1, (key, value) -> key.length(), key->{
+            logger.log("LOAD-" + key);
+            return key;
+        });
+        logger.log("GET");
+        cache.get("a");
+        cache.get("aaa");
+        logger.log("GET");
+        cache.get("a");
+        cache.get("aaa");
+        ticker.set(2);
+        logger.log("CURRENT-TIME=2");
+        logger.log("GET");
+        cache.get("a");
+        cache.get("aaa");
+        assertEquals("Via cache: ", "GET - LOAD-a - LOAD-aaa - GET - CURRENT-TIME=2 - GET - LOAD-a", logger.toString());
+        System.out.println("Each key has its own live time.");
+        System.out.println();
+    }
+    
+    @Test
+    public void batchLoaderCoalescesConcurrentMisses() throws InterruptedException {
+        System.out.println(this.getTestName() + ": ");
+        
+        List<Set<Integer>> bulkLoads = new CopyOnWriteArrayList<>();
+        BatchLoader<Integer, String> batchLoader = new BatchLoader<>(keys->{
+            bulkLoads.add(new TreeSet<>(keys));
+            Map<Integer, String> values = new HashMap<>();
+            keys.forEach(key -> values.put(key, "value-" + key));
+            return values;
+        }, 4, 10, TimeUnit.SECONDS);
+        LoadingCache<Integer, String> cache = new LoadingCache<>(new ManualTicker(), 100, 100, batchLoader::get);
+        
+        List<Thread> getters = new ArrayList<>();
+        AtomicInteger gotCount = new AtomicInteger();
+        for (int i = 0; i < 4; i++) {
+            int key = i;
+            getters.add(new Thread(()->{
+                if (cache.get(key).equals("value-" + key)) {
+                    gotCount.incrementAndGet();
+                }
+            }));
+        }
+        for (Thread getter : getters) {
+            getter.start();
+        }
+        for (Thread getter : getters) {
+            getter.join();
+        }
+        assertEquals("Concurrent misses: ", "4 got from [[0, 1, 2, 3]]", gotCount + " got from " + bulkLoads);
+        
+        // A batch that does not fill up is loaded once the wait is over.
+        BatchLoader<Integer, String> quickLoader = new BatchLoader<>(keys->{
+            bulkLoads.add(new TreeSet<>(keys));
+            return Collections.singletonMap(5, "value-5");
+        }, 4, 10, TimeUnit.MILLISECONDS);
+        assertEquals("Lone miss: ", "value-5", quickLoader.get(5));
+        assertEquals("Missing from the bulk result: ", "null", "" + quickLoader.get(6));
+        
+        // No bulk load goes over maxBatchSize however many callers race to add to the batch.
+        List<Integer> bulkSizes = new CopyOnWriteArrayList<>();
+        BatchLoader<Integer, String> smallLoader = new BatchLoader<>(keys->{
+            bulkSizes.add(keys.size());
+            return Collections.emptyMap();
+        }, 2, 10, TimeUnit.MILLISECONDS);
+        List<Thread> loaders = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            int key = i;
+            loaders.add(new Thread(()->smallLoader.get(key)));
+        }
+        for (Thread loader : loaders) {
+            loader.start();
+        }
+        for (Thread loader : loaders) {
+            loader.join();
+        }
+        assertEquals("Capped batches: ", "16 keys, at most 2 a batch",
+                bulkSizes.stream().mapToInt(Integer::intValue).sum() + " keys, at most "
+              + bulkSizes.stream().mapToInt(Integer::intValue).max().getAsInt() + " a batch");
+        System.out.println();
+    }
+    
+    @Test
+    public void cachedTickerFollowsItsSource() {
+        System.out.println(this.getTestName() + ": ");
+        
+        // The time only moves on the refresh (every millisecond for the shared tickers).
+        ManualTicker source = new ManualTicker(100);
+        CachedTicker ticker = new CachedTicker(source);
+        source.advance(50);
+        assertEquals("Before the refresh: ", "100", "" + ticker.currentTime());
+        ticker.refresh();
+        assertEquals("After the refresh: ", "150", "" + ticker.currentTime());
+        
+        // The cache sees the time move as the ticker is refreshed.
+        DataProducer producer = new DataProducer(logger);
+        ExpirableCache<Integer> cache = new ExpirableCache<>(ticker, 20, ()->producer.produce());
+        logger.log("GET");
+        cache.get();
+        source.advance(50);
+        logger.log("GET");
+        cache.get();
+        ticker.refresh();
+        logger.log("GET");
+        cache.get();
+        assertEquals("Via cache: ", "GET - PRODUCE - GET - GET - PRODUCE", logger.toString());
+        System.out.println();
+    }
+    
+    private static void runAll(List<Runnable> tasks) {
+        List<Runnable> toRun = new ArrayList<>(tasks);
+        tasks.clear();
+        toRun.forEach(Runnable::run);
+    }
+    
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
     private String getTestName() {
         try {
             throw new NullPointerException();
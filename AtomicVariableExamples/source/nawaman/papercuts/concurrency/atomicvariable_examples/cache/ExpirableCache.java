@@ -1,5 +1,6 @@
 package nawaman.papercuts.concurrency.atomicvariable_examples.cache;
 
+import java.util.concurrent.Executor;
 import java.util.function.Supplier;
 
 import nawaman.papercuts.concurrency.atomicvariable.AtomicVariable;
@@ -10,23 +11,61 @@ public class ExpirableCache<V> {
     
     private final Supplier<V> supplier;
     
-    private final TimeProvider timeProvider;
+    private final Ticker ticker;
     
     private final long liveTime;
     
-    public ExpirableCache(TimeProvider timeProvider, long liveTime, Supplier<V> supplier) {
+    /** The executor to refresh the value in the background -- null for the synchronous loading on expiry. */
+    private final Executor refreshExecutor;
+    
+    /** The time after the load that a background refresh is started -- liveTime for no refresh-ahead. */
+    private final long refreshTime;
+    
+    public ExpirableCache(Ticker ticker, long liveTime, Supplier<V> supplier) {
+        this(ticker, liveTime, supplier, null, 1.0);
+    }
+    
+    /**
+     * Creates a stale-while-revalidate cache -- once the value is due for a refresh, the getters keep getting
+     *   the current (possibly expired) value while the new one is loaded by one background task.
+     * 
+     * The refresh is due when the value expires or, with a refreshAheadRatio less than 1.0, when that fraction of
+     *   liveTime has passed since the value was loaded -- so the getters do not need to wait for a load once the first
+     *   value is loaded.
+     * 
+     * NOTE: If a refresh fails, the next getter that finds the value due starts another one.
+     */
+    public ExpirableCache(Ticker ticker, long liveTime, Supplier<V> supplier,
+            Executor refreshExecutor, double refreshAheadRatio) {
+        if ((refreshAheadRatio <= 0.0) || (refreshAheadRatio > 1.0)) {
+            throw new IllegalArgumentException("refreshAheadRatio must be in (0.0, 1.0]: " + refreshAheadRatio);
+        }
         this.supplier = supplier;
-        this.timeProvider = timeProvider;
+        this.ticker = ticker;
         this.liveTime = liveTime;
+        this.refreshExecutor = refreshExecutor;
+        this.refreshTime = (long)(liveTime * refreshAheadRatio);
     }
     
     public V get() {
-        return this.variable.updateAfterCheck(current->{
-            return (current == null) || current.isExpired(this.timeProvider.currentTime());
-        }, current->{
-            long time = this.timeProvider.currentTime(); 
-            long bestBefore = time + this.liveTime;
-            return new Value<V>(bestBefore, this.supplier.get());
+        Value<V> current = this.variable.get();
+        if (current != null) {
+            // A hit only reads the variable and the ticker.
+            long time = this.ticker.currentTime();
+            if (this.refreshExecutor != null) {
+                if (!current.isRefreshing() && current.isRefreshDue(time)) {
+                    this.startRefresh(current);
+                }
+                return current.getValue();
+            }
+            if (!current.isExpired(time)) {
+                return current.getValue();
+            }
+        }
+        return this.variable.updateAfterCheck(value->{
+            return (value == null) || value.isExpired(this.ticker.currentTime());
+        }, value->{
+            return this.load();
         }).getValue();
     }
     
@@ -34,37 +73,84 @@ public class ExpirableCache<V> {
         this.variable.set(null);
     }
     
-    // == AUX class ====================================================================================================
+    private Value<V> load() {
+        long time = this.ticker.currentTime();
+        return new Value<V>(time + this.liveTime, time + this.refreshTime, this.supplier.get(), false);
+    }
     
-    static class TimeProvider {
-        
-        public long currentTime = 0;
-        
-        public long currentTime() {
-            return this.currentTime;
+    private void startRefresh(Value<V> current) {
+        Value<V> refreshing = current.toRefreshing();
+        // Only the getter that marks the value as refreshing starts the refresh.
+        if (!this.variable.checkBeforeSet(value -> value == current, refreshing)) {
+            return;
         }
-        
+        try {
+            this.refreshExecutor.execute(()->this.refresh(refreshing));
+        } catch (RuntimeException exception) {
+            this.variable.checkBeforeSet(value -> value == refreshing, current);
+            throw exception;
+        }
+    }
+    
+    private void refresh(Value<V> refreshing) {
+        Value<V> newValue;
+        try {
+            newValue = this.load();
+        } catch (RuntimeException exception) {
+            this.variable.checkBeforeSet(value -> value == refreshing, refreshing.toNotRefreshing());
+            throw exception;
+        }
+        // An invalidated (or replaced) value is not to be brought back.
+        this.variable.checkBeforeSet(value -> value == refreshing, newValue);
     }
     
+    // == AUX class ====================================================================================================
+    
     static class Value<V> {
         
         private final long bestBefore;
         
+        private final long refreshAfter;
+        
         private final V value;
         
+        private final boolean isRefreshing;
+        
         public Value(long bestBefore, V value) {
+            this(bestBefore, bestBefore, value, false);
+        }
+        
+        public Value(long bestBefore, long refreshAfter, V value, boolean isRefreshing) {
             this.value = value;
             this.bestBefore = bestBefore;
+            this.refreshAfter = refreshAfter;
+            this.isRefreshing = isRefreshing;
         }
         
         public boolean isExpired(long time) {
             return this.bestBefore <= time;
         }
         
+        public boolean isRefreshDue(long time) {
+            return this.refreshAfter <= time;
+        }
+        
+        public boolean isRefreshing() {
+            return this.isRefreshing;
+        }
+        
         public V getValue() {
             return this.value;
         }
         
+        Value<V> toRefreshing() {
+            return new Value<V>(this.bestBefore, this.refreshAfter, this.value, true);
+        }
+        
+        Value<V> toNotRefreshing() {
+            return new Value<V>(this.bestBefore, this.refreshAfter, this.value, false);
+        }
+        
     }
     
 }
@@ -0,0 +1,94 @@
+package nawaman.papercuts.concurrency.atomicvariable_examples.cache;
+
+/**
+ * A count-min sketch of how often the keys were used -- 4-bit counters, four counters per key.
+ * 
+ * Once the number of recorded uses reaches ten times the table size, all the counters are halved so that the sketch
+ *   follows the recent popularity of the keys rather than the all-time one.
+ * 
+ * NOTE: This class is not thread safe -- LoadingCache only uses it while holding its eviction lock.
+ */
+class FrequencySketch<K> {
+    
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+    
+    private static final long RESET_MASK = 0x7777777777777777L;
+    
+    private static final long ONE_MASK = 0x1111111111111111L;
+    
+    private final long[] table;
+    
+    private final int tableMask;
+    
+    private final int sampleSize;
+    
+    private int size;
+    
+    public FrequencySketch(long maximumSize) {
+        int capacity = (int)Math.min(Math.max(maximumSize, 8), 1 << 30);
+        capacity = Integer.highestOneBit(capacity - 1) << 1;
+        this.table = new long[capacity];
+        this.tableMask = capacity - 1;
+        this.sampleSize = 10 * capacity;
+    }
+    
+    /** Returns the estimated number of uses of the key (at most 15). */
+    public int frequency(K key) {
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = this.indexOf(hash, i);
+            int count = (int)((this.table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+    
+    /** Record a use of the key. */
+    public void increment(K key) {
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            int index = this.indexOf(hash, i);
+            added |= this.incrementAt(index, start + i);
+        }
+        if (added && (++this.size == this.sampleSize)) {
+            this.reset();
+        }
+    }
+    
+    private boolean incrementAt(int index, int counter) {
+        int offset = counter << 2;
+        long mask = 0xfL << offset;
+        if ((this.table[index] & mask) != mask) {
+            this.table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+    
+    private void reset() {
+        int count = 0;
+        for (int i = 0; i < this.table.length; i++) {
+            count += Long.bitCount(this.table[i] & ONE_MASK);
+            this.table[i] = (this.table[i] >>> 1) & RESET_MASK;
+        }
+        this.size = (this.size >>> 1) - (count >>> 2);
+    }
+    
+    private int indexOf(int item, int i) {
+        long hash = (item + SEEDS[i]) * SEEDS[i];
+        hash += (hash >>> 32);
+        return ((int)hash) & this.tableMask;
+    }
+    
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+    
+}
@@ -0,0 +1,391 @@
+package nawaman.papercuts.concurrency.atomicvariable_examples.cache;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.ToIntBiFunction;
+import java.util.function.ToLongBiFunction;
+
+import nawaman.papercuts.concurrency.atomicvariable.AtomicVariable;
+import nawaman.papercuts.concurrency.atomicvariable_examples.cache.ExpirableCache.Value;
+
+/**
+ * A keyed cache -- each entry is an ExpirableCache-like AtomicVariable slot with its own live time.
+ * 
+ * Reads are lock free: a map lookup, a volatile read of the slot and a non-blocking record of the read into a lossy
+ *   read buffer. A missing or expired value is loaded while holding the monitor of that entry's slot only.
+ * 
+ * The total weight of the entries is bounded by a W-TinyLFU policy: new entries enter a small LRU window (1% of
+ *   the maximum weight); the entries leaving the window compete with the least recently used entry of the main
+ *   segmented LRU (probation and protected) and the one that a frequency sketch says is used less often is evicted.
+ *   The policy is not touched by the readers and the writers directly -- the reads and the writes are buffered and
+ *   replayed to the policy in batches by whichever thread gets the eviction lock first.
+ * 
+ * NOTE: Expired values are not proactively removed; they are reloaded when read or evicted by the size policy.
+ */
+public class LoadingCache<K, V> {
+    
+    /** The number of buffered writes replayed between two drains of the read buffer. */
+    private static final int WRITE_BUFFER_DRAIN_THRESHOLD = 16;
+    
+    private final ConcurrentHashMap<K, Entry<K, V>> data = new ConcurrentHashMap<>();
+    
+    private final Function<K, V> loader;
+    
+    private final Ticker ticker;
+    
+    private final ToLongBiFunction<K, V> liveTime;
+    
+    private final ToIntBiFunction<K, V> weigher;
+    
+    private final ReadBuffer<Entry<K, V>> readBuffer = new ReadBuffer<>();
+    
+    private final Queue<Runnable> writeBuffer = new ConcurrentLinkedQueue<>();
+    
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    
+    // -- Policy: only touched while holding the eviction lock. --
+    
+    private final FrequencySketch<K> sketch;
+    
+    private final EntryDeque<K, V> window = new EntryDeque<>();
+    
+    private final EntryDeque<K, V> probation = new EntryDeque<>();
+    
+    private final EntryDeque<K, V> protectedDeque = new EntryDeque<>();
+    
+    private final long maximumWeight;
+    
+    private final long windowMaximum;
+    
+    private final long protectedMaximum;
+    
+    private long totalWeight;
+    
+    private long windowWeight;
+    
+    private long protectedWeight;
+    
+    /** Creates a cache of at most maximumSize entries all with the same live time. */
+    public LoadingCache(Ticker ticker, long maximumSize, long liveTime, Function<K, V> loader) {
+        this(ticker, maximumSize, (key, value) -> 1, (key, value) -> liveTime, loader);
+    }
+    
+    /** Creates a cache of at most maximumWeight total weight with the live time given per entry. */
+    public LoadingCache(Ticker ticker, long maximumWeight, ToIntBiFunction<K, V> weigher,
+            ToLongBiFunction<K, V> liveTime, Function<K, V> loader) {
+        if (maximumWeight <= 0) {
+            throw new IllegalArgumentException("maximumWeight must be positive: " + maximumWeight);
+        }
+        this.ticker = Objects.requireNonNull(ticker);
+        this.weigher = Objects.requireNonNull(weigher);
+        this.liveTime = Objects.requireNonNull(liveTime);
+        this.loader = Objects.requireNonNull(loader);
+        this.maximumWeight = maximumWeight;
+        this.windowMaximum = Math.max(1, maximumWeight / 100);
+        this.protectedMaximum = (long)((maximumWeight - this.windowMaximum) * 0.8);
+        this.sketch = new FrequencySketch<>(maximumWeight);
+    }
+    
+    public V get(K key) {
+        Entry<K, V> entry = this.data.get(key);
+        if (entry != null) {
+            Value<V> value = entry.slot.get();
+            if ((value != null) && !value.isExpired(this.ticker.currentTime())) {
+                this.afterRead(entry);
+                return value.getValue();
+            }
+        }
+        return this.load(key);
+    }
+    
+    public void invalidate(K key) {
+        Entry<K, V> entry = this.data.remove(key);
+        if (entry != null) {
+            entry.isRetired = true;
+            this.afterWrite(() -> this.onRemove(entry));
+        }
+    }
+    
+    /** Returns the number of the entries in the cache -- possibly including the ones not yet seen by the policy. */
+    public long estimatedSize() {
+        return this.data.size();
+    }
+    
+    /** Replay all the buffered reads and writes to the policy now. */
+    public void cleanUp() {
+        this.evictionLock.lock();
+        try {
+            this.drainBuffers();
+        } finally {
+            this.evictionLock.unlock();
+        }
+    }
+    
+    private V load(K key) {
+        Entry<K, V> entry = this.data.get(key);
+        if (entry == null) {
+            Entry<K, V> newEntry = new Entry<>(key);
+            entry = this.data.putIfAbsent(key, newEntry);
+            if (entry == null) {
+                entry = newEntry;
+            }
+        }
+        
+        Entry<K, V> theEntry = entry;
+        boolean[] isLoaded = new boolean[1];
+        Value<V> value;
+        try {
+            value = entry.slot.updateAfterCheck(current->{
+                return (current == null) || current.isExpired(this.ticker.currentTime());
+            }, current->{
+                long time = this.ticker.currentTime();
+                V newValue = this.loader.apply(key);
+                isLoaded[0] = true;
+                return new Value<V>(time + this.liveTime.applyAsLong(key, newValue), newValue);
+            });
+        } catch (RuntimeException exception) {
+            // Do not keep an entry that has never had a value.
+            if ((theEntry.slot.get() == null) && this.data.remove(key, theEntry)) {
+                theEntry.isRetired = true;
+                this.afterWrite(() -> this.onRemove(theEntry));
+            }
+            throw exception;
+        }
+        
+        if (isLoaded[0]) {
+            int weight = this.weigher.applyAsInt(key, value.getValue());
+            this.afterWrite(() -> this.onLoaded(theEntry, weight));
+        } else {
+            this.afterRead(entry);
+        }
+        return value.getValue();
+    }
+    
+    private void afterRead(Entry<K, V> entry) {
+        boolean isFull = this.readBuffer.offer(entry);
+        if (isFull) {
+            this.tryDrainBuffers();
+        }
+    }
+    
+    private void afterWrite(Runnable task) {
+        this.writeBuffer.add(task);
+        this.tryDrainBuffers();
+    }
+    
+    private void tryDrainBuffers() {
+        if (this.evictionLock.tryLock()) {
+            try {
+                this.drainBuffers();
+            } finally {
+                this.evictionLock.unlock();
+            }
+        }
+    }
+    
+    private void drainBuffers() {
+        this.readBuffer.drainTo(this::onAccess);
+        Runnable task;
+        int count = 0;
+        while ((task = this.writeBuffer.poll()) != null) {
+            task.run();
+            if (++count % WRITE_BUFFER_DRAIN_THRESHOLD == 0) {
+                // Do not let the reads pile up behind a long run of writes.
+                this.readBuffer.drainTo(this::onAccess);
+            }
+        }
+    }
+    
+    // == Policy =======================================================================================================
+    
+    private void onAccess(Entry<K, V> entry) {
+        this.sketch.increment(entry.key);
+        if (entry.queue == Entry.WINDOW) {
+            this.window.moveToBack(entry);
+        } else if (entry.queue == Entry.PROBATION) {
+            this.probation.remove(entry);
+            this.protectedDeque.addLast(entry);
+            entry.queue = Entry.PROTECTED;
+            this.protectedWeight += entry.weight;
+            this.demoteFromProtected();
+        } else if (entry.queue == Entry.PROTECTED) {
+            this.protectedDeque.moveToBack(entry);
+        }
+    }
+    
+    private void onLoaded(Entry<K, V> entry, int weight) {
+        if (entry.isRetired) {
+            return;
+        }
+        if (entry.queue == Entry.NONE) {
+            entry.weight = weight;
+            entry.queue = Entry.WINDOW;
+            this.window.addLast(entry);
+            this.windowWeight += weight;
+            this.totalWeight += weight;
+            this.sketch.increment(entry.key);
+        } else {
+            int delta = weight - entry.weight;
+            entry.weight = weight;
+            this.totalWeight += delta;
+            if (entry.queue == Entry.WINDOW) {
+                this.windowWeight += delta;
+            } else if (entry.queue == Entry.PROTECTED) {
+                this.protectedWeight += delta;
+            }
+            this.onAccess(entry);
+        }
+        this.evict();
+    }
+    
+    private void onRemove(Entry<K, V> entry) {
+        if (entry.queue == Entry.NONE) {
+            return;
+        }
+        if (entry.queue == Entry.WINDOW) {
+            this.window.remove(entry);
+            this.windowWeight -= entry.weight;
+        } else if (entry.queue == Entry.PROBATION) {
+            this.probation.remove(entry);
+        } else {
+            this.protectedDeque.remove(entry);
+            this.protectedWeight -= entry.weight;
+        }
+        this.totalWeight -= entry.weight;
+        entry.queue = Entry.NONE;
+    }
+    
+    private void demoteFromProtected() {
+        while ((this.protectedWeight > this.protectedMaximum) && !this.protectedDeque.isEmpty()) {
+            Entry<K, V> demoted = this.protectedDeque.removeFirst();
+            this.protectedWeight -= demoted.weight;
+            demoted.queue = Entry.PROBATION;
+            this.probation.addLast(demoted);
+        }
+    }
+    
+    private void evict() {
+        // The entries leaving the window become the candidates at the back of the probation.
+        while ((this.windowWeight > this.windowMaximum) && !this.window.isEmpty()) {
+            Entry<K, V> candidate = this.window.removeFirst();
+            this.windowWeight -= candidate.weight;
+            candidate.queue = Entry.PROBATION;
+            this.probation.addLast(candidate);
+        }
+        while (this.totalWeight > this.maximumWeight) {
+            EntryDeque<K, V> deque = !this.probation.isEmpty() ? this.probation
+                                   : !this.protectedDeque.isEmpty() ? this.protectedDeque
+                                   : this.window;
+            Entry<K, V> victim = deque.peekFirst();
+            Entry<K, V> candidate = deque.peekLast();
+            if (victim == null) {
+                return;
+            }
+            boolean isCandidateAdmitted = (candidate != victim)
+                    && (this.sketch.frequency(candidate.key) > this.sketch.frequency(victim.key));
+            this.evictEntry(isCandidateAdmitted ? victim : candidate);
+        }
+    }
+    
+    private void evictEntry(Entry<K, V> entry) {
+        this.onRemove(entry);
+        entry.isRetired = true;
+        this.data.remove(entry.key, entry);
+    }
+    
+    // == AUX class ====================================================================================================
+    
+    static final class Entry<K, V> {
+        
+        static final int NONE = 0;
+        static final int WINDOW = 1;
+        static final int PROBATION = 2;
+        static final int PROTECTED = 3;
+        
+        final K key;
+        
+        final AtomicVariable<Value<V>> slot = new AtomicVariable<>(null);
+        
+        volatile boolean isRetired;
+        
+        // -- Policy: only touched while holding the eviction lock. --
+        
+        int queue = NONE;
+        
+        int weight;
+        
+        Entry<K, V> previous;
+        
+        Entry<K, V> next;
+        
+        Entry(K key) {
+            this.key = key;
+        }
+        
+    }
+    
+    /** An intrusive doubly-linked list of the entries -- the first one is the least recently used. */
+    static final class EntryDeque<K, V> {
+        
+        private Entry<K, V> first;
+        
+        private Entry<K, V> last;
+        
+        boolean isEmpty() {
+            return this.first == null;
+        }
+        
+        Entry<K, V> peekFirst() {
+            return this.first;
+        }
+        
+        Entry<K, V> peekLast() {
+            return this.last;
+        }
+        
+        void addLast(Entry<K, V> entry) {
+            entry.previous = this.last;
+            entry.next = null;
+            if (this.last == null) {
+                this.first = entry;
+            } else {
+                this.last.next = entry;
+            }
+            this.last = entry;
+        }
+        
+        Entry<K, V> removeFirst() {
+            Entry<K, V> entry = this.first;
+            this.remove(entry);
+            return entry;
+        }
+        
+        void remove(Entry<K, V> entry) {
+            if (entry.previous == null) {
+                this.first = entry.next;
+            } else {
+                entry.previous.next = entry.next;
+            }
+            if (entry.next == null) {
+                this.last = entry.previous;
+            } else {
+                entry.next.previous = entry.previous;
+            }
+            entry.previous = null;
+            entry.next = null;
+        }
+        
+        void moveToBack(Entry<K, V> entry) {
+            if (entry != this.last) {
+                this.remove(entry);
+                this.addLast(entry);
+            }
+        }
+        
+    }
+    
+}
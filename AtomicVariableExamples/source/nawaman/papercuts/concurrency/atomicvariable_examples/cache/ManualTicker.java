@@ -0,0 +1,33 @@
+package nawaman.papercuts.concurrency.atomicvariable_examples.cache;
+
+/**
+ * A ticker whose time only moves when it is told to -- for the tests.
+ */
+public class ManualTicker implements Ticker {
+    
+    private volatile long time;
+    
+    public ManualTicker() {
+        this(0);
+    }
+    
+    public ManualTicker(long time) {
+        this.time = time;
+    }
+    
+    @Override
+    public long currentTime() {
+        return this.time;
+    }
+    
+    /** Set the time. */
+    public void set(long time) {
+        this.time = time;
+    }
+    
+    /** Move the time forward -- only called by one thread at a time. */
+    public void advance(long duration) {
+        this.time += duration;
+    }
+    
+}
@@ -0,0 +1,85 @@
+package nawaman.papercuts.concurrency.atomicvariable_examples.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * A lossy buffer of the reads to be replayed to the eviction policy -- striped by thread to spread the contention.
+ * 
+ * Recording a read never blocks; when the stripe is full, the read is simply dropped (the policy only needs a good
+ *   sample of the reads). Only one thread (the one holding the eviction lock) may drain the buffer.
+ */
+class ReadBuffer<E> {
+    
+    private static final int NCPU = Runtime.getRuntime().availableProcessors();
+    
+    private static final int STRIPES = Integer.highestOneBit(Math.max(NCPU - 1, 1)) << 1;
+    
+    static final int STRIPE_SIZE = 16;
+    
+    private static final int STRIPE_MASK = STRIPE_SIZE - 1;
+    
+    @SuppressWarnings("unchecked")
+    private final Stripe<E>[] stripes = (Stripe<E>[])new Stripe<?>[STRIPES];
+    
+    public ReadBuffer() {
+        for (int i = 0; i < STRIPES; i++) {
+            this.stripes[i] = new Stripe<E>();
+        }
+    }
+    
+    /** Record the read and return {@code true} if the stripe is full and should be drained. */
+    public boolean offer(E element) {
+        int index = (int)Thread.currentThread().getId() & (STRIPES - 1);
+        return this.stripes[index].offer(element);
+    }
+    
+    /** Replay all the recorded reads to the consumer. */
+    public void drainTo(Consumer<E> consumer) {
+        for (Stripe<E> stripe : this.stripes) {
+            stripe.drainTo(consumer);
+        }
+    }
+    
+    // == AUX class ====================================================================================================
+    
+    static class Stripe<E> {
+        
+        private final AtomicReferenceArray<E> buffer = new AtomicReferenceArray<>(STRIPE_SIZE);
+        
+        private final AtomicLong writeCount = new AtomicLong();
+        
+        private volatile long readCount;
+        
+        boolean offer(E element) {
+            long write = this.writeCount.get();
+            if (write - this.readCount >= STRIPE_SIZE) {
+                return true;
+            }
+            if (this.writeCount.compareAndSet(write, write + 1)) {
+                this.buffer.lazySet((int)(write & STRIPE_MASK), element);
+                return (write + 1 - this.readCount) >= STRIPE_SIZE;
+            }
+            return false;
+        }
+        
+        void drainTo(Consumer<E> consumer) {
+            long read = this.readCount;
+            long write = this.writeCount.get();
+            for (; read < write; read++) {
+                int index = (int)(read & STRIPE_MASK);
+                E element = this.buffer.get(index);
+                if (element == null) {
+                    // The writer has claimed the slot but not filled it yet.
+                    break;
+                }
+                this.buffer.lazySet(index, null);
+                consumer.accept(element);
+            }
+            this.readCount = read;
+        }
+        
+    }
+    
+}
@@ -1,12 +1,22 @@
 package nawaman.papercuts.concurrency.atomicvariable_examples.cache;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.function.Supplier;
 
 import nawaman.papercuts.concurrency.atomicvariable.AtomicVariable;
 
+/**
+ * A lazily-loaded value with single-flight loading.
+ * 
+ * The variable holds the future of the value. The first getter installs a new future and loads the value outside of
+ *   any lock; concurrent getters find the in-flight future and wait on it. An invalidation simply removes the
+ *   future, so a load that was in flight at the time still completes for the getters that were already waiting for it
+ *   but its value is never kept.
+ */
 public class SimpleCache<V> {
     
-    private final AtomicVariable<V> variable = new AtomicVariable<>(null);
+    private final AtomicVariable<CompletableFuture<V>> variable = new AtomicVariable<>(null);
     
     private final Supplier<V> supplier;
     
@@ -15,13 +25,46 @@ public class SimpleCache<V> {
     }
     
     public V get() {
-        return this.variable.updateAfterCompare(null, current->{
-            return this.supplier.get();
-        });
+        CompletableFuture<V> future = this.variable.get();
+        while (future == null) {
+            CompletableFuture<V> newFuture = new CompletableFuture<>();
+            if (this.variable.checkBeforeSet(current -> current == null, newFuture)) {
+                this.load(newFuture);
+                future = newFuture;
+            } else {
+                future = this.variable.get();
+            }
+        }
+        return join(future);
     }
     
     public void invalidate() {
         this.variable.set(null);
     }
     
-}
\ No newline at end of file
+    private void load(CompletableFuture<V> future) {
+        try {
+            future.complete(this.supplier.get());
+        } catch (RuntimeException | Error exception) {
+            // Let the next getter try again.
+            this.variable.checkBeforeSet(current -> current == future, null);
+            future.completeExceptionally(exception);
+        }
+    }
+    
+    static <V> V join(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException exception) {
+            Throwable cause = exception.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw exception;
+        }
+    }
+    
+}
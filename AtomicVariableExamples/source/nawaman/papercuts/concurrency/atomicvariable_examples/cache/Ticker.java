@@ -0,0 +1,27 @@
+package nawaman.papercuts.concurrency.atomicvariable_examples.cache;
+
+/**
+ * The source of the current time for the caches.
+ * 
+ * The caches read the time on every get so the time should be cheap to read -- the shared cached tickers
+ *   ({@link #cachedMillis()} and {@link #cachedNanos()}) are a single volatile read, refreshed every millisecond by one
+ *   background thread for all the caches. A {@link ManualTicker} lets the tests move the time themselves.
+ * 
+ * NOTE: The unit of the time is the ticker's -- the live times given to a cache must be in the same unit.
+ */
+public interface Ticker {
+    
+    /** Returns the current time in this ticker's unit. */
+    public long currentTime();
+    
+    /** Returns the shared ticker of the wall-clock milliseconds -- up to about a millisecond behind. */
+    public static Ticker cachedMillis() {
+        return CachedTicker.MILLIS;
+    }
+    
+    /** Returns the shared ticker of the {@link System#nanoTime()} nanoseconds -- up to about a millisecond behind. */
+    public static Ticker cachedNanos() {
+        return CachedTicker.NANOS;
+    }
+    
+}
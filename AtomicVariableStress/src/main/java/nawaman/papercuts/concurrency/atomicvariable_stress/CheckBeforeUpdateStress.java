@@ -0,0 +1,106 @@
+package nawaman.papercuts.concurrency.atomicvariable_stress;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+import nawaman.papercuts.concurrency.atomicvariable.AtomicVariable;
+import nawaman.papercuts.concurrency.atomicvariable.UpdateMode;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.III_Result;
+
+/**
+ * Two concurrent {@link AtomicVariable#checkBeforeUpdate} with a check that the other's update makes fail -- the check
+ *   and the update are atomic together so only one of them can pass.
+ * 
+ * The results are whether each actor's update was made (1) or not (0) and the final value.
+ * 
+ * @author NawaMan
+ */
+public class CheckBeforeUpdateStress {
+    
+    static int incrementIfEven(
+            final AtomicVariable<Integer> variable) {
+        return variable.checkBeforeUpdate(current -> (current % 2) == 0, current -> current + 1) ? 1 : 0;
+    }
+    
+    @JCStressTest
+    @Outcome(id = { "1, 0, 1", "0, 1, 1" }, expect = ACCEPTABLE, desc = "One update passes the check, the other sees it.")
+    @Outcome(                               expect = FORBIDDEN,  desc = "Both pass the check on the same value or neither passes.")
+    @State
+    public static class Locking {
+        
+        private final AtomicVariable<Integer> variable = new AtomicVariable<>(0, UpdateMode.LOCKING);
+        
+        @Actor
+        public void actor1(III_Result result) {
+            result.r1 = incrementIfEven(this.variable);
+        }
+        
+        @Actor
+        public void actor2(III_Result result) {
+            result.r2 = incrementIfEven(this.variable);
+        }
+        
+        @Arbiter
+        public void arbiter(III_Result result) {
+            result.r3 = this.variable.get();
+        }
+        
+    }
+    
+    @JCStressTest
+    @Outcome(id = { "1, 0, 1", "0, 1, 1" }, expect = ACCEPTABLE, desc = "One update passes the check, the other sees it.")
+    @Outcome(                               expect = FORBIDDEN,  desc = "Both pass the check on the same value or neither passes.")
+    @State
+    public static class Optimistic {
+        
+        private final AtomicVariable<Integer> variable = new AtomicVariable<>(0, UpdateMode.OPTIMISTIC);
+        
+        @Actor
+        public void actor1(III_Result result) {
+            result.r1 = incrementIfEven(this.variable);
+        }
+        
+        @Actor
+        public void actor2(III_Result result) {
+            result.r2 = incrementIfEven(this.variable);
+        }
+        
+        @Arbiter
+        public void arbiter(III_Result result) {
+            result.r3 = this.variable.get();
+        }
+        
+    }
+    
+    @JCStressTest
+    @Outcome(id = { "1, 0, 1", "0, 1, 1" }, expect = ACCEPTABLE, desc = "One update passes the check, the other sees it.")
+    @Outcome(                               expect = FORBIDDEN,  desc = "Both pass the check on the same value or neither passes.")
+    @State
+    public static class Combining {
+        
+        private final AtomicVariable<Integer> variable = new AtomicVariable<>(0, UpdateMode.COMBINING);
+        
+        @Actor
+        public void actor1(III_Result result) {
+            result.r1 = incrementIfEven(this.variable);
+        }
+        
+        @Actor
+        public void actor2(III_Result result) {
+            result.r2 = incrementIfEven(this.variable);
+        }
+        
+        @Arbiter
+        public void arbiter(III_Result result) {
+            result.r3 = this.variable.get();
+        }
+        
+    }
+    
+}
@@ -0,0 +1,107 @@
+package nawaman.papercuts.concurrency.atomicvariable_stress;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+import nawaman.papercuts.concurrency.atomicvariable.AtomicVariable;
+import nawaman.papercuts.concurrency.atomicvariable.UpdateMode;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.III_Result;
+
+/**
+ * Two concurrent {@link AtomicVariable#compareBeforeSet} from the same expected value -- exactly one of them wins and
+ *   its value is the one that stays.
+ * 
+ * The results are whether each actor won (1) or lost (0) and the final value.
+ * 
+ * @author NawaMan
+ */
+public class CompareBeforeSetStress {
+    
+    static int compareBeforeSet(
+            final AtomicVariable<Integer> variable,
+            final int                     newValue) {
+        return variable.compareBeforeSet(0, newValue) ? 1 : 0;
+    }
+    
+    @JCStressTest
+    @Outcome(id = { "1, 0, 1", "0, 1, 2" }, expect = ACCEPTABLE, desc = "One actor wins and its value stays.")
+    @Outcome(                               expect = FORBIDDEN,  desc = "Both or neither win, or the loser's value stays.")
+    @State
+    public static class Locking {
+        
+        private final AtomicVariable<Integer> variable = new AtomicVariable<>(0, UpdateMode.LOCKING);
+        
+        @Actor
+        public void actor1(III_Result result) {
+            result.r1 = compareBeforeSet(this.variable, 1);
+        }
+        
+        @Actor
+        public void actor2(III_Result result) {
+            result.r2 = compareBeforeSet(this.variable, 2);
+        }
+        
+        @Arbiter
+        public void arbiter(III_Result result) {
+            result.r3 = this.variable.get();
+        }
+        
+    }
+    
+    @JCStressTest
+    @Outcome(id = { "1, 0, 1", "0, 1, 2" }, expect = ACCEPTABLE, desc = "One actor wins and its value stays.")
+    @Outcome(                               expect = FORBIDDEN,  desc = "Both or neither win, or the loser's value stays.")
+    @State
+    public static class Optimistic {
+        
+        private final AtomicVariable<Integer> variable = new AtomicVariable<>(0, UpdateMode.OPTIMISTIC);
+        
+        @Actor
+        public void actor1(III_Result result) {
+            result.r1 = compareBeforeSet(this.variable, 1);
+        }
+        
+        @Actor
+        public void actor2(III_Result result) {
+            result.r2 = compareBeforeSet(this.variable, 2);
+        }
+        
+        @Arbiter
+        public void arbiter(III_Result result) {
+            result.r3 = this.variable.get();
+        }
+        
+    }
+    
+    @JCStressTest
+    @Outcome(id = { "1, 0, 1", "0, 1, 2" }, expect = ACCEPTABLE, desc = "One actor wins and its value stays.")
+    @Outcome(                               expect = FORBIDDEN,  desc = "Both or neither win, or the loser's value stays.")
+    @State
+    public static class Combining {
+        
+        private final AtomicVariable<Integer> variable = new AtomicVariable<>(0, UpdateMode.COMBINING);
+        
+        @Actor
+        public void actor1(III_Result result) {
+            result.r1 = compareBeforeSet(this.variable, 1);
+        }
+        
+        @Actor
+        public void actor2(III_Result result) {
+            result.r2 = compareBeforeSet(this.variable, 2);
+        }
+        
+        @Arbiter
+        public void arbiter(III_Result result) {
+            result.r3 = this.variable.get();
+        }
+        
+    }
+    
+}
@@ -0,0 +1,99 @@
+package nawaman.papercuts.concurrency.atomicvariable_stress;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+import nawaman.papercuts.concurrency.atomicvariable.AtomicVariable;
+import nawaman.papercuts.concurrency.atomicvariable.UpdateMode;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.I_Result;
+
+/**
+ * An object with a plain (non-final, non-volatile) field published with {@link AtomicVariable#set} -- a reader that
+ *   gets the object also sees its field.
+ * 
+ * The result is the field seen by the reader or -1 if the object is not set yet.
+ * 
+ * @author NawaMan
+ */
+public class PublicationStress {
+    
+    /** The published object -- the field is deliberately neither final nor volatile. */
+    static class Holder {
+        int value;
+        Holder(int value) {
+            this.value = value;
+        }
+    }
+    
+    static int read(
+            final AtomicVariable<Holder> variable) {
+        Holder holder = variable.get();
+        return (holder == null) ? -1 : holder.value;
+    }
+    
+    @JCStressTest
+    @Outcome(id = { "-1", "42" }, expect = ACCEPTABLE, desc = "The holder is not set yet or is seen fully constructed.")
+    @Outcome(id = "0",            expect = FORBIDDEN,  desc = "The holder is seen before its field.")
+    @State
+    public static class Locking {
+        
+        private final AtomicVariable<Holder> variable = new AtomicVariable<>(null, UpdateMode.LOCKING);
+        
+        @Actor
+        public void actor1() {
+            this.variable.set(new Holder(42));
+        }
+        
+        @Actor
+        public void actor2(I_Result result) {
+            result.r1 = read(this.variable);
+        }
+        
+    }
+    
+    @JCStressTest
+    @Outcome(id = { "-1", "42" }, expect = ACCEPTABLE, desc = "The holder is not set yet or is seen fully constructed.")
+    @Outcome(id = "0",            expect = FORBIDDEN,  desc = "The holder is seen before its field.")
+    @State
+    public static class Optimistic {
+        
+        private final AtomicVariable<Holder> variable = new AtomicVariable<>(null, UpdateMode.OPTIMISTIC);
+        
+        @Actor
+        public void actor1() {
+            this.variable.set(new Holder(42));
+        }
+        
+        @Actor
+        public void actor2(I_Result result) {
+            result.r1 = read(this.variable);
+        }
+        
+    }
+    
+    @JCStressTest
+    @Outcome(id = { "-1", "42" }, expect = ACCEPTABLE, desc = "The holder is not set yet or is seen fully constructed.")
+    @Outcome(id = "0",            expect = FORBIDDEN,  desc = "The holder is seen before its field.")
+    @State
+    public static class Combining {
+        
+        private final AtomicVariable<Holder> variable = new AtomicVariable<>(null, UpdateMode.COMBINING);
+        
+        @Actor
+        public void actor1() {
+            this.variable.set(new Holder(42));
+        }
+        
+        @Actor
+        public void actor2(I_Result result) {
+            result.r1 = read(this.variable);
+        }
+        
+    }
+    
+}
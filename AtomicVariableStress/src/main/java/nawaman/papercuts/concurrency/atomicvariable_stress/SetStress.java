@@ -0,0 +1,111 @@
+package nawaman.papercuts.concurrency.atomicvariable_stress;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+import nawaman.papercuts.concurrency.atomicvariable.AtomicVariable;
+import nawaman.papercuts.concurrency.atomicvariable.UpdateMode;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.II_Result;
+
+/**
+ * A {@link AtomicVariable#set} racing with an {@link AtomicVariable#updateAfterCheck} -- the two are ordered one way
+ *   or the other and neither is lost.
+ * 
+ * The results are the value returned by the update and the final value. The update returns the value in the variable
+ *   at the end of its invocation so a set that comes right after the change but before the update returns is seen
+ *   in the returned value ("10, 10") -- the returned value is not guaranteed to include the update's own change.
+ * 
+ * @author NawaMan
+ */
+public class SetStress {
+    
+    static int add(
+            final AtomicVariable<Integer> variable) {
+        return variable.updateAfterCheck(current -> true, current -> current + 1);
+    }
+    
+    @JCStressTest
+    @Outcome(id = { "11, 11", "1, 10" }, expect = ACCEPTABLE, desc = "The set is before or after the update.")
+    @Outcome(id = "10, 10",              expect = ACCEPTABLE, desc = "The set overwrites the update before it returns.")
+    @Outcome(                            expect = FORBIDDEN,  desc = "The set or the update is lost.")
+    @State
+    public static class Locking {
+        
+        private final AtomicVariable<Integer> variable = new AtomicVariable<>(0, UpdateMode.LOCKING);
+        
+        @Actor
+        public void actor1() {
+            this.variable.set(10);
+        }
+        
+        @Actor
+        public void actor2(II_Result result) {
+            result.r1 = add(this.variable);
+        }
+        
+        @Arbiter
+        public void arbiter(II_Result result) {
+            result.r2 = this.variable.get();
+        }
+        
+    }
+    
+    @JCStressTest
+    @Outcome(id = { "11, 11", "1, 10" }, expect = ACCEPTABLE, desc = "The set is before or after the update.")
+    @Outcome(id = "10, 10",              expect = ACCEPTABLE, desc = "The set overwrites the update before it returns.")
+    @Outcome(                            expect = FORBIDDEN,  desc = "The set or the update is lost.")
+    @State
+    public static class Optimistic {
+        
+        private final AtomicVariable<Integer> variable = new AtomicVariable<>(0, UpdateMode.OPTIMISTIC);
+        
+        @Actor
+        public void actor1() {
+            this.variable.set(10);
+        }
+        
+        @Actor
+        public void actor2(II_Result result) {
+            result.r1 = add(this.variable);
+        }
+        
+        @Arbiter
+        public void arbiter(II_Result result) {
+            result.r2 = this.variable.get();
+        }
+        
+    }
+    
+    @JCStressTest
+    @Outcome(id = { "11, 11", "1, 10" }, expect = ACCEPTABLE, desc = "The set is before or after the update.")
+    @Outcome(id = "10, 10",              expect = ACCEPTABLE, desc = "The set overwrites the update before it returns.")
+    @Outcome(                            expect = FORBIDDEN,  desc = "The set or the update is lost.")
+    @State
+    public static class Combining {
+        
+        private final AtomicVariable<Integer> variable = new AtomicVariable<>(0, UpdateMode.COMBINING);
+        
+        @Actor
+        public void actor1() {
+            this.variable.set(10);
+        }
+        
+        @Actor
+        public void actor2(II_Result result) {
+            result.r1 = add(this.variable);
+        }
+        
+        @Arbiter
+        public void arbiter(II_Result result) {
+            result.r2 = this.variable.get();
+        }
+        
+    }
+    
+}
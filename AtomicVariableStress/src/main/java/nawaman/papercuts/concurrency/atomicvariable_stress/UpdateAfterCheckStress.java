@@ -0,0 +1,109 @@
+package nawaman.papercuts.concurrency.atomicvariable_stress;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+import nawaman.papercuts.concurrency.atomicvariable.AtomicVariable;
+import nawaman.papercuts.concurrency.atomicvariable.UpdateMode;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.III_Result;
+
+/**
+ * Two concurrent increments with {@link AtomicVariable#updateAfterCheck} -- neither is lost and each returns a value
+ *   that includes its own increment.
+ * 
+ * The results are the values returned to the two actors and the final value.
+ * 
+ * @author NawaMan
+ */
+public class UpdateAfterCheckStress {
+    
+    static Integer increment(
+            final AtomicVariable<Integer> variable) {
+        return variable.updateAfterCheck(current -> true, current -> current + 1);
+    }
+    
+    @JCStressTest
+    @Outcome(id = { "1, 2, 2", "2, 1, 2" }, expect = ACCEPTABLE, desc = "Each actor sees its own increment.")
+    @Outcome(id = "2, 2, 2",                expect = ACCEPTABLE, desc = "The first to increment also sees the later increment.")
+    @Outcome(                               expect = FORBIDDEN,  desc = "An update is lost or a returned value misses its own increment.")
+    @State
+    public static class Locking {
+        
+        private final AtomicVariable<Integer> variable = new AtomicVariable<>(0, UpdateMode.LOCKING);
+        
+        @Actor
+        public void actor1(III_Result result) {
+            result.r1 = increment(this.variable);
+        }
+        
+        @Actor
+        public void actor2(III_Result result) {
+            result.r2 = increment(this.variable);
+        }
+        
+        @Arbiter
+        public void arbiter(III_Result result) {
+            result.r3 = this.variable.get();
+        }
+        
+    }
+    
+    @JCStressTest
+    @Outcome(id = { "1, 2, 2", "2, 1, 2" }, expect = ACCEPTABLE, desc = "Each actor sees its own increment.")
+    @Outcome(id = "2, 2, 2",                expect = ACCEPTABLE, desc = "The first to increment also sees the later increment.")
+    @Outcome(                               expect = FORBIDDEN,  desc = "An update is lost or a returned value misses its own increment.")
+    @State
+    public static class Optimistic {
+        
+        private final AtomicVariable<Integer> variable = new AtomicVariable<>(0, UpdateMode.OPTIMISTIC);
+        
+        @Actor
+        public void actor1(III_Result result) {
+            result.r1 = increment(this.variable);
+        }
+        
+        @Actor
+        public void actor2(III_Result result) {
+            result.r2 = increment(this.variable);
+        }
+        
+        @Arbiter
+        public void arbiter(III_Result result) {
+            result.r3 = this.variable.get();
+        }
+        
+    }
+    
+    @JCStressTest
+    @Outcome(id = { "1, 2, 2", "2, 1, 2" }, expect = ACCEPTABLE, desc = "Each actor sees its own increment.")
+    @Outcome(id = "2, 2, 2",                expect = ACCEPTABLE, desc = "The first to increment also sees the later increment.")
+    @Outcome(                               expect = FORBIDDEN,  desc = "An update is lost or a returned value misses its own increment.")
+    @State
+    public static class Combining {
+        
+        private final AtomicVariable<Integer> variable = new AtomicVariable<>(0, UpdateMode.COMBINING);
+        
+        @Actor
+        public void actor1(III_Result result) {
+            result.r1 = increment(this.variable);
+        }
+        
+        @Actor
+        public void actor2(III_Result result) {
+            result.r2 = increment(this.variable);
+        }
+        
+        @Arbiter
+        public void arbiter(III_Result result) {
+            result.r3 = this.variable.get();
+        }
+        
+    }
+    
+}